@@ -0,0 +1,172 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.kernels;
+
+import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.geometry.BoundingBox;
+import com.starrypenguin.jpharos.shapes.Triangle;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorIntersectionKernel
+ * <p/>
+ * IntersectionKernel that tests a group of triangles or boxes with the Java Vector API, one lane per triangle or box
+ * <p>
+ * Each lane performs the same floating point operations in the same order as the scalar tests in Triangle.intersect
+ * and BoundingBox.intersectSlabs, so the results match the scalar kernel exactly.  Groups larger than the vector
+ * are tested in several passes, and the lanes past the end of a group are masked off.  Triangles are loaded
+ * without a mask, relying on the padding of PackedTriangles, since masked loads are slow before JDK 21.
+ * <p>
+ * This class needs JDK 16 or later and the jdk.incubator.vector module, so it lives in src-vector and is only compiled
+ * and loaded when those are available; see IntersectionKernel.
+ */
+public class VectorIntersectionKernel extends IntersectionKernel {
+
+    // more than eight lanes would rarely be filled by a BVH leaf or node, and PackedTriangles pads for eight
+    final private static VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED.length() > PackedTriangles.PADDING
+            ? DoubleVector.SPECIES_512 : DoubleVector.SPECIES_PREFERRED;
+    final private static int LANES = SPECIES.length();
+
+    @Override
+    public String getName() {
+        return "vector";
+    }
+
+    @Override
+    public int laneCount() {
+        return LANES;
+    }
+
+    @Override
+    public int closestTriangle(PackedTriangles triangles, int first, int count, Ray ray, double maxTime, double[] hitTime) {
+        int closest = -1;
+        int end = first + count;
+        for (int base = first; base < end; base += LANES) {
+            DoubleVector times = intersect(triangles, base, SPECIES.indexInRange(base, end), ray, maxTime);
+            double time = times.reduceLanes(VectorOperators.MIN);
+            if (time < maxTime) {
+                // every hit in this pass is before maxTime, so a tie with an earlier pass cannot replace it
+                maxTime = time;
+                closest = base + times.compare(VectorOperators.EQ, time).firstTrue();
+            }
+        }
+        if (closest != -1) {
+            hitTime[0] = maxTime;
+        }
+        return closest;
+    }
+
+    @Override
+    public boolean anyTriangle(PackedTriangles triangles, int first, int count, Ray ray, double maxTime) {
+        int end = first + count;
+        for (int base = first; base < end; base += LANES) {
+            if (intersect(triangles, base, SPECIES.indexInRange(base, end), ray, maxTime).reduceLanes(VectorOperators.MIN) < maxTime) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Möller–Trumbore test of the triangles in lanes, as in Triangle.intersect;
+    // returns the time of the hit in each lane, or Double.POSITIVE_INFINITY
+    private static DoubleVector intersect(PackedTriangles triangles, int base, VectorMask<Double> lanes, Ray ray, double maxTime) {
+        final double directionX = ray.direction.x;
+        final double directionY = ray.direction.y;
+        final double directionZ = ray.direction.z;
+        DoubleVector edge1X = DoubleVector.fromArray(SPECIES, triangles.edge1X, base);
+        DoubleVector edge1Y = DoubleVector.fromArray(SPECIES, triangles.edge1Y, base);
+        DoubleVector edge1Z = DoubleVector.fromArray(SPECIES, triangles.edge1Z, base);
+        DoubleVector edge2X = DoubleVector.fromArray(SPECIES, triangles.edge2X, base);
+        DoubleVector edge2Y = DoubleVector.fromArray(SPECIES, triangles.edge2Y, base);
+        DoubleVector edge2Z = DoubleVector.fromArray(SPECIES, triangles.edge2Z, base);
+
+        DoubleVector pX = edge2Z.mul(directionY).sub(edge2Y.mul(directionZ));
+        DoubleVector pY = edge2X.mul(directionZ).sub(edge2Z.mul(directionX));
+        DoubleVector pZ = edge2Y.mul(directionX).sub(edge2X.mul(directionY));
+        DoubleVector det = edge1X.mul(pX).add(edge1Y.mul(pY)).add(edge1Z.mul(pZ));
+        // the ray lies in or is parallel to the plane of the triangle
+        VectorMask<Double> hit = lanes.andNot(det.compare(VectorOperators.GT, -Triangle.EPSILON)
+                .and(det.compare(VectorOperators.LT, Triangle.EPSILON)));
+        if (!hit.anyTrue()) {
+            return DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        }
+
+        DoubleVector invDet = DoubleVector.broadcast(SPECIES, 1.0).div(det);
+        DoubleVector tX = DoubleVector.broadcast(SPECIES, ray.origin.x).sub(DoubleVector.fromArray(SPECIES, triangles.v1X, base));
+        DoubleVector tY = DoubleVector.broadcast(SPECIES, ray.origin.y).sub(DoubleVector.fromArray(SPECIES, triangles.v1Y, base));
+        DoubleVector tZ = DoubleVector.broadcast(SPECIES, ray.origin.z).sub(DoubleVector.fromArray(SPECIES, triangles.v1Z, base));
+        DoubleVector u = tX.mul(pX).add(tY.mul(pY)).add(tZ.mul(pZ)).mul(invDet);
+        hit = hit.andNot(u.compare(VectorOperators.LT, 0.0).or(u.compare(VectorOperators.GT, 1.0)));
+
+        DoubleVector qX = tY.mul(edge1Z).sub(tZ.mul(edge1Y));
+        DoubleVector qY = tZ.mul(edge1X).sub(tX.mul(edge1Z));
+        DoubleVector qZ = tX.mul(edge1Y).sub(tY.mul(edge1X));
+        DoubleVector v = qX.mul(directionX).add(qY.mul(directionY)).add(qZ.mul(directionZ)).mul(invDet);
+        hit = hit.andNot(v.compare(VectorOperators.LT, 0.0).or(u.add(v).compare(VectorOperators.GT, 1.0)));
+
+        DoubleVector time = edge2X.mul(qX).add(edge2Y.mul(qY)).add(edge2Z.mul(qZ)).mul(invDet);
+        hit = hit.and(time.compare(VectorOperators.GT, Triangle.EPSILON))
+                .and(time.compare(VectorOperators.LT, maxTime))
+                .and(time.compare(VectorOperators.GT, ray.minTime))
+                .and(time.compare(VectorOperators.LT, ray.maxTime));
+        return DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY).blend(time, hit);
+    }
+
+    @Override
+    public int intersectBoxes(double[] bounds, int offset, int stride, int count, Ray ray,
+                              double minTime, double maxTime, double[] entryTimes) {
+        // the rows holding the near and far planes of each slab, as chosen by BoundingBox.intersectSlabs
+        int nearX = offset + 3 * ray.signX * stride;
+        int farX = offset + (3 - 3 * ray.signX) * stride;
+        int nearY = offset + (1 + 3 * ray.signY) * stride;
+        int farY = offset + (4 - 3 * ray.signY) * stride;
+        int nearZ = offset + (2 + 3 * ray.signZ) * stride;
+        int farZ = offset + (5 - 3 * ray.signZ) * stride;
+        int hits = 0;
+        for (int base = 0; base < count; base += LANES) {
+            VectorMask<Double> lanes = SPECIES.indexInRange(base, count);
+            DoubleVector timeNear = DoubleVector.broadcast(SPECIES, minTime);
+            DoubleVector timeFar = DoubleVector.broadcast(SPECIES, maxTime);
+
+            DoubleVector slabNear = DoubleVector.fromArray(SPECIES, bounds, nearX + base, lanes).sub(ray.origin.x).mul(ray.inverseX);
+            DoubleVector slabFar = DoubleVector.fromArray(SPECIES, bounds, farX + base, lanes).sub(ray.origin.x).mul(ray.inverseX).mul(BoundingBox.ROUNDING_GUARD);
+            // a NaN slab time compares false and leaves the interval unchanged, as in the scalar test
+            timeNear = timeNear.blend(slabNear, slabNear.compare(VectorOperators.GT, timeNear));
+            timeFar = timeFar.blend(slabFar, slabFar.compare(VectorOperators.LT, timeFar));
+
+            slabNear = DoubleVector.fromArray(SPECIES, bounds, nearY + base, lanes).sub(ray.origin.y).mul(ray.inverseY);
+            slabFar = DoubleVector.fromArray(SPECIES, bounds, farY + base, lanes).sub(ray.origin.y).mul(ray.inverseY).mul(BoundingBox.ROUNDING_GUARD);
+            timeNear = timeNear.blend(slabNear, slabNear.compare(VectorOperators.GT, timeNear));
+            timeFar = timeFar.blend(slabFar, slabFar.compare(VectorOperators.LT, timeFar));
+
+            slabNear = DoubleVector.fromArray(SPECIES, bounds, nearZ + base, lanes).sub(ray.origin.z).mul(ray.inverseZ);
+            slabFar = DoubleVector.fromArray(SPECIES, bounds, farZ + base, lanes).sub(ray.origin.z).mul(ray.inverseZ).mul(BoundingBox.ROUNDING_GUARD);
+            timeNear = timeNear.blend(slabNear, slabNear.compare(VectorOperators.GT, timeNear));
+            timeFar = timeFar.blend(slabFar, slabFar.compare(VectorOperators.LT, timeFar));
+
+            VectorMask<Double> hit = lanes.and(timeNear.compare(VectorOperators.LE, timeFar));
+            DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY).blend(timeNear, hit).intoArray(entryTimes, base, lanes);
+            hits |= (int) hit.toLong() << base;
+        }
+        return hits;
+    }
+}
@@ -22,10 +22,10 @@ import com.starrypenguin.jpharos.core.Ray;
 import com.starrypenguin.jpharos.geometry.Point;
 import com.starrypenguin.jpharos.geometry.Vector;
 import com.starrypenguin.jpharos.lenses.Lens;
+import com.starrypenguin.jpharos.samplers.Sampler;
 import com.starrypenguin.jpharos.util.Shared;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Camera
@@ -41,6 +41,10 @@ final public class Camera {
     public final Point cameraLocation;
     public final Vector lookAt;
     public final Vector up;
+    // film corner and unit steps across / down the film, so rays can be made on demand without temporary objects
+    private final double topLeftX, topLeftY, topLeftZ;
+    private final double rightX, rightY, rightZ;
+    private final double downX, downY, downZ;
 
     public Camera(Film film, Lens lens, Point location, Vector lookAt, Vector up) {
         Shared.notNull(film, "film cannot be null!");
@@ -54,10 +58,8 @@ final public class Camera {
         this.cameraLocation = location;
         this.lookAt = lookAt;
         this.up = up;
-    }
 
-    public List<Ray> generateRays() {
-        LinkedList<Ray> rays = new LinkedList<>();
+        // the film sits focalLength in front of the camera; rays are aimed at the top left corner of each pixel
         Point filmCenter = cameraLocation.plus(lookAt.normalized().scale(lens.focalLength));
         Vector right = lookAt.cross(up).normalized();
         Vector left = right.inverse();
@@ -66,23 +68,79 @@ final public class Camera {
         double leftRightOffset = film.pixelSize * film.filmWidthInPixels / 2;
         double upDownOffset = film.pixelSize * film.filmHeightInPixels / 2;
         Point topLeft = filmCenter.plus(normalizedUp.scale(upDownOffset)).plus(left.scale(leftRightOffset));
+        this.topLeftX = topLeft.x;
+        this.topLeftY = topLeft.y;
+        this.topLeftZ = topLeft.z;
+        this.rightX = right.x;
+        this.rightY = right.y;
+        this.rightZ = right.z;
+        this.downX = down.x;
+        this.downY = down.y;
+        this.downZ = down.z;
+    }
+
+    /**
+     * Generate one ray through the given pixel; the ray starts at a new lens sample point
+     */
+    public Ray generateRay(Film.FilmCoordinate filmCoordinate) {
+        return generateRay(filmCoordinate, Sampler.current());
+    }
+
+    /**
+     * Generate one ray through the given pixel, using sampler to choose the lens sample point
+     */
+    public Ray generateRay(Film.FilmCoordinate filmCoordinate, Sampler sampler) {
+        Shared.notNull(filmCoordinate, "filmCoordinate cannot be null!");
+        Shared.notNull(sampler, "sampler cannot be null!");
+        double leftRightDistance = film.pixelSize * filmCoordinate.widthIndex;
+        double upDownDistance = film.pixelSize * filmCoordinate.heightIndex;
+        double pixelX = topLeftX + rightX * leftRightDistance + downX * upDownDistance;
+        double pixelY = topLeftY + rightY * leftRightDistance + downY * upDownDistance;
+        double pixelZ = topLeftZ + rightZ * leftRightDistance + downZ * upDownDistance;
+        Point lensPoint = lens.getSamplePoint(sampler);
+        double directionX = pixelX - lensPoint.x;
+        double directionY = pixelY - lensPoint.y;
+        double directionZ = pixelZ - lensPoint.z;
+        double length = Math.sqrt((directionX * directionX) + (directionY * directionY) + (directionZ * directionZ));
+        return new Ray(lensPoint, new Vector(directionX / length, directionY / length, directionZ / length), filmCoordinate);
+    }
+
+    /**
+     * Generate the rays for a rectangular block of pixels, such as one render tile, and hand each one to
+     * rayConsumer as soon as it is made; no more than one ray exists at a time
+     */
+    public void generateRays(int firstHeightIndex, int firstWidthIndex, int heightInPixels, int widthInPixels, Consumer<Ray> rayConsumer) {
+        generateRays(firstHeightIndex, firstWidthIndex, heightInPixels, widthInPixels, Sampler.current(), rayConsumer);
+    }
 
-        for (int upDownIndex = 0; upDownIndex < film.filmHeightInPixels; upDownIndex++) {
-            for (int leftRightIndex = 0; leftRightIndex < film.filmWidthInPixels; leftRightIndex++) {
-                Point pixelLocation = topLeft.plus(right.scale(film.pixelSize * leftRightIndex)).plus(down.scale(film.pixelSize * upDownIndex));
+    /**
+     * As above, starting a new sample on sampler before each ray so that everything sampled while the ray is traced
+     * depends only on its pixel and sample index
+     */
+    public void generateRays(int firstHeightIndex, int firstWidthIndex, int heightInPixels, int widthInPixels, Sampler sampler, Consumer<Ray> rayConsumer) {
+        Shared.inclusiveRangeCheck(firstHeightIndex, 0, film.filmHeightInPixels - 1, "firstHeightIndex must be on the film!");
+        Shared.inclusiveRangeCheck(firstWidthIndex, 0, film.filmWidthInPixels - 1, "firstWidthIndex must be on the film!");
+        Shared.inclusiveRangeCheck(heightInPixels, 1, film.filmHeightInPixels - firstHeightIndex, "heightInPixels must fit on the film!");
+        Shared.inclusiveRangeCheck(widthInPixels, 1, film.filmWidthInPixels - firstWidthIndex, "widthInPixels must fit on the film!");
+        Shared.notNull(sampler, "sampler cannot be null!");
+        Shared.notNull(rayConsumer, "rayConsumer cannot be null!");
+        for (int upDownIndex = firstHeightIndex; upDownIndex < firstHeightIndex + heightInPixels; upDownIndex++) {
+            for (int leftRightIndex = firstWidthIndex; leftRightIndex < firstWidthIndex + widthInPixels; leftRightIndex++) {
+                Film.FilmCoordinate filmCoordinate = film.newFilmCoordinate(upDownIndex, leftRightIndex);
                 for (int rayPerPixelCount = 0; rayPerPixelCount < film.raysPerPixel; rayPerPixelCount++) {
-                    Point lensPoint = lens.getSamplePoint();
-                    Vector rayDirection = new Vector(lensPoint, pixelLocation).normalized();
-                    Ray currentRay = new Ray(lensPoint, rayDirection, film.newFilmCoordinate(upDownIndex, leftRightIndex));
-                    rays.add(currentRay);
+                    sampler.startPixelSample(upDownIndex, leftRightIndex, rayPerPixelCount);
+                    rayConsumer.accept(generateRay(filmCoordinate, sampler));
                 }
             }
         }
-        return rays;
     }
 
     public void develop(String outFilename) {
         film.develop(outFilename);
     }
 
+    public void develop(String outFilename, ImageWriter.Format format) {
+        film.develop(outFilename, format);
+    }
+
 }
@@ -18,12 +18,10 @@
 
 package com.starrypenguin.jpharos.cameras;
 
+import com.starrypenguin.jpharos.core.RgbAccumulator;
 import com.starrypenguin.jpharos.util.Shared;
 
-import java.awt.*;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Queue;
 
 /**
  * Film
@@ -36,8 +34,7 @@ final public class Film {
     final public int filmWidthInPixels;  // film size in pixels
     final public int filmHeightInPixels;
     final public int raysPerPixel;       // number of rays used for each pixel
-    final public ColorGrid colorGrid;     // used to capture results
-    final private String COLOR_DEPTH = "255";
+    final public FilmBuffer filmBuffer;   // used to capture results
 
     public Film(double pixelSize, int filmWidthInPixels, int filmHeightInPixels, int raysPerPixel) {
         Shared.notNaNAndPositive(pixelSize, "pixelSize must be positive!");
@@ -48,106 +45,44 @@ final public class Film {
         this.filmWidthInPixels = filmWidthInPixels;
         this.filmHeightInPixels = filmHeightInPixels;
         this.raysPerPixel = raysPerPixel;
-        this.colorGrid = new ColorGrid(filmHeightInPixels, filmWidthInPixels);
+        this.filmBuffer = new FilmBuffer(filmHeightInPixels, filmWidthInPixels);
     }
 
     public FilmCoordinate newFilmCoordinate(int heightIndex, int widthIndex) {
         return new FilmCoordinate(heightIndex, widthIndex);
     }
 
-    public DevelopedPixel newDevelopedPixel(FilmCoordinate filmCoordinate, Queue<Color> colors) {
-        return new DevelopedPixel(filmCoordinate, colors);
-    }
-
-    public void capture(FilmCoordinate filmCoordinate, Queue<Color> colors) {
+    /**
+     * Capture the colors found for one ray as a single sample:  their mean;
+     * the calling thread must be the only one writing this pixel, as it is when rendering a tile
+     */
+    public void capture(FilmCoordinate filmCoordinate, RgbAccumulator colors) {
         Shared.notNull(filmCoordinate, "Parameter filmCoordinate cannot be null!");
         Shared.notNull(colors, "Parameter colors cannot be null!");
-        this.colorGrid.put(filmCoordinate.heightIndex, filmCoordinate.widthIndex, colors);
-        //System.out.println(String.format("Captured pixel at heightIndex=%d, widthIndex=%d as color=%s", filmCoordinate.heightIndex, filmCoordinate.widthIndex, color));
-    }
-
-    public void capture(DevelopedPixel developedPixel) {
-        Shared.notNull(developedPixel, "Parameter developedPixel cannot be null!");
-        this.capture(developedPixel.filmCoordinate, developedPixel.colors);
-    }
-
-    public boolean readyToDevelop() {
-        return colorGrid.readyToDevelop();
+        if (colors.count() > 0) {
+            this.filmBuffer.addSample(filmCoordinate.heightIndex, filmCoordinate.widthIndex,
+                    (float) colors.meanRed(), (float) colors.meanGreen(), (float) colors.meanBlue());
+        }
     }
 
-    private String colorToStr(Color color) {
-        return color.getRed() + " " + color.getGreen() + " " + color.getBlue() + " ";
+    /**
+     * Write the finished film out to disk; files ending in ".png" are written as PNG, and all others as binary PPM
+     */
+    public void develop(String outFilename) {
+        develop(outFilename, ImageWriter.Format.fromFilename(outFilename));
     }
 
     /**
-     * Write the finished film out to disk
+     * Write the finished film out to disk in the given format
      */
-    public void develop(String outFilename) {
-        try (FileWriter fileWriter = new FileWriter(outFilename)) {
-        fileWriter.write(Shared.GraphicsFileFormat.ASCII_COLOR_PPM_MAGIC_NUMBER + "\n");
-        fileWriter.write(filmWidthInPixels + " " + filmHeightInPixels + "\n");
-        fileWriter.write(COLOR_DEPTH + "\n");
-        for (int heightIndex = 0; heightIndex < filmHeightInPixels; heightIndex++) {
-            for (int widthIndex = 0; widthIndex < filmWidthInPixels; widthIndex++) {
-                Color color = colorGrid.get(heightIndex, widthIndex);
-                if (color != null) {
-                    fileWriter.write(colorToStr(color));
-                } else {
-                    String errorMessage = String.format("colorGrid is null at heightIndex=%d, widthIndex=%d", heightIndex, widthIndex);
-                    System.err.println(errorMessage);
-                    throw new IllegalStateException(errorMessage);
-                }
-            }
-            fileWriter.write("\n");
-            fileWriter.flush();
-        }
-        fileWriter.write("\n");
-        fileWriter.flush();
-        fileWriter.close();
+    public void develop(String outFilename, ImageWriter.Format format) {
+        try {
+            ImageWriter.write(filmBuffer, outFilename, format);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    final public class DevelopedPixel {
-
-        final public FilmCoordinate filmCoordinate;
-        final public Queue<Color> colors;
-
-        public DevelopedPixel(FilmCoordinate filmCoordinate, Queue<Color> colors) {
-            Shared.notNull(filmCoordinate, "Parameter filmCoordinate cannot be null!");
-            Shared.notNull(colors, "Parameter colors cannot be null!");
-            this.filmCoordinate = filmCoordinate;
-            this.colors = colors;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            DevelopedPixel that = (DevelopedPixel) o;
-
-            if (!filmCoordinate.equals(that.filmCoordinate)) return false;
-            return colors.equals(that.colors);
-        }
-
-        @Override
-        public int hashCode() {
-            int result = filmCoordinate.hashCode();
-            result = 31 * result + colors.hashCode();
-            return result;
-        }
-
-        @Override
-        public String toString() {
-            return "DevelopedPixel{" +
-                    "filmCoordinate=" + filmCoordinate +
-                    ", color=" + colors +
-                    '}';
-        }
-    }
-
     // represent a coordinate on the film as a single object to improve error checking and prevent accidental swapping of width and height indices
     final public class FilmCoordinate {
 
@@ -0,0 +1,120 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.cameras;
+
+import com.starrypenguin.jpharos.util.Shared;
+
+import java.awt.*;
+
+/**
+ * FilmBuffer
+ * <p/>
+ * Accumulates samples for every pixel of the film as running red, green, and blue sums plus a sample count,
+ * all held in primitive arrays; the developed color of a pixel is the plain mean of its samples
+ * <p>
+ * addSample does no locking and is meant for a thread that owns the pixel, such as the worker rendering
+ * the tile that contains it.  Pixels that several threads may write at once go through addSharedSample,
+ * which locks one of a fixed set of stripes instead of one monitor per pixel.
+ */
+final public class FilmBuffer {
+
+    final private static int STRIPES = 64; // power of two
+    // packed colors from getRGB are always opaque, so a zero alpha cannot be a color
+    final public static int NO_SAMPLES = 0;
+
+    final public int filmHeightInPixels;
+    final public int filmWidthInPixels;
+    // red, green, blue sums on a 0.0 to 1.0 scale, three per pixel in row-major order
+    final private float[] colorSums;
+    final private int[] sampleCounts;
+    final private Object[] stripeLocks = new Object[STRIPES];
+
+    public FilmBuffer(int filmHeightInPixels, int filmWidthInPixels) {
+        Shared.positive(filmHeightInPixels, "Parameter filmHeightInPixels must be positive!");
+        Shared.positive(filmWidthInPixels, "Parameter filmWidthInPixels must be positive!");
+        this.filmHeightInPixels = filmHeightInPixels;
+        this.filmWidthInPixels = filmWidthInPixels;
+        this.colorSums = new float[3 * filmHeightInPixels * filmWidthInPixels];
+        this.sampleCounts = new int[filmHeightInPixels * filmWidthInPixels];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            stripeLocks[stripe] = new Object();
+        }
+    }
+
+    private int pixelIndex(int heightIndex, int widthIndex) {
+        Shared.inclusiveRangeCheck(heightIndex, 0, filmHeightInPixels - 1, "heightIndex must be on the film!");
+        Shared.inclusiveRangeCheck(widthIndex, 0, filmWidthInPixels - 1, "widthIndex must be on the film!");
+        return heightIndex * filmWidthInPixels + widthIndex;
+    }
+
+    /**
+     * Add one sample to a pixel that no other thread is writing
+     */
+    public void addSample(int heightIndex, int widthIndex, float red, float green, float blue) {
+        int pixel = pixelIndex(heightIndex, widthIndex);
+        colorSums[3 * pixel] += red;
+        colorSums[3 * pixel + 1] += green;
+        colorSums[3 * pixel + 2] += blue;
+        sampleCounts[pixel]++;
+    }
+
+    /**
+     * Add one sample to a pixel that other threads may be writing at the same time
+     */
+    public void addSharedSample(int heightIndex, int widthIndex, float red, float green, float blue) {
+        int pixel = pixelIndex(heightIndex, widthIndex);
+        synchronized (stripeLocks[pixel & (STRIPES - 1)]) {
+            colorSums[3 * pixel] += red;
+            colorSums[3 * pixel + 1] += green;
+            colorSums[3 * pixel + 2] += blue;
+            sampleCounts[pixel]++;
+        }
+    }
+
+    public int getSampleCount(int heightIndex, int widthIndex) {
+        return sampleCounts[pixelIndex(heightIndex, widthIndex)];
+    }
+
+    /**
+     * The mean of the samples for a pixel, or null if it has none yet
+     */
+    public Color getColor(int heightIndex, int widthIndex) {
+        int rgb = getRGB(heightIndex, widthIndex);
+        return rgb == NO_SAMPLES ? null : new Color(rgb);
+    }
+
+    /**
+     * The mean of the samples for a pixel packed as by java.awt.Color.getRGB, or NO_SAMPLES if it has none yet
+     */
+    public int getRGB(int heightIndex, int widthIndex) {
+        int pixel = pixelIndex(heightIndex, widthIndex);
+        int count = sampleCounts[pixel];
+        if (count == 0) {
+            return NO_SAMPLES;
+        }
+        return 0xFF000000
+                | (toComponent(colorSums[3 * pixel], count) << 16)
+                | (toComponent(colorSums[3 * pixel + 1], count) << 8)
+                | toComponent(colorSums[3 * pixel + 2], count);
+    }
+
+    private static int toComponent(float sum, int count) {
+        return Math.min(255, Math.max(0, (int) (255.0 * sum / count + 0.5)));
+    }
+}
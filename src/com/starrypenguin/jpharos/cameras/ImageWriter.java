@@ -0,0 +1,299 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.cameras;
+
+import com.starrypenguin.jpharos.util.Shared;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * ImageWriter
+ * <p/>
+ * Encodes developed film into ASCII PPM (P3), binary PPM (P6), or PNG images
+ * <p>
+ * Every format is encoded into one ByteBuffer and written through a FileChannel.  PNG rows are
+ * filtered and compressed in parallel bands of rows; each band is deflated on its own and ends on a
+ * sync flush, so the compressed bands join into a single zlib stream.
+ */
+final public class ImageWriter {
+
+    final private static int COLOR_DEPTH = 255;
+    final private static int BYTES_PER_PIXEL = 3;
+    final private static int ROWS_PER_BAND = 64;
+    final private static byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    // PNG row filter types
+    final private static int FILTER_NONE = 0;
+    final private static int FILTER_SUB = 1;
+    final private static int FILTER_UP = 2;
+    final private static int FILTER_AVERAGE = 3;
+    final private static int FILTER_PAETH = 4;
+
+    public enum Format {
+        ASCII_PPM, BINARY_PPM, PNG;
+
+        /**
+         * Choose the format from a file name:  ".png" files are PNG and everything else is binary PPM
+         */
+        public static Format fromFilename(String filename) {
+            Shared.notNull(filename, "Parameter filename cannot be null!");
+            return filename.toLowerCase(Locale.ROOT).endsWith(".png") ? PNG : BINARY_PPM;
+        }
+    }
+
+    private ImageWriter() {
+        // static methods only
+    }
+
+    public static void write(FilmBuffer filmBuffer, String outFilename, Format format) throws IOException {
+        Shared.notNull(filmBuffer, "Parameter filmBuffer cannot be null!");
+        Shared.notNullAndNotEmpty(outFilename, "Parameter outFilename cannot be null or empty!");
+        Shared.notNull(format, "Parameter format cannot be null!");
+        byte[] pixels = rgbBytes(filmBuffer);
+        ByteBuffer image;
+        switch (format) {
+            case ASCII_PPM:
+                image = encodeAsciiPpm(pixels, filmBuffer.filmWidthInPixels, filmBuffer.filmHeightInPixels);
+                break;
+            case BINARY_PPM:
+                image = encodeBinaryPpm(pixels, filmBuffer.filmWidthInPixels, filmBuffer.filmHeightInPixels);
+                break;
+            default:
+                image = encodePng(pixels, filmBuffer.filmWidthInPixels, filmBuffer.filmHeightInPixels);
+                break;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(outFilename),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (image.hasRemaining()) {
+                channel.write(image);
+            }
+        }
+    }
+
+    /**
+     * Developed colors as red, green, blue bytes in row-major order
+     */
+    static byte[] rgbBytes(FilmBuffer filmBuffer) {
+        int width = filmBuffer.filmWidthInPixels;
+        int height = filmBuffer.filmHeightInPixels;
+        byte[] pixels = new byte[BYTES_PER_PIXEL * width * height];
+        IntStream.range(0, height).parallel().forEach(heightIndex -> {
+            for (int widthIndex = 0; widthIndex < width; widthIndex++) {
+                int rgb = filmBuffer.getRGB(heightIndex, widthIndex);
+                if (rgb == FilmBuffer.NO_SAMPLES) {
+                    String errorMessage = String.format("filmBuffer has no samples at heightIndex=%d, widthIndex=%d", heightIndex, widthIndex);
+                    System.err.println(errorMessage);
+                    throw new IllegalStateException(errorMessage);
+                }
+                int offset = BYTES_PER_PIXEL * (heightIndex * width + widthIndex);
+                pixels[offset] = (byte) (rgb >> 16);
+                pixels[offset + 1] = (byte) (rgb >> 8);
+                pixels[offset + 2] = (byte) rgb;
+            }
+        });
+        return pixels;
+    }
+
+    private static byte[] ppmHeader(String magicNumber, int width, int height) {
+        return (magicNumber + "\n" + width + " " + height + "\n" + COLOR_DEPTH + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static ByteBuffer encodeAsciiPpm(byte[] pixels, int width, int height) {
+        byte[] header = ppmHeader(Shared.GraphicsFileFormat.ASCII_COLOR_PPM_MAGIC_NUMBER, width, height);
+        // at most "255 " for each component, a newline for each row, and a final newline
+        ByteBuffer image = ByteBuffer.allocate(header.length + 4 * pixels.length + height + 1);
+        image.put(header);
+        for (int heightIndex = 0; heightIndex < height; heightIndex++) {
+            for (int offset = heightIndex * width * BYTES_PER_PIXEL; offset < (heightIndex + 1) * width * BYTES_PER_PIXEL; offset++) {
+                int component = pixels[offset] & 0xFF;
+                if (component >= 100) {
+                    image.put((byte) ('0' + component / 100));
+                }
+                if (component >= 10) {
+                    image.put((byte) ('0' + (component / 10) % 10));
+                }
+                image.put((byte) ('0' + component % 10));
+                image.put((byte) ' ');
+            }
+            image.put((byte) '\n');
+        }
+        image.put((byte) '\n');
+        image.flip();
+        return image;
+    }
+
+    static ByteBuffer encodeBinaryPpm(byte[] pixels, int width, int height) {
+        byte[] header = ppmHeader(Shared.GraphicsFileFormat.BINARY_COLOR_PPM_MAGIC_NUMBER, width, height);
+        ByteBuffer image = ByteBuffer.allocate(header.length + pixels.length);
+        image.put(header).put(pixels);
+        image.flip();
+        return image;
+    }
+
+    static ByteBuffer encodePng(byte[] pixels, int width, int height) {
+        int rowLength = 1 + BYTES_PER_PIXEL * width; // filter type byte, then the filtered row
+        int bandCount = (height + ROWS_PER_BAND - 1) / ROWS_PER_BAND;
+        byte[][] filteredBands = new byte[bandCount][];
+        byte[][] compressedBands = new byte[bandCount][];
+        IntStream.range(0, bandCount).parallel().forEach(band -> {
+            int firstRow = band * ROWS_PER_BAND;
+            int rows = Math.min(ROWS_PER_BAND, height - firstRow);
+            byte[] filtered = new byte[rows * rowLength];
+            for (int row = 0; row < rows; row++) {
+                filterRow(pixels, width, firstRow + row, filtered, row * rowLength);
+            }
+            filteredBands[band] = filtered;
+            compressedBands[band] = deflate(filtered, band == bandCount - 1);
+        });
+
+        // the zlib stream:  header, the deflated bands, and the Adler-32 of all filtered rows
+        Adler32 adler32 = new Adler32();
+        int idatLength = 2 + 4;
+        for (int band = 0; band < bandCount; band++) {
+            adler32.update(filteredBands[band]);
+            idatLength += compressedBands[band].length;
+        }
+        ByteBuffer idat = ByteBuffer.allocate(idatLength);
+        idat.put((byte) 0x78).put((byte) 0x9C);
+        for (byte[] compressed : compressedBands) {
+            idat.put(compressed);
+        }
+        idat.putInt((int) adler32.getValue());
+
+        ByteBuffer ihdr = ByteBuffer.allocate(13);
+        ihdr.putInt(width).putInt(height);
+        ihdr.put((byte) 8);  // bits per sample
+        ihdr.put((byte) 2);  // color type:  RGB
+        ihdr.put((byte) 0);  // deflate compression
+        ihdr.put((byte) 0);  // adaptive filtering
+        ihdr.put((byte) 0);  // no interlace
+
+        ByteBuffer image = ByteBuffer.allocate(PNG_SIGNATURE.length + 12 + 13 + 12 + idatLength + 12);
+        image.put(PNG_SIGNATURE);
+        putChunk(image, "IHDR", ihdr.array());
+        putChunk(image, "IDAT", idat.array());
+        putChunk(image, "IEND", new byte[0]);
+        image.flip();
+        return image;
+    }
+
+    private static void putChunk(ByteBuffer image, String type, byte[] data) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc32 = new CRC32();
+        crc32.update(typeBytes);
+        crc32.update(data);
+        image.putInt(data.length).put(typeBytes).put(data).putInt((int) crc32.getValue());
+    }
+
+    private static byte[] deflate(byte[] data, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            if (last) {
+                deflater.finish();
+            }
+            ByteBuffer output = ByteBuffer.allocate(data.length / 2 + 64);
+            byte[] chunk = new byte[64 * 1024];
+            while (true) {
+                int length = last ? deflater.deflate(chunk) : deflater.deflate(chunk, 0, chunk.length, Deflater.SYNC_FLUSH);
+                if (output.remaining() < length) {
+                    ByteBuffer larger = ByteBuffer.allocate(2 * output.capacity() + length);
+                    output.flip();
+                    larger.put(output);
+                    output = larger;
+                }
+                output.put(chunk, 0, length);
+                // a sync flush is complete once it leaves room to spare in the output chunk
+                if (last ? deflater.finished() : length < chunk.length) {
+                    break;
+                }
+            }
+            byte[] compressed = new byte[output.position()];
+            output.flip();
+            output.get(compressed);
+            return compressed;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Filter one row with whichever PNG filter gives the smallest sum of absolute differences, the usual heuristic
+     */
+    private static void filterRow(byte[] pixels, int width, int row, byte[] out, int outOffset) {
+        int length = BYTES_PER_PIXEL * width;
+        int current = row * length;
+        int previous = current - length; // only read when row > 0
+        int bestFilter = FILTER_NONE;
+        long bestScore = Long.MAX_VALUE;
+        for (int filter = FILTER_NONE; filter <= FILTER_PAETH; filter++) {
+            long score = 0;
+            for (int i = 0; i < length && score < bestScore; i++) {
+                score += Math.abs((byte) filtered(filter, pixels, current, previous, row > 0, i));
+            }
+            if (score < bestScore) {
+                bestScore = score;
+                bestFilter = filter;
+            }
+        }
+        out[outOffset] = (byte) bestFilter;
+        for (int i = 0; i < length; i++) {
+            out[outOffset + 1 + i] = (byte) filtered(bestFilter, pixels, current, previous, row > 0, i);
+        }
+    }
+
+    private static int filtered(int filter, byte[] pixels, int current, int previous, boolean hasPrevious, int i) {
+        int x = pixels[current + i] & 0xFF;
+        int a = i >= BYTES_PER_PIXEL ? pixels[current + i - BYTES_PER_PIXEL] & 0xFF : 0;
+        int b = hasPrevious ? pixels[previous + i] & 0xFF : 0;
+        int c = (hasPrevious && i >= BYTES_PER_PIXEL) ? pixels[previous + i - BYTES_PER_PIXEL] & 0xFF : 0;
+        switch (filter) {
+            case FILTER_SUB:
+                return x - a;
+            case FILTER_UP:
+                return x - b;
+            case FILTER_AVERAGE:
+                return x - ((a + b) >> 1);
+            case FILTER_PAETH:
+                return x - paethPredictor(a, b, c);
+            default:
+                return x;
+        }
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+}
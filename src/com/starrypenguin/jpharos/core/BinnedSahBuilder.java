@@ -0,0 +1,270 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.starrypenguin.jpharos.core;
+
+import com.starrypenguin.jpharos.geometry.BoundingBox;
+import com.starrypenguin.jpharos.util.Shared;
+
+import java.util.Arrays;
+
+/**
+ * BinnedSahBuilder
+ * <p/>
+ * Top-down bounding volume hierarchy builder that uses the binned surface area heuristic (SAH).
+ * Primitives are described only by their axis-aligned bounds, so the same builder can be used
+ * for the Bodies in a Scene and for the Triangles in a TriangleMesh.
+ * <p>
+ * At each node the primitive centroids are sorted into a fixed number of bins along each axis;
+ * the cost of splitting after each bin is evaluated from prefix and suffix bounds of the bins,
+ * which makes each level linear in the number of primitives and the whole build O(n log n).
+ * <p>
+ * Reference:  "Physically Based Rendering", Third Edition, Section 4.3.2 "The Surface Area Heuristic"
+ * Reference:  Wald, "On fast Construction of SAH-based Bounding Volume Hierarchies", 2007
+ */
+public class BinnedSahBuilder {
+
+    final public static int BIN_COUNT = 16;
+    final public static double TRAVERSAL_COST = 1.0;    // relative cost of testing a ray against a node's bounds
+    final public static double INTERSECTION_COST = 1.0; // relative cost of testing a ray against a primitive
+
+    final private double[] primitiveBounds; // minX, minY, minZ, maxX, maxY, maxZ for each primitive
+    final private double[] centroids;       // x, y, z for each primitive
+    final private int[] primitiveIndices;   // reordered during the build so that each leaf owns a contiguous range
+    final private int maxPrimitivesPerLeaf;
+
+    public BinnedSahBuilder(double[] primitiveBounds, int maxPrimitivesPerLeaf) {
+        Shared.notNull(primitiveBounds, "Parameter primitiveBounds cannot be null!");
+        if (primitiveBounds.length == 0 || primitiveBounds.length % 6 != 0) {
+            throw new IllegalArgumentException("Parameter primitiveBounds must hold six values for each primitive!");
+        }
+        Shared.positive(maxPrimitivesPerLeaf, "Parameter maxPrimitivesPerLeaf must be positive!");
+        this.primitiveBounds = primitiveBounds;
+        this.maxPrimitivesPerLeaf = maxPrimitivesPerLeaf;
+        int primitiveCount = primitiveBounds.length / 6;
+        this.centroids = new double[primitiveCount * 3];
+        this.primitiveIndices = new int[primitiveCount];
+        for (int primitive = 0; primitive < primitiveCount; primitive++) {
+            for (int axis = 0; axis < 3; axis++) {
+                centroids[primitive * 3 + axis] = 0.5 * (primitiveBounds[primitive * 6 + axis] + primitiveBounds[primitive * 6 + 3 + axis]);
+            }
+            primitiveIndices[primitive] = primitive;
+        }
+    }
+
+    /**
+     * Pack BoundingBoxes into the flat bounds array expected by the builder
+     */
+    public static double[] toPrimitiveBounds(BoundingBox[] boundingBoxes) {
+        Shared.notNull(boundingBoxes, "Parameter boundingBoxes cannot be null!");
+        double[] bounds = new double[boundingBoxes.length * 6];
+        for (int index = 0; index < boundingBoxes.length; index++) {
+            BoundingBox boundingBox = boundingBoxes[index];
+            bounds[index * 6] = boundingBox.min.x;
+            bounds[index * 6 + 1] = boundingBox.min.y;
+            bounds[index * 6 + 2] = boundingBox.min.z;
+            bounds[index * 6 + 3] = boundingBox.max.x;
+            bounds[index * 6 + 4] = boundingBox.max.y;
+            bounds[index * 6 + 5] = boundingBox.max.z;
+        }
+        return bounds;
+    }
+
+    /**
+     * Surface area of the box stored at offset in a flat bounds array
+     */
+    public static double surfaceArea(double[] bounds, int offset) {
+        double deltaX = bounds[offset + 3] - bounds[offset];
+        double deltaY = bounds[offset + 4] - bounds[offset + 1];
+        double deltaZ = bounds[offset + 5] - bounds[offset + 2];
+        if (deltaX < 0 || deltaY < 0 || deltaZ < 0) {
+            return 0.0; // empty bounds
+        }
+        return 2.0 * (deltaX * deltaY + deltaY * deltaZ + deltaZ * deltaX);
+    }
+
+    private static void setEmpty(double[] bounds, int offset) {
+        bounds[offset] = bounds[offset + 1] = bounds[offset + 2] = Double.POSITIVE_INFINITY;
+        bounds[offset + 3] = bounds[offset + 4] = bounds[offset + 5] = Double.NEGATIVE_INFINITY;
+    }
+
+    private static void grow(double[] bounds, int offset, double[] other, int otherOffset) {
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[offset + axis] = Math.min(bounds[offset + axis], other[otherOffset + axis]);
+            bounds[offset + 3 + axis] = Math.max(bounds[offset + 3 + axis], other[otherOffset + 3 + axis]);
+        }
+    }
+
+    /**
+     * The primitive indices in leaf order; a leaf Node covers
+     * primitiveIndices[firstPrimitive] to primitiveIndices[firstPrimitive + primitiveCount - 1]
+     */
+    public int[] getPrimitiveIndices() {
+        return primitiveIndices;
+    }
+
+    public Node build() {
+        return build(0, primitiveIndices.length);
+    }
+
+    private Node build(int start, int end) {
+        int count = end - start;
+        double[] bounds = new double[6];
+        double[] centroidBounds = new double[6];
+        setEmpty(bounds, 0);
+        setEmpty(centroidBounds, 0);
+        for (int index = start; index < end; index++) {
+            int primitive = primitiveIndices[index];
+            grow(bounds, 0, primitiveBounds, primitive * 6);
+            for (int axis = 0; axis < 3; axis++) {
+                double centroid = centroids[primitive * 3 + axis];
+                centroidBounds[axis] = Math.min(centroidBounds[axis], centroid);
+                centroidBounds[3 + axis] = Math.max(centroidBounds[3 + axis], centroid);
+            }
+        }
+        if (count <= maxPrimitivesPerLeaf) {
+            return new Node(bounds, start, count);
+        }
+
+        // find the cheapest bin boundary over all three axes
+        int bestAxis = -1;
+        int bestSplit = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        int[] binCounts = new int[BIN_COUNT];
+        double[] binBounds = new double[BIN_COUNT * 6];
+        double[] suffixAreas = new double[BIN_COUNT];
+        int[] suffixCounts = new int[BIN_COUNT];
+        double[] running = new double[6];
+        for (int axis = 0; axis < 3; axis++) {
+            double axisMin = centroidBounds[axis];
+            double axisExtent = centroidBounds[3 + axis] - axisMin;
+            if (axisExtent <= 0.0) {
+                continue; // every centroid lies in the same plane; nothing to split on this axis
+            }
+            Arrays.fill(binCounts, 0);
+            for (int bin = 0; bin < BIN_COUNT; bin++) {
+                setEmpty(binBounds, bin * 6);
+            }
+            double binScale = BIN_COUNT / axisExtent;
+            for (int index = start; index < end; index++) {
+                int primitive = primitiveIndices[index];
+                int bin = binFor(centroids[primitive * 3 + axis], axisMin, binScale);
+                binCounts[bin]++;
+                grow(binBounds, bin * 6, primitiveBounds, primitive * 6);
+            }
+            // suffix sweep: bounds of bins [bin, BIN_COUNT)
+            setEmpty(running, 0);
+            int runningCount = 0;
+            for (int bin = BIN_COUNT - 1; bin > 0; bin--) {
+                grow(running, 0, binBounds, bin * 6);
+                runningCount += binCounts[bin];
+                suffixAreas[bin] = surfaceArea(running, 0);
+                suffixCounts[bin] = runningCount;
+            }
+            // prefix sweep: bounds of bins [0, bin]; the split is between bin and bin + 1
+            setEmpty(running, 0);
+            runningCount = 0;
+            for (int bin = 0; bin < BIN_COUNT - 1; bin++) {
+                grow(running, 0, binBounds, bin * 6);
+                runningCount += binCounts[bin];
+                if (runningCount == 0 || suffixCounts[bin + 1] == 0) {
+                    continue;
+                }
+                double cost = surfaceArea(running, 0) * runningCount + suffixAreas[bin + 1] * suffixCounts[bin + 1];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestSplit = bin;
+                }
+            }
+        }
+
+        int mid;
+        if (bestAxis == -1) {
+            // all centroids coincide; split the range in half
+            mid = start + count / 2;
+        } else {
+            mid = partition(start, end, bestAxis, bestSplit, centroidBounds[bestAxis], BIN_COUNT / (centroidBounds[3 + bestAxis] - centroidBounds[bestAxis]));
+            if (mid == start || mid == end) {
+                mid = start + count / 2;
+            }
+        }
+        Node left = build(start, mid);
+        Node right = build(mid, end);
+        return new Node(bounds, left, right, bestAxis == -1 ? 0 : bestAxis);
+    }
+
+    private static int binFor(double centroid, double axisMin, double binScale) {
+        int bin = (int) ((centroid - axisMin) * binScale);
+        return Math.min(Math.max(bin, 0), BIN_COUNT - 1);
+    }
+
+    // move primitives whose centroid falls in a bin <= splitBin to the front of the range
+    private int partition(int start, int end, int axis, int splitBin, double axisMin, double binScale) {
+        int left = start;
+        int right = end - 1;
+        while (left <= right) {
+            if (binFor(centroids[primitiveIndices[left] * 3 + axis], axisMin, binScale) <= splitBin) {
+                left++;
+            } else {
+                int swap = primitiveIndices[left];
+                primitiveIndices[left] = primitiveIndices[right];
+                primitiveIndices[right] = swap;
+                right--;
+            }
+        }
+        return left;
+    }
+
+    /**
+     * Node is the intermediate tree produced by the builder;
+     * interior nodes have two children, leaf nodes own a range of primitiveIndices
+     */
+    public static final class Node {
+        final public double[] bounds; // minX, minY, minZ, maxX, maxY, maxZ
+        final public Node left;
+        final public Node right;
+        final public int splitAxis;
+        final public int firstPrimitive;
+        final public int primitiveCount;
+
+        Node(double[] bounds, int firstPrimitive, int primitiveCount) {
+            this.bounds = bounds;
+            this.left = null;
+            this.right = null;
+            this.splitAxis = 0;
+            this.firstPrimitive = firstPrimitive;
+            this.primitiveCount = primitiveCount;
+        }
+
+        Node(double[] bounds, Node left, Node right, int splitAxis) {
+            this.bounds = bounds;
+            this.left = left;
+            this.right = right;
+            this.splitAxis = splitAxis;
+            this.firstPrimitive = -1;
+            this.primitiveCount = 0;
+        }
+
+        public boolean isLeaf() {
+            return left == null;
+        }
+
+    }
+}
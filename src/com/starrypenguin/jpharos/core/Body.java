@@ -60,6 +60,13 @@ public class Body {
         return shape.Intersects(ray, this);
     }
 
+    /**
+     * Does this Body block the ray before maxDistance?  Emissive bodies never block light.
+     */
+    public boolean occluded(Ray ray, double maxDistance) {
+        return !emissive && shape.occluded(ray, maxDistance);
+    }
+
     public BoundingBox getBoundingBox() {
         return shape.getBoundingBox();
     }
@@ -18,10 +18,17 @@
 
 package com.starrypenguin.jpharos.core;
 
+import com.starrypenguin.jpharos.cameras.Camera;
+import com.starrypenguin.jpharos.cameras.Film;
 import com.starrypenguin.jpharos.geometry.BoundingBox;
 import com.starrypenguin.jpharos.materials.NullMaterial;
+import com.starrypenguin.jpharos.samplers.IndependentSampler;
+import com.starrypenguin.jpharos.samplers.Sampler;
+import com.starrypenguin.jpharos.util.Shared;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -30,7 +37,12 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <p/>
  * Implements a bounding volume hierarchy (BVH) to accelerate ray intersection detection
  * The current implementation uses a surface area heuristic to construct the BVH and a
- * simple binary tree to represent the hierarchy.
+ * simple binary tree to represent the hierarchy; the tree is then flattened into a
+ * LinearBvh.  Unless wide BVHs are turned off, castRay and occluded walk a WideBvh collapsed from
+ * the LinearBvh, and castRays walks the LinearBvh.
+ * <p>
+ * Two construction strategies are available:  the original greedy pairwise builder, which is
+ * O(n^3) in the number of bodies, and a top-down binned SAH builder, which is O(n log n).
  */
 public class BoundingVolumeHierarchy {
 
@@ -41,9 +53,60 @@ public class BoundingVolumeHierarchy {
      * are not Body objects since they have no corresponding Material
      */
     static AtomicInteger nextID = new AtomicInteger(1);
+    final private static int PACKET_BENCHMARK_ROUNDS = 5;
     public Body head;
+    final public BuildStrategy buildStrategy;
+    final public long buildTimeMillis;
+    // flattened copy of the hierarchy used for traversal; bodies are stored in leaf order
+    final private LinearBvh linearBvh;
+    // null when wide BVHs are turned off
+    final private WideBvh wideBvh;
+    final private Body[] bodies;
+    // reused by the shadow rays of each thread so that occluded does not allocate
+    final private ThreadLocal<BlockerIntersector> blockerIntersectors = ThreadLocal.withInitial(BlockerIntersector::new);
 
     public BoundingVolumeHierarchy(Set<Body> bodies) {
+        this(bodies, BuildStrategy.BINNED_SAH);
+    }
+
+    public BoundingVolumeHierarchy(Set<Body> bodies, BuildStrategy buildStrategy) {
+        Shared.notNullAndNotEmpty(bodies, "Parameter bodies cannot be null or empty!");
+        Shared.notNull(buildStrategy, "Parameter buildStrategy cannot be null!");
+        this.buildStrategy = buildStrategy;
+        long startTime = System.currentTimeMillis();
+        switch (buildStrategy) {
+            case GREEDY_PAIRWISE:
+                head = buildGreedyPairwise(bodies);
+                break;
+            case BINNED_SAH:
+                head = buildBinnedSah(bodies);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown BVH build strategy: " + buildStrategy);
+        }
+        List<Body> leafOrder = new ArrayList<>(bodies.size());
+        linearBvh = new LinearBvh(toNode(head, leafOrder));
+        wideBvh = WideBvh.collapseIfEnabled(linearBvh);
+        this.bodies = leafOrder.toArray(new Body[leafOrder.size()]);
+        buildTimeMillis = System.currentTimeMillis() - startTime;
+    }
+
+    // convert the Body tree rooted at body into builder Nodes, appending the leaf Bodies to leafOrder
+    private static BinnedSahBuilder.Node toNode(Body body, List<Body> leafOrder) {
+        BoundingBox boundingBox = body.getBoundingBox();
+        double[] bounds = BinnedSahBuilder.toPrimitiveBounds(new BoundingBox[]{boundingBox});
+        if (body instanceof BvhNode) {
+            BvhNode node = (BvhNode) body;
+            BinnedSahBuilder.Node left = toNode(node.left, leafOrder);
+            BinnedSahBuilder.Node right = toNode(node.right, leafOrder);
+            return new BinnedSahBuilder.Node(bounds, left, right, 0);
+        }
+        leafOrder.add(body);
+        return new BinnedSahBuilder.Node(bounds, leafOrder.size() - 1, 1);
+    }
+
+    private static Body buildGreedyPairwise(Set<Body> bodies) {
+        Body head = null;
         Set<Body> unpairedBodies = new HashSet<>();
         unpairedBodies.addAll(bodies);
 
@@ -81,12 +144,87 @@ public class BoundingVolumeHierarchy {
         } else {
             head = bodies.iterator().next();
         }
+        return head;
+    }
+
+    private static Body buildBinnedSah(Set<Body> bodies) {
+        Body[] bodyArray = bodies.toArray(new Body[bodies.size()]);
+        if (bodyArray.length == 1) {
+            return bodyArray[0];
+        }
+        BoundingBox[] boundingBoxes = new BoundingBox[bodyArray.length];
+        for (int index = 0; index < bodyArray.length; index++) {
+            boundingBoxes[index] = bodyArray[index].getBoundingBox();
+        }
+        BinnedSahBuilder builder = new BinnedSahBuilder(BinnedSahBuilder.toPrimitiveBounds(boundingBoxes), 1);
+        BinnedSahBuilder.Node root = builder.build();
+        return toBody(root, builder.getPrimitiveIndices(), bodyArray);
+    }
+
+    private static Body toBody(BinnedSahBuilder.Node node, int[] primitiveIndices, Body[] bodyArray) {
+        if (!node.isLeaf()) {
+            return new BvhNode(toBody(node.left, primitiveIndices, bodyArray), toBody(node.right, primitiveIndices, bodyArray));
+        }
+        Body body = bodyArray[primitiveIndices[node.firstPrimitive]];
+        for (int index = 1; index < node.primitiveCount; index++) {
+            body = new BvhNode(body, bodyArray[primitiveIndices[node.firstPrimitive + index]]);
+        }
+        return body;
     }
 
     public void print() {
         System.out.println("BVH is:\n" + head.print(0));
     }
 
+    /**
+     * Number of levels in the hierarchy; a BVH holding a single Body has a depth of 1
+     */
+    public int depth() {
+        return linearBvh.depth();
+    }
+
+    /**
+     * Expected cost of tracing a random ray through the hierarchy; see LinearBvh.sahCost
+     */
+    public double sahCost() {
+        return linearBvh.sahCost();
+    }
+
+    public String getStatistics() {
+        String statistics = String.format("BVH build strategy: %s, build time: %d ms, SAH cost: %.3f, depth: %d",
+                buildStrategy, buildTimeMillis, sahCost(), depth());
+        if (wideBvh != null) {
+            statistics += String.format("; wide BVH width: %d, nodes: %d, depth: %d", wideBvh.width, wideBvh.nodeCount, wideBvh.depth());
+        }
+        return statistics;
+    }
+
+    /**
+     * Traversal statistics of the top-level queries on this hierarchy, for the binary and the wide tree separately;
+     * the queries on the hierarchy inside each mesh are counted by the mesh.  Empty unless TraversalStatistics is
+     * enabled.
+     */
+    public String getTraversalStatistics() {
+        if (!TraversalStatistics.isEnabled()) {
+            return "";
+        }
+        String statistics = "Scene BVH traversal, binary: " + linearBvh.statistics;
+        if (wideBvh != null) {
+            statistics += "\nScene BVH traversal, " + wideBvh.width + "-wide: " + wideBvh.statistics;
+        }
+        return statistics;
+    }
+
+    /**
+     * Build a BVH for the given bodies with every BuildStrategy and print the statistics for each;
+     * note that GREEDY_PAIRWISE is O(n^3) and is impractical for more than a few thousand bodies
+     */
+    public static void compareBuildStrategies(Set<Body> bodies) {
+        for (BuildStrategy buildStrategy : BuildStrategy.values()) {
+            System.out.println(new BoundingVolumeHierarchy(bodies, buildStrategy).getStatistics());
+        }
+    }
+
     /**
      * If Body b1 and Body b2 were grouped together as BvhNode siblings,
      * how would their actual combined surface area compare to the surface area
@@ -98,57 +236,159 @@ public class BoundingVolumeHierarchy {
      * surface area heuristic ratio indicates a better fit and less empty
      * space in the resulting BoundingBox
      */
-    private double calculateSurfaceAreaHeuristic(Body b1, Body b2) {
+    private static double calculateSurfaceAreaHeuristic(Body b1, Body b2) {
         double b1SurfaceArea = b1.surfaceArea();
         double b2SurfaceArea = b2.surfaceArea();
         double boundingBoxSurfaceArea = b1.getBoundingBox().union(b2.getBoundingBox()).surfaceArea();
         return (b1SurfaceArea / boundingBoxSurfaceArea) + (b2SurfaceArea / boundingBoxSurfaceArea);
     }
 
+    /**
+     * Find the closest Body hit by the ray by walking the flattened hierarchy with an explicit stack
+     *
+     * @return the Intersection with the closest Body, or null if the ray hits nothing
+     */
     public Intersection castRay(Ray ray) {
-        Body currentBody = head;
-        // System.out.println("Thread " + Thread.currentThread().getId() + " starting with head " + head);
-        //if (currentBody instanceof BvhNode) {
-        //    System.out.println("Thread " + Thread.currentThread().getId() + " currentBody is a BvhNode");
-        //} else {
-        //    System.out.println("Thread " + Thread.currentThread().getId() + " currentBody is NOT a BvhNode.  currentBody is " + currentBody);
-        //}
-        while (currentBody instanceof BvhNode && currentBody.IntersectsP(ray)) {
-            //System.out.println("Thread " + Thread.currentThread().getId() + " casting currentBody to BvhNode . . .");
-            BvhNode currentNode = (BvhNode) currentBody;
-            //System.out.println("Thread " + Thread.currentThread().getId() + " casted currentBody to a BvhNode");
-            boolean leftIntersects = currentNode.left.IntersectsP(ray);
-            boolean rightIntersects = currentNode.right.IntersectsP(ray);
-            if (leftIntersects && rightIntersects) {
-                // determine which intersects first
-                Intersection leftIntersection = currentNode.left.Intersects(ray);
-                Intersection rightIntersection = currentNode.right.Intersects(ray);
-                if (leftIntersection.intersectionTime < rightIntersection.intersectionTime) {
-                    currentBody = currentNode.left;
+        return castRay(ray, wideBvh != null);
+    }
+
+    private Intersection castRay(Ray ray, boolean wide) {
+        ClosestBodyIntersector closestBodyIntersector = new ClosestBodyIntersector();
+        if (wide) {
+            wideBvh.closestHit(ray, Double.POSITIVE_INFINITY, closestBodyIntersector);
+        } else {
+            linearBvh.closestHit(ray, Double.POSITIVE_INFINITY, closestBodyIntersector);
+        }
+        return closestBodyIntersector.closest;
+    }
+
+    /**
+     * Find the closest Body hit by every ray of a packet with one walk of the flattened hierarchy;
+     * see LinearBvh.closestHit(RayPacket, ...).  Packets always walk the binary tree, even when there is
+     * an N-wide one, since WideBvh has no packet traversal.
+     *
+     * @param intersections filled with the Intersection for each ray of the packet, or null where a ray hits nothing
+     */
+    public void castRays(RayPacket packet, Intersection[] intersections) {
+        Shared.notNull(packet, "Parameter packet cannot be null!");
+        Shared.notNull(intersections, "Parameter intersections cannot be null!");
+        ClosestBodyIntersector[] closestBodyIntersectors = new ClosestBodyIntersector[packet.size()];
+        for (int lane = 0; lane < closestBodyIntersectors.length; lane++) {
+            closestBodyIntersectors[lane] = new ClosestBodyIntersector();
+        }
+        linearBvh.closestHit(packet, closestBodyIntersectors, new int[packet.size()]);
+        for (int lane = 0; lane < closestBodyIntersectors.length; lane++) {
+            intersections[lane] = closestBodyIntersectors[lane].closest;
+        }
+    }
+
+    /**
+     * Time the closest-hit queries for one camera ray per pixel on the binary tree, traced one ray at a time
+     * and as 2x2 and 4x4 packets, and print the primary rays per second for each; with an N-wide tree the
+     * single rays are timed on it too, on a line of their own.  Every query is repeated a few times so that
+     * the JIT has warmed up.
+     */
+    public void comparePacketTraversal(Camera camera) {
+        Shared.notNull(camera, "Parameter camera cannot be null!");
+        Film film = camera.film;
+        Sampler sampler = new IndependentSampler();
+        Intersection[] intersections = new Intersection[RayPacket.MAX_SIZE];
+        for (int packetSize : new int[]{1, 2, 4}) {
+            List<RayPacket> packets = new ArrayList<>();
+            for (int top = 0; top < film.filmHeightInPixels; top += packetSize) {
+                for (int left = 0; left < film.filmWidthInPixels; left += packetSize) {
+                    RayPacket packet = new RayPacket(packetSize * packetSize);
+                    for (int heightIndex = top; heightIndex < Math.min(top + packetSize, film.filmHeightInPixels); heightIndex++) {
+                        for (int widthIndex = left; widthIndex < Math.min(left + packetSize, film.filmWidthInPixels); widthIndex++) {
+                            sampler.startPixelSample(heightIndex, widthIndex, 0);
+                            packet.add(camera.generateRay(film.newFilmCoordinate(heightIndex, widthIndex), sampler));
+                        }
+                    }
+                    packets.add(packet);
+                }
+            }
+            timePrimaryRays(packetSize + "x" + packetSize + " packets, binary BVH", packets, false, intersections);
+            if (packetSize == 1 && wideBvh != null) {
+                timePrimaryRays("1x1 packets, " + wideBvh.width + "-wide BVH", packets, true, intersections);
+            }
+        }
+    }
+
+    // packets of one ray are cast as single rays on the binary or wide tree, larger packets on the binary tree
+    private void timePrimaryRays(String label, List<RayPacket> packets, boolean wide, Intersection[] intersections) {
+        long bestNanos = Long.MAX_VALUE;
+        int rays = 0;
+        int hits = 0;
+        for (int round = 0; round < PACKET_BENCHMARK_ROUNDS; round++) {
+            rays = 0;
+            hits = 0;
+            long startNanos = System.nanoTime();
+            for (RayPacket packet : packets) {
+                if (packet.size() == 1) {
+                    intersections[0] = castRay(packet.get(0), wide);
                 } else {
-                    currentBody = currentNode.right;
+                    castRays(packet, intersections);
                 }
-            } else if (leftIntersects) {
-                //System.out.println("Thread " + Thread.currentThread().getId() + " BVH traversal going left");
-                currentBody = currentNode.left;
-            } else if (rightIntersects) {
-                //System.out.println("Thread " + Thread.currentThread().getId() + " BVH traversal going right");
-                currentBody = currentNode.right;
-            } else {
-                break;
+                for (int lane = 0; lane < packet.size(); lane++) {
+                    hits += intersections[lane] == null ? 0 : 1;
+                }
+                rays += packet.size();
             }
+            bestNanos = Math.min(bestNanos, System.nanoTime() - startNanos);
         }
-        //System.out.println("Thread " + Thread.currentThread().getId() + " BVH traversal intersecting");
-        if (currentBody instanceof BvhNode) {
-            return null;
+        System.out.println(String.format("%s:  %.0f primary rays per second (%d rays, %d hits)",
+                label, rays / (bestNanos / 1e9), rays, hits));
+    }
+
+    /**
+     * Any-hit query for shadow rays:  is there a non-emissive Body between the ray origin and maxDistance?
+     * Returns as soon as any blocker is found and does not create Intersections.
+     *
+     * @param ray the Ray to test
+     * @param maxDistance only hits before this time along the ray count
+     * @param ignoredBody a Body that cannot block the ray, typically the Body the ray leaves; may be null
+     * @return true if something blocks the ray
+     */
+    public boolean occluded(Ray ray, double maxDistance, Body ignoredBody) {
+        BlockerIntersector blockerIntersector = blockerIntersectors.get();
+        blockerIntersector.ignoredBody = ignoredBody;
+        boolean occluded = wideBvh != null ? wideBvh.anyHit(ray, maxDistance, blockerIntersector) : linearBvh.anyHit(ray, maxDistance, blockerIntersector);
+        blockerIntersector.ignoredBody = null; // do not keep the Body reachable from the thread
+        return occluded;
+    }
+
+    public boolean occluded(Ray ray, double maxDistance) {
+        return occluded(ray, maxDistance, null);
+    }
+
+    // remembers the Intersection for the closest Body so that it does not need to be recalculated
+    private class ClosestBodyIntersector implements LinearBvh.PrimitiveIntersector {
+        Intersection closest = null;
+
+        @Override
+        public double intersect(int primitive, Ray ray, double maxTime) {
+            Intersection intersection = bodies[primitive].Intersects(ray);
+            if (intersection != null && intersection.intersectionTime < maxTime) {
+                closest = intersection;
+                return intersection.intersectionTime;
+            }
+            return Double.POSITIVE_INFINITY;
         }
-        return currentBody.Intersects(ray);
+    }
 
+    // any Body other than ignoredBody that blocks the ray is a hit
+    private class BlockerIntersector implements LinearBvh.PrimitiveIntersector {
+        Body ignoredBody = null;
+
+        @Override
+        public double intersect(int primitive, Ray ray, double maxTime) {
+            return (bodies[primitive] != ignoredBody && bodies[primitive].occluded(ray, maxTime)) ? 0.0 : Double.POSITIVE_INFINITY;
+        }
     }
 
-    class BvhNode extends Body {
-        final private Body left;
-        final private Body right;
+    static class BvhNode extends Body {
+        final Body left;
+        final Body right;
         // the BvhNode's BoundingBox is in the "shape" member variable
 
         BvhNode(Body left, Body right) {
@@ -169,6 +409,11 @@ public class BoundingVolumeHierarchy {
             return shape.getBoundingBox().Intersects(ray, null);
         }
 
+        @Override
+        public boolean occluded(Ray ray, double maxDistance) {
+            return left.occluded(ray, maxDistance) || right.occluded(ray, maxDistance);
+        }
+
         @Override
         public BoundingBox getBoundingBox() {
             return shape.getBoundingBox();
@@ -191,5 +436,10 @@ public class BoundingVolumeHierarchy {
 
     } // ============ End BvhNode ==================
 
+    public enum BuildStrategy {
+        GREEDY_PAIRWISE, // repeatedly pair the two bodies with the best surface area ratio; O(n^3)
+        BINNED_SAH       // top-down binned surface area heuristic; O(n log n)
+    }
+
 
 }
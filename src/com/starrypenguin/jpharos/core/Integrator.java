@@ -0,0 +1,112 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.core;
+
+import com.starrypenguin.jpharos.main.jPharos;
+import com.starrypenguin.jpharos.util.Shared;
+
+import java.awt.*;
+
+/**
+ * Integrator
+ * <p/>
+ * Follows a camera ray and the rays that materials spawn from it (reflections, refractions) to find
+ * the colors for a pixel; every ray is cast on the calling thread
+ * <p>
+ * Materials pass the depth of the Intersection they are shading back to traceSecondary, which stops
+ * following a path once it has bounced maxDepth times
+ */
+final public class Integrator {
+
+    final public static int DEFAULT_MAX_DEPTH = 10;
+    final public static int BACKGROUND_RGB = Color.BLACK.getRGB();
+    // what a path that runs out of bounces sees; the same as a mirror reflection of the empty environment
+    final public static int DEPTH_LIMIT_RGB = Color.BLACK.brighter().getRGB();
+
+    final public int maxDepth;
+
+    public Integrator() {
+        this(DEFAULT_MAX_DEPTH);
+    }
+
+    public Integrator(int maxDepth) {
+        Shared.inclusiveRangeCheck(maxDepth, 0, Integer.MAX_VALUE, "Parameter maxDepth cannot be negative!");
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Add the colors seen along a camera ray to colors
+     */
+    public void trace(Ray ray, RgbAccumulator colors) {
+        shade(castRay(ray), colors);
+    }
+
+    /**
+     * Add the colors seen along a camera ray to colors, given the closest Intersection along the ray
+     *
+     * @param maybeIntersection null if the camera ray hits nothing
+     */
+    public void shade(Intersection maybeIntersection, RgbAccumulator colors) {
+        if (maybeIntersection == null) {
+            colors.addPacked(BACKGROUND_RGB);
+            return;
+        }
+        jPharos.instance.raysHit.incrementAndGet();
+        maybeIntersection.body.material.getColor(maybeIntersection, this, 0, colors);
+    }
+
+    /**
+     * Add the colors seen along a ray spawned while shading an Intersection at the given depth to colors
+     *
+     * @param missRgb the color to use if the ray hits nothing
+     */
+    public void traceSecondary(Ray ray, int depth, int missRgb, RgbAccumulator colors) {
+        if (depth >= maxDepth) {
+            colors.addPacked(DEPTH_LIMIT_RGB);
+            return;
+        }
+        Intersection maybeIntersection = castRay(ray);
+        if (maybeIntersection == null) {
+            colors.addPacked(missRgb);
+            return;
+        }
+        maybeIntersection.body.material.getColor(maybeIntersection, this, depth + 1, colors);
+    }
+
+    /**
+     * Find the closest Intersection along every ray of a packet without shading them
+     *
+     * @param intersections filled with the Intersection for each ray of the packet, or null where a ray hits nothing
+     */
+    public void castRays(RayPacket packet, Intersection[] intersections) {
+        Shared.notNull(packet, "Parameter packet cannot be null!");
+        jPharos.instance.raysCast.addAndGet(packet.size());
+        jPharos.instance.scene.boundingVolumeHierarchy.castRays(packet, intersections);
+    }
+
+    /**
+     * Find the closest Intersection along a ray without shading it
+     */
+    public Intersection castRay(Ray ray) {
+        Shared.notNull(ray, "Parameter ray cannot be null!");
+        jPharos.instance.raysCast.incrementAndGet();
+        return jPharos.instance.scene.boundingVolumeHierarchy.castRay(ray);
+    }
+
+}
@@ -35,8 +35,18 @@ final public class Intersection implements Comparable<Intersection> {
     public final Normal surfaceNormal;
     public final Point intersectionPoint;
     public final Body body;
+    // for a Shape made of triangles:  the index of the triangle hit and the barycentric u and v of the hit,
+    // the weights of the triangle's second and third vertex; otherwise -1, 0 and 0
+    public final int primitive;
+    public final double u;
+    public final double v;
 
     public Intersection(Ray ray, double intersectionTime, Normal surfaceNormal, Point intersectionPoint, Body body) {
+        this(ray, intersectionTime, surfaceNormal, intersectionPoint, body, -1, 0.0, 0.0);
+    }
+
+    public Intersection(Ray ray, double intersectionTime, Normal surfaceNormal, Point intersectionPoint, Body body,
+                        int primitive, double u, double v) {
         Shared.notNull(ray, "ray cannot be null!");
         Shared.notNaNAndPositive(intersectionTime, "intersectionTime cannot be Not A Number!");
         Shared.notNull(surfaceNormal, "surfaceNormal cannot be null!");
@@ -46,6 +56,9 @@ final public class Intersection implements Comparable<Intersection> {
         this.surfaceNormal = surfaceNormal;
         this.intersectionPoint = intersectionPoint;
         this.body = body;
+        this.primitive = primitive;
+        this.u = u;
+        this.v = v;
     }
 
     @Override
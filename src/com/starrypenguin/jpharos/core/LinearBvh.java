@@ -0,0 +1,502 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.starrypenguin.jpharos.core;
+
+import com.starrypenguin.jpharos.geometry.BoundingBox;
+import com.starrypenguin.jpharos.util.Shared;
+
+import java.util.Arrays;
+
+/**
+ * LinearBvh
+ * <p/>
+ * Bounding volume hierarchy flattened into primitive arrays in depth-first order, so that
+ * the first child of an interior node is stored immediately after its parent
+ * <p>
+ * For node n:
+ * <ul>
+ * <li>nodeBounds[6n .. 6n+5] holds minX, minY, minZ, maxX, maxY, maxZ</li>
+ * <li>nodeData[2n] holds the index of the second child for interior nodes, or the index of the first primitive for leaf nodes</li>
+ * <li>nodeData[2n+1] holds the number of primitives for leaf nodes (always positive), or -(splitAxis + 1) for interior nodes</li>
+ * </ul>
+ * Primitives are identified by their position in leaf order; the owner of the hierarchy is expected to
+ * store its primitives in that order (see BinnedSahBuilder.getPrimitiveIndices) so that a leaf covers a
+ * contiguous range of them.
+ * <p>
+ * Reference:  "Physically Based Rendering", Third Edition, Section 4.3.4 "Compact BVH For Traversal"
+ */
+public class LinearBvh {
+
+    final public static int BOUNDS_STRIDE = 6;
+    final public static int DATA_STRIDE = 2;
+    final private static int INITIAL_STACK_SIZE = 64;
+
+    final public double[] nodeBounds;
+    final public int[] nodeData;
+    final public int nodeCount;
+    // counts only when TraversalStatistics.isEnabled()
+    final public TraversalStatistics statistics = new TraversalStatistics();
+    final private ThreadLocal<Traversal> traversals = ThreadLocal.withInitial(Traversal::new);
+
+    public LinearBvh(BinnedSahBuilder.Node root) {
+        Shared.notNull(root, "Parameter root cannot be null!");
+        int count = countNodes(root);
+        this.nodeBounds = new double[count * BOUNDS_STRIDE];
+        this.nodeData = new int[count * DATA_STRIDE];
+        this.nodeCount = count;
+        int written = flatten(root, 0);
+        if (written != count) {
+            throw new IllegalStateException("Flattened " + written + " BVH nodes but expected " + count);
+        }
+    }
+
+    public LinearBvh(double[] nodeBounds, int[] nodeData) {
+        Shared.notNull(nodeBounds, "Parameter nodeBounds cannot be null!");
+        Shared.notNull(nodeData, "Parameter nodeData cannot be null!");
+        if (nodeBounds.length == 0 || nodeBounds.length / BOUNDS_STRIDE != nodeData.length / DATA_STRIDE) {
+            throw new IllegalArgumentException("Parameters nodeBounds and nodeData must describe the same, non-zero number of nodes!");
+        }
+        this.nodeBounds = nodeBounds;
+        this.nodeData = nodeData;
+        this.nodeCount = nodeBounds.length / BOUNDS_STRIDE;
+    }
+
+    private static int countNodes(BinnedSahBuilder.Node node) {
+        // iterative, like flatten
+        int count = 0;
+        BinnedSahBuilder.Node[] stack = new BinnedSahBuilder.Node[INITIAL_STACK_SIZE];
+        int stackSize = 0;
+        stack[stackSize++] = node;
+        while (stackSize > 0) {
+            BinnedSahBuilder.Node current = stack[--stackSize];
+            count++;
+            if (!current.isLeaf()) {
+                if (stackSize + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[stackSize++] = current.right;
+                stack[stackSize++] = current.left;
+            }
+        }
+        return count;
+    }
+
+    // write the tree in depth-first order starting at node index nodeIndex; returns the next free node index
+    private int flatten(BinnedSahBuilder.Node root, int nodeIndex) {
+        BinnedSahBuilder.Node[] stack = new BinnedSahBuilder.Node[INITIAL_STACK_SIZE];
+        // the node index of the parent of each second child on the stack, or -1 for a first child
+        int[] parentStack = new int[INITIAL_STACK_SIZE];
+        int stackSize = 0;
+        stack[stackSize] = root;
+        parentStack[stackSize++] = -1;
+        while (stackSize > 0) {
+            BinnedSahBuilder.Node node = stack[--stackSize];
+            int parent = parentStack[stackSize];
+            if (parent != -1) {
+                nodeData[parent * DATA_STRIDE] = nodeIndex;
+            }
+            System.arraycopy(node.bounds, 0, nodeBounds, nodeIndex * BOUNDS_STRIDE, BOUNDS_STRIDE);
+            if (node.isLeaf()) {
+                nodeData[nodeIndex * DATA_STRIDE] = node.firstPrimitive;
+                nodeData[nodeIndex * DATA_STRIDE + 1] = node.primitiveCount;
+            } else {
+                nodeData[nodeIndex * DATA_STRIDE + 1] = -(node.splitAxis + 1);
+                if (stackSize + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                    parentStack = Arrays.copyOf(parentStack, parentStack.length * 2);
+                }
+                // the first child is popped next, so its subtree is written right after its parent
+                stack[stackSize] = node.right;
+                parentStack[stackSize++] = nodeIndex;
+                stack[stackSize] = node.left;
+                parentStack[stackSize++] = -1;
+            }
+            nodeIndex++;
+        }
+        return nodeIndex;
+    }
+
+    public boolean isLeaf(int node) {
+        return nodeData[node * DATA_STRIDE + 1] > 0;
+    }
+
+    /**
+     * Number of levels in the hierarchy; a single leaf has a depth of 1
+     */
+    public int depth() {
+        int maxDepth = 0;
+        int[] nodeStack = new int[INITIAL_STACK_SIZE];
+        int[] depthStack = new int[INITIAL_STACK_SIZE];
+        int stackSize = 0;
+        nodeStack[stackSize] = 0;
+        depthStack[stackSize++] = 1;
+        while (stackSize > 0) {
+            int node = nodeStack[--stackSize];
+            int depth = depthStack[stackSize];
+            maxDepth = Math.max(maxDepth, depth);
+            if (!isLeaf(node)) {
+                if (stackSize + 2 > nodeStack.length) {
+                    nodeStack = Arrays.copyOf(nodeStack, nodeStack.length * 2);
+                    depthStack = Arrays.copyOf(depthStack, depthStack.length * 2);
+                }
+                nodeStack[stackSize] = node + 1;
+                depthStack[stackSize++] = depth + 1;
+                nodeStack[stackSize] = nodeData[node * DATA_STRIDE];
+                depthStack[stackSize++] = depth + 1;
+            }
+        }
+        return maxDepth;
+    }
+
+    /**
+     * Expected cost of tracing a random ray through the hierarchy:  the traversal cost of every interior node and
+     * the intersection cost of every primitive in every leaf, each weighted by the probability that a ray hitting
+     * the root bounds also hits the node's bounds (the ratio of their surface areas)
+     */
+    public double sahCost() {
+        double rootArea = BinnedSahBuilder.surfaceArea(nodeBounds, 0);
+        double cost = 0.0;
+        for (int node = 0; node < nodeCount; node++) {
+            double area = BinnedSahBuilder.surfaceArea(nodeBounds, node * BOUNDS_STRIDE);
+            if (isLeaf(node)) {
+                cost += BinnedSahBuilder.INTERSECTION_COST * area * nodeData[node * DATA_STRIDE + 1];
+            } else {
+                cost += BinnedSahBuilder.TRAVERSAL_COST * area;
+            }
+        }
+        return rootArea > 0.0 ? cost / rootArea : cost;
+    }
+
+    /**
+     * Slab test of the ray against the bounds of a node; see BoundingBox.intersectSlabs
+     *
+     * @return the time the ray enters the bounds, or Double.POSITIVE_INFINITY if the ray misses them before maxTime
+     */
+    public double entryTime(int node, Ray ray, double maxTime) {
+        return entryTime(node, ray, maxTime, new double[2]);
+    }
+
+    // the traversal loops reuse one interval for every node they test
+    private double entryTime(int node, Ray ray, double maxTime, double[] interval) {
+        interval[0] = ray.minTime;
+        interval[1] = maxTime;
+        return BoundingBox.intersectSlabs(nodeBounds, node * BOUNDS_STRIDE, ray, interval) ? interval[0] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Find the closest primitive hit by the ray before maxTime and within the range of the ray
+     * <p>
+     * Both children of an interior node are tested against the ray and pushed so that the nearer child
+     * is visited first; each stack entry remembers the time the ray enters the node, and a node whose
+     * entry time is not before the closest hit found so far is skipped without being visited
+     * <p>
+     * The stacks are reused by every query on the same thread, so intersector must not start another
+     * query on this hierarchy
+     *
+     * @return the leaf-order index of the closest primitive hit, or -1 if no primitive is hit
+     */
+    public int closestHit(Ray ray, double maxTime, PrimitiveIntersector intersector) {
+        Traversal traversal = traversals.get();
+        traversal.closestTimes[0] = Math.min(maxTime, ray.maxTime);
+        traversal.closestPrimitives[0] = -1;
+        int nodesVisited = closestHitInSubtree(0, ray, intersector, 0, traversal);
+        if (TraversalStatistics.ENABLED) {
+            statistics.countClosestHit(nodesVisited);
+        }
+        return traversal.closestPrimitives[0];
+    }
+
+    // closest hit search below root, starting from and updating the closest hit in lane of the closestTimes and
+    // closestPrimitives of traversal; returns the number of nodes visited
+    private int closestHitInSubtree(int root, Ray ray, PrimitiveIntersector intersector, int lane, Traversal traversal) {
+        int closestPrimitive = traversal.closestPrimitives[lane];
+        double closestTime = traversal.closestTimes[lane];
+        int nodesVisited = 0;
+        int[] nodeStack = traversal.nodeStack;
+        double[] entryStack = traversal.entryStack;
+        int stackSize = 0;
+        final double[] interval = traversal.interval;
+        final double[] hitTime = traversal.hitTime;
+        double rootEntry = entryTime(root, ray, closestTime, interval);
+        if (rootEntry != Double.POSITIVE_INFINITY) {
+            nodeStack[stackSize] = root;
+            entryStack[stackSize++] = rootEntry;
+        }
+        while (stackSize > 0) {
+            stackSize--;
+            if (entryStack[stackSize] >= closestTime) {
+                continue; // the ray enters this node after the closest hit found so far
+            }
+            int node = nodeStack[stackSize];
+            nodesVisited++;
+            int offset = nodeData[node * DATA_STRIDE];
+            int count = nodeData[node * DATA_STRIDE + 1];
+            if (count > 0) {
+                int primitive = intersector.closestInLeaf(offset, count, ray, closestTime, hitTime);
+                if (primitive != -1) {
+                    closestTime = hitTime[0];
+                    closestPrimitive = primitive;
+                }
+            } else {
+                int firstChild = node + 1; // the first child is adjacent to its parent
+                double firstEntry = entryTime(firstChild, ray, closestTime, interval);
+                double secondEntry = entryTime(offset, ray, closestTime, interval);
+                if (stackSize + 2 > nodeStack.length) {
+                    nodeStack = traversal.nodeStack = Arrays.copyOf(nodeStack, nodeStack.length * 2);
+                    entryStack = traversal.entryStack = Arrays.copyOf(entryStack, entryStack.length * 2);
+                }
+                // push the farther child first so that the nearer child is popped first
+                int nearChild = firstChild;
+                double nearEntry = firstEntry;
+                int farChild = offset;
+                double farEntry = secondEntry;
+                if (secondEntry < firstEntry) {
+                    nearChild = offset;
+                    nearEntry = secondEntry;
+                    farChild = firstChild;
+                    farEntry = firstEntry;
+                }
+                if (farEntry != Double.POSITIVE_INFINITY) {
+                    nodeStack[stackSize] = farChild;
+                    entryStack[stackSize++] = farEntry;
+                }
+                if (nearEntry != Double.POSITIVE_INFINITY) {
+                    nodeStack[stackSize] = nearChild;
+                    entryStack[stackSize++] = nearEntry;
+                }
+            }
+        }
+        traversal.closestTimes[lane] = closestTime;
+        traversal.closestPrimitives[lane] = closestPrimitive;
+        return nodesVisited;
+    }
+
+    /**
+     * Find the closest primitive hit by every ray of a packet, walking the hierarchy once for the whole packet
+     * <p>
+     * The packet shares one stack; each entry carries a mask of the lanes still active for that node.  A node is
+     * first tested against the whole packet with an interval slab test, which rejects it for every lane at once,
+     * and only then against each active ray.  Children are visited nearest first along the direction of the
+     * packet.  When only one ray of the packet is left in a subtree, that ray finishes the subtree on its own,
+     * and packets whose rays point different ways are traced one ray at a time.
+     *
+     * @param intersectors one PrimitiveIntersector for each lane
+     * @param closestPrimitives filled with the leaf-order index of the closest primitive hit by each lane, or -1
+     */
+    public void closestHit(RayPacket packet, PrimitiveIntersector[] intersectors, int[] closestPrimitives) {
+        Shared.notNull(packet, "Parameter packet cannot be null!");
+        int size = packet.size();
+        if (intersectors.length < size || closestPrimitives.length < size) {
+            throw new IllegalArgumentException("Need an intersector and a result for every ray in the packet!");
+        }
+        if (size == 1 || !packet.isCoherent()) {
+            for (int lane = 0; lane < size; lane++) {
+                closestPrimitives[lane] = closestHit(packet.get(lane), Double.POSITIVE_INFINITY, intersectors[lane]);
+            }
+            return;
+        }
+        Traversal traversal = traversals.get();
+        final double[] closestTimes = traversal.closestTimes;
+        final int[] packetPrimitives = traversal.closestPrimitives;
+        for (int lane = 0; lane < size; lane++) {
+            closestTimes[lane] = packet.get(lane).maxTime;
+            packetPrimitives[lane] = -1;
+        }
+        int nodesVisited = 0;
+        int[] nodeStack = traversal.packetNodeStack;
+        int[] maskStack = traversal.maskStack;
+        int stackSize = 0;
+        nodeStack[stackSize] = 0;
+        maskStack[stackSize++] = packet.allLanes();
+        final double[] interval = traversal.interval;
+        final double[] hitTime = traversal.hitTime;
+        while (stackSize > 0) {
+            stackSize--;
+            int node = nodeStack[stackSize];
+            int mask = maskStack[stackSize];
+            double maxTime = 0.0;
+            for (int lanes = mask; lanes != 0; lanes &= lanes - 1) {
+                maxTime = Math.max(maxTime, closestTimes[Integer.numberOfTrailingZeros(lanes)]);
+            }
+            if (!BoundingBox.intersectSlabs(nodeBounds, node * BOUNDS_STRIDE, packet, packet.minTime, maxTime)) {
+                continue; // no ray of the packet can hit this node
+            }
+            int hitMask = 0;
+            for (int lanes = mask; lanes != 0; lanes &= lanes - 1) {
+                int lane = Integer.numberOfTrailingZeros(lanes);
+                if (entryTime(node, packet.get(lane), closestTimes[lane], interval) < closestTimes[lane]) {
+                    hitMask |= 1 << lane;
+                }
+            }
+            if (hitMask == 0) {
+                continue;
+            }
+            if (Integer.bitCount(hitMask) == 1) {
+                // the packet has diverged; the one ray left finishes this subtree on its own
+                int lane = Integer.numberOfTrailingZeros(hitMask);
+                nodesVisited += closestHitInSubtree(node, packet.get(lane), intersectors[lane], lane, traversal);
+                continue;
+            }
+            nodesVisited++;
+            int offset = nodeData[node * DATA_STRIDE];
+            int count = nodeData[node * DATA_STRIDE + 1];
+            if (count > 0) {
+                for (int lanes = hitMask; lanes != 0; lanes &= lanes - 1) {
+                    int lane = Integer.numberOfTrailingZeros(lanes);
+                    int primitive = intersectors[lane].closestInLeaf(offset, count, packet.get(lane), closestTimes[lane], hitTime);
+                    if (primitive != -1) {
+                        closestTimes[lane] = hitTime[0];
+                        packetPrimitives[lane] = primitive;
+                    }
+                }
+            } else {
+                // visit first the child whose center comes first along the direction of the first active ray
+                Ray leadRay = packet.get(Integer.numberOfTrailingZeros(hitMask));
+                int first = (node + 1) * BOUNDS_STRIDE;
+                int second = offset * BOUNDS_STRIDE;
+                double secondAhead = (nodeBounds[second] + nodeBounds[second + 3] - nodeBounds[first] - nodeBounds[first + 3]) * leadRay.direction.x
+                        + (nodeBounds[second + 1] + nodeBounds[second + 4] - nodeBounds[first + 1] - nodeBounds[first + 4]) * leadRay.direction.y
+                        + (nodeBounds[second + 2] + nodeBounds[second + 5] - nodeBounds[first + 2] - nodeBounds[first + 5]) * leadRay.direction.z;
+                int nearChild = secondAhead < 0.0 ? offset : node + 1;
+                int farChild = secondAhead < 0.0 ? node + 1 : offset;
+                if (stackSize + 2 > nodeStack.length) {
+                    nodeStack = traversal.packetNodeStack = Arrays.copyOf(nodeStack, nodeStack.length * 2);
+                    maskStack = traversal.maskStack = Arrays.copyOf(maskStack, maskStack.length * 2);
+                }
+                nodeStack[stackSize] = farChild;
+                maskStack[stackSize++] = hitMask;
+                nodeStack[stackSize] = nearChild;
+                maskStack[stackSize++] = hitMask;
+            }
+        }
+        System.arraycopy(packetPrimitives, 0, closestPrimitives, 0, size);
+        if (TraversalStatistics.ENABLED) {
+            statistics.countPacket(size, nodesVisited);
+        }
+    }
+
+    /**
+     * Determine whether the ray hits any primitive before maxDistance and within the range of the ray;
+     * returns at the first hit found
+     */
+    public boolean anyHit(Ray ray, double maxDistance, PrimitiveIntersector intersector) {
+        final double maxTime = Math.min(maxDistance, ray.maxTime);
+        int nodesVisited = 0;
+        boolean hit = false;
+        Traversal traversal = traversals.get();
+        int[] stack = traversal.anyHitStack;
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        final double[] interval = traversal.interval;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            if (entryTime(node, ray, maxTime, interval) == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            nodesVisited++;
+            int offset = nodeData[node * DATA_STRIDE];
+            int count = nodeData[node * DATA_STRIDE + 1];
+            if (count > 0) {
+                if (intersector.anyInLeaf(offset, count, ray, maxTime)) {
+                    hit = true;
+                    break;
+                }
+            } else {
+                if (stackSize + 2 > stack.length) {
+                    stack = traversal.anyHitStack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[stackSize++] = offset;
+                stack[stackSize++] = node + 1;
+            }
+        }
+        if (TraversalStatistics.ENABLED) {
+            statistics.countAnyHit(nodesVisited);
+        }
+        return hit;
+    }
+
+    // scratch space for the queries of one thread on one hierarchy; the stacks grow to the depth of the hierarchy
+    // and are then reused, so a query does not allocate
+    private static final class Traversal {
+        // nodeStack and entryStack grow together
+        int[] nodeStack = new int[INITIAL_STACK_SIZE];
+        double[] entryStack = new double[INITIAL_STACK_SIZE];
+        int[] anyHitStack = new int[INITIAL_STACK_SIZE];
+        int[] packetNodeStack = new int[INITIAL_STACK_SIZE];
+        int[] maskStack = new int[INITIAL_STACK_SIZE];
+        final double[] interval = new double[2];
+        final double[] hitTime = new double[1];
+        // the closest hit so far in each lane of a packet, or in lane 0 for a single ray
+        final double[] closestTimes = new double[RayPacket.MAX_SIZE];
+        final int[] closestPrimitives = new int[RayPacket.MAX_SIZE];
+    }
+
+    /**
+     * Callback used by the traversal to test the primitives in a leaf
+     * <p>
+     * The traversal hands over a whole leaf at a time through closestInLeaf and anyInLeaf; by default these test
+     * the primitives one at a time with intersect, and an owner that stores its primitives for an
+     * IntersectionKernel can override them to test the whole leaf at once
+     */
+    public interface PrimitiveIntersector {
+        /**
+         * @param primitive leaf-order index of the primitive to test
+         * @param ray the Ray to test
+         * @param maxTime only hits before this time are of interest
+         * @return the time of the hit if it is before maxTime, otherwise Double.POSITIVE_INFINITY;
+         * during closestHit a returned time below maxTime always becomes the new closest hit
+         */
+        double intersect(int primitive, Ray ray, double maxTime);
+
+        /**
+         * Find the closest of the primitives first .. first + count - 1 hit before maxTime; a tie goes to the
+         * primitive with the lowest index
+         *
+         * @param hitTime receives the time of the hit in element 0, if there is one
+         * @return the leaf-order index of the closest primitive hit, or -1 if no primitive is hit
+         */
+        default int closestInLeaf(int first, int count, Ray ray, double maxTime, double[] hitTime) {
+            int closest = -1;
+            for (int primitive = first; primitive < first + count; primitive++) {
+                double time = intersect(primitive, ray, maxTime);
+                if (time < maxTime) {
+                    maxTime = time;
+                    closest = primitive;
+                }
+            }
+            if (closest != -1) {
+                hitTime[0] = maxTime;
+            }
+            return closest;
+        }
+
+        /**
+         * @return true if any of the primitives first .. first + count - 1 is hit before maxTime
+         */
+        default boolean anyInLeaf(int first, int count, Ray ray, double maxTime) {
+            for (int primitive = first; primitive < first + count; primitive++) {
+                if (intersect(primitive, ray, maxTime) < maxTime) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -27,26 +27,65 @@ import com.starrypenguin.jpharos.util.Shared;
  * Ray
  * <p/>
  * The ray class represents a ray of light
+ * <p>
+ * Each Ray is tested against many bounding boxes and triangles, so the values that the intersection
+ * kernels need from it are calculated once when the Ray is created:  the reciprocal of the direction,
+ * the sign of each direction component, and the [minTime, maxTime] range of the ray that can be hit.
  */
 final public class Ray {
 
     public final Point origin;
     public final Vector direction;
     public final Film.FilmCoordinate filmCoordinate;
+    // only hits with minTime < time < maxTime count
+    public final double minTime;
+    public final double maxTime;
+    // reciprocal of each direction component; infinite when the component is zero
+    public final double inverseX;
+    public final double inverseY;
+    public final double inverseZ;
+    // 1 if the direction component is negative, 0 otherwise; used to pick the near and far slab of a box
+    public final int signX;
+    public final int signY;
+    public final int signZ;
 
-    public Ray(Point origin, Vector direction, Film.FilmCoordinate filmCoordinate) {
+    public Ray(Point origin, Vector direction, Film.FilmCoordinate filmCoordinate, double minTime, double maxTime) {
         Shared.notNull(origin, "origin cannot be null!");
         Shared.notNull(direction, "direction cannot be null!");
+        Shared.notNaNAndPositive(minTime, "minTime must be a non-negative number!");
+        if (Double.isNaN(maxTime) || maxTime < minTime) {
+            throw new IllegalArgumentException("maxTime cannot be less than minTime!");
+        }
         // filmCoordinate can be null if the Ray does not originate at the camera
         this.origin = origin;
         this.direction = direction;
         this.filmCoordinate = filmCoordinate;
+        this.minTime = minTime;
+        this.maxTime = maxTime;
+        this.inverseX = 1.0 / direction.x;
+        this.inverseY = 1.0 / direction.y;
+        this.inverseZ = 1.0 / direction.z;
+        // test the reciprocal rather than the direction so that -0.0 counts as negative
+        this.signX = inverseX < 0.0 ? 1 : 0;
+        this.signY = inverseY < 0.0 ? 1 : 0;
+        this.signZ = inverseZ < 0.0 ? 1 : 0;
+    }
+
+    public Ray(Point origin, Vector direction, Film.FilmCoordinate filmCoordinate) {
+        this(origin, direction, filmCoordinate, 0.0, Double.POSITIVE_INFINITY);
     }
 
     public Ray(Point origin, Vector direction) {
         this(origin, direction, null);
     }
 
+    /**
+     * @return true if time is inside the range of this Ray that can be hit
+     */
+    public boolean inRange(double time) {
+        return time > minTime && time < maxTime;
+    }
+
     public Point atTime(double time) {
         return this.origin.plus(direction.scale(time));
     }
@@ -0,0 +1,113 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.core;
+
+import com.starrypenguin.jpharos.util.Shared;
+
+/**
+ * RayPacket
+ * <p/>
+ * A small group of Rays, such as the camera rays for a 2x2 or 4x4 block of pixels, that are traced through a
+ * LinearBvh together; each ray is a lane of the packet and is tracked with one bit of an int mask
+ * <p>
+ * The packet also keeps the range of its ray origins and reciprocal directions, so that a single interval slab
+ * test can show that none of its rays hit a box (see BoundingBox.intersectSlabs).  That only works when every
+ * ray points the same way along each axis; otherwise the packet is not coherent and is traced one ray at a time.
+ */
+final public class RayPacket {
+
+    final public static int MAX_SIZE = 32;
+
+    final private Ray[] rays;
+    private int size;
+    private boolean coherent;
+    // min x, y, z followed by max x, y, z, the same layout as node bounds
+    final public double[] originBounds = new double[6];
+    final public double[] inverseBounds = new double[6];
+    public double minTime;
+    public int signX;
+    public int signY;
+    public int signZ;
+
+    public RayPacket(int capacity) {
+        Shared.inclusiveRangeCheck(capacity, 1, MAX_SIZE, "Parameter capacity must be between 1 and " + MAX_SIZE + "!");
+        this.rays = new Ray[capacity];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(Ray ray) {
+        Shared.notNull(ray, "Parameter ray cannot be null!");
+        if (size == rays.length) {
+            throw new IllegalStateException("RayPacket is full!");
+        }
+        if (size == 0) {
+            coherent = true;
+            minTime = ray.minTime;
+            signX = ray.signX;
+            signY = ray.signY;
+            signZ = ray.signZ;
+            originBounds[0] = originBounds[3] = ray.origin.x;
+            originBounds[1] = originBounds[4] = ray.origin.y;
+            originBounds[2] = originBounds[5] = ray.origin.z;
+            inverseBounds[0] = inverseBounds[3] = ray.inverseX;
+            inverseBounds[1] = inverseBounds[4] = ray.inverseY;
+            inverseBounds[2] = inverseBounds[5] = ray.inverseZ;
+        } else {
+            coherent &= ray.signX == signX && ray.signY == signY && ray.signZ == signZ;
+            minTime = Math.min(minTime, ray.minTime);
+            include(originBounds, ray.origin.x, ray.origin.y, ray.origin.z);
+            include(inverseBounds, ray.inverseX, ray.inverseY, ray.inverseZ);
+        }
+        rays[size++] = ray;
+    }
+
+    private static void include(double[] bounds, double x, double y, double z) {
+        bounds[0] = Math.min(bounds[0], x);
+        bounds[1] = Math.min(bounds[1], y);
+        bounds[2] = Math.min(bounds[2], z);
+        bounds[3] = Math.max(bounds[3], x);
+        bounds[4] = Math.max(bounds[4], y);
+        bounds[5] = Math.max(bounds[5], z);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Ray get(int lane) {
+        return rays[lane];
+    }
+
+    /**
+     * Do all the rays point the same way along each axis?
+     */
+    public boolean isCoherent() {
+        return coherent;
+    }
+
+    /**
+     * A mask with the bit for every lane set
+     */
+    public int allLanes() {
+        return size == MAX_SIZE ? -1 : (1 << size) - 1;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.core;
+
+/**
+ * RgbAccumulator
+ * <p/>
+ * Collects the colors that shading finds for one ray as red, green, and blue sums on a 0.0 to 1.0 scale;
+ * the color of the ray is the mean of everything added
+ * <p>
+ * One accumulator is reused for every ray a thread traces, so shading does not allocate any color objects.
+ * Colors that materials keep are packed into ints in the java.awt.Color.getRGB layout.
+ */
+final public class RgbAccumulator {
+
+    private double redSum;
+    private double greenSum;
+    private double blueSum;
+    private int count;
+
+    public void reset() {
+        redSum = 0.0;
+        greenSum = 0.0;
+        blueSum = 0.0;
+        count = 0;
+    }
+
+    public void add(double red, double green, double blue) {
+        redSum += red;
+        greenSum += green;
+        blueSum += blue;
+        count++;
+    }
+
+    public void addPacked(int rgb) {
+        add(red(rgb), green(rgb), blue(rgb));
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public double redSum() {
+        return redSum;
+    }
+
+    public double greenSum() {
+        return greenSum;
+    }
+
+    public double blueSum() {
+        return blueSum;
+    }
+
+    public double meanRed() {
+        return count == 0 ? 0.0 : redSum / count;
+    }
+
+    public double meanGreen() {
+        return count == 0 ? 0.0 : greenSum / count;
+    }
+
+    public double meanBlue() {
+        return count == 0 ? 0.0 : blueSum / count;
+    }
+
+    /**
+     * Pack components on a 0.0 to 1.0 scale into an int, rounding the same way as java.awt.Color(float, float, float)
+     */
+    public static int pack(double red, double green, double blue) {
+        return 0xFF000000 | (toByte(red) << 16) | (toByte(green) << 8) | toByte(blue);
+    }
+
+    private static int toByte(double component) {
+        return Math.min(255, Math.max(0, (int) (component * 255 + 0.5)));
+    }
+
+    public static double red(int rgb) {
+        return ((rgb >> 16) & 0xFF) / 255.0;
+    }
+
+    public static double green(int rgb) {
+        return ((rgb >> 8) & 0xFF) / 255.0;
+    }
+
+    public static double blue(int rgb) {
+        return (rgb & 0xFF) / 255.0;
+    }
+
+    @Override
+    public String toString() {
+        return "RgbAccumulator{" +
+                "meanRed=" + meanRed() +
+                ", meanGreen=" + meanGreen() +
+                ", meanBlue=" + meanBlue() +
+                ", count=" + count +
+                '}';
+    }
+}
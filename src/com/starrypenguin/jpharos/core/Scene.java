@@ -38,12 +38,17 @@ final public class Scene {
     final public BoundingVolumeHierarchy boundingVolumeHierarchy;
 
     public Scene(Camera camera, Set<Light> lights,  Set<Body> bodies) {
+        this(camera, lights, bodies, BoundingVolumeHierarchy.BuildStrategy.BINNED_SAH);
+    }
+
+    public Scene(Camera camera, Set<Light> lights, Set<Body> bodies, BoundingVolumeHierarchy.BuildStrategy buildStrategy) {
         Shared.notNull(camera, "camera cannot be null!");
         Shared.notNullAndNotEmpty(lights, "lights cannot be null or empty!");
         Shared.notNullAndNotEmpty(bodies, "bodies cannot be null or empty!");
+        Shared.notNull(buildStrategy, "buildStrategy cannot be null!");
         this.camera = camera;
         this.lights = lights;
         this.bodies = bodies;
-        this.boundingVolumeHierarchy = new BoundingVolumeHierarchy(bodies);
+        this.boundingVolumeHierarchy = new BoundingVolumeHierarchy(bodies, buildStrategy);
     }
 }
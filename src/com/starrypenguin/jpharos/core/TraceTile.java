@@ -0,0 +1,117 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.core;
+
+import com.starrypenguin.jpharos.cameras.Camera;
+import com.starrypenguin.jpharos.cameras.Film;
+import com.starrypenguin.jpharos.main.jPharos;
+import com.starrypenguin.jpharos.parallel.RenderTile;
+import com.starrypenguin.jpharos.samplers.Sampler;
+import com.starrypenguin.jpharos.util.Shared;
+
+/**
+ * TraceTile
+ * <p/>
+ * Cast every ray for the pixels of one RenderTile on the current thread and capture the results on the film;
+ * each tile gets its own Sampler, which is the current one for the thread while the tile is traced
+ * <p>
+ * With a packet size above 1, the camera rays for each block of packetSize x packetSize pixels are cast together
+ * as a RayPacket, one sample index at a time, and then shaded one by one.  Packets walk the binary BVH even when
+ * an N-wide one is built; only single rays and the rays cast while shading use the wide tree.
+ */
+public class TraceTile implements Runnable {
+
+    final public static String PACKET_SIZE_PROPERTY = "jpharos.packetSize";
+    final public static int MAX_PACKET_SIZE = 4;
+
+    private final RenderTile tile;
+    private final int packetSize;
+
+    public TraceTile(RenderTile tile) {
+        this(tile, 1);
+    }
+
+    public TraceTile(RenderTile tile, int packetSize) {
+        Shared.notNull(tile, "Parameter tile cannot be null!");
+        Shared.inclusiveRangeCheck(packetSize, 1, MAX_PACKET_SIZE, "Parameter packetSize must be between 1 and " + MAX_PACKET_SIZE + "!");
+        this.tile = tile;
+        this.packetSize = packetSize;
+    }
+
+    /**
+     * The packet size set with the jpharos.packetSize system property; 1, which turns packets off, if it is not set
+     */
+    public static int packetSize() {
+        return Integer.getInteger(PACKET_SIZE_PROPERTY, 1);
+    }
+
+    @Override
+    public void run() {
+        Camera camera = jPharos.instance.camera;
+        Integrator integrator = jPharos.instance.integrator;
+        RgbAccumulator colors = new RgbAccumulator();
+        Sampler sampler = jPharos.instance.samplerFactory.apply(camera.film.raysPerPixel);
+        Sampler.setCurrent(sampler);
+        if (packetSize > 1) {
+            tracePackets(camera, integrator, sampler, colors);
+            return;
+        }
+        camera.generateRays(tile.firstHeightIndex, tile.firstWidthIndex, tile.heightInPixels, tile.widthInPixels, sampler, ray -> {
+            colors.reset();
+            integrator.trace(ray, colors);
+            camera.film.capture(ray.filmCoordinate, colors);
+        });
+    }
+
+    private void tracePackets(Camera camera, Integrator integrator, Sampler sampler, RgbAccumulator colors) {
+        RayPacket packet = new RayPacket(packetSize * packetSize);
+        Film.FilmCoordinate[] filmCoordinates = new Film.FilmCoordinate[packetSize * packetSize];
+        int[] dimensions = new int[packetSize * packetSize];
+        Intersection[] intersections = new Intersection[packetSize * packetSize];
+        int bottom = tile.firstHeightIndex + tile.heightInPixels;
+        int right = tile.firstWidthIndex + tile.widthInPixels;
+        for (int top = tile.firstHeightIndex; top < bottom; top += packetSize) {
+            for (int left = tile.firstWidthIndex; left < right; left += packetSize) {
+                int pixels = 0;
+                for (int heightIndex = top; heightIndex < Math.min(top + packetSize, bottom); heightIndex++) {
+                    for (int widthIndex = left; widthIndex < Math.min(left + packetSize, right); widthIndex++) {
+                        filmCoordinates[pixels++] = camera.film.newFilmCoordinate(heightIndex, widthIndex);
+                    }
+                }
+                for (int sampleIndex = 0; sampleIndex < camera.film.raysPerPixel; sampleIndex++) {
+                    packet.clear();
+                    for (int lane = 0; lane < pixels; lane++) {
+                        sampler.startPixelSample(filmCoordinates[lane].heightIndex, filmCoordinates[lane].widthIndex, sampleIndex);
+                        packet.add(camera.generateRay(filmCoordinates[lane], sampler));
+                        dimensions[lane] = sampler.getDimension();
+                    }
+                    integrator.castRays(packet, intersections);
+                    for (int lane = 0; lane < pixels; lane++) {
+                        // shading draws the same sample values as when the ray is traced alone
+                        sampler.resumePixelSample(filmCoordinates[lane].heightIndex, filmCoordinates[lane].widthIndex, sampleIndex, dimensions[lane]);
+                        colors.reset();
+                        integrator.shade(intersections[lane], colors);
+                        camera.film.capture(filmCoordinates[lane], colors);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TraversalStatistics
+ * <p/>
+ * Counts the queries on one LinearBvh or WideBvh and the nodes they visit, so that the scene hierarchy and the
+ * hierarchy of each mesh, and binary and wide hierarchies, are measured separately.  Counting is off unless the
+ * system property jpharos.bvhStatistics is true; the traversals test ENABLED, which is fixed at startup, so they
+ * pay nothing for the counters otherwise.
+ */
+public class TraversalStatistics {
+
+    final public static String ENABLED_PROPERTY = "jpharos.bvhStatistics";
+    final static boolean ENABLED = isEnabled();
+
+    final private LongAdder closestHitQueries = new LongAdder();
+    final private LongAdder closestHitNodesVisited = new LongAdder();
+    final private LongAdder anyHitQueries = new LongAdder();
+    final private LongAdder anyHitNodesVisited = new LongAdder();
+    final private LongAdder packetQueries = new LongAdder();
+    final private LongAdder packetRays = new LongAdder();
+    final private LongAdder packetNodesVisited = new LongAdder();
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "false"));
+    }
+
+    void countClosestHit(int nodesVisited) {
+        closestHitQueries.increment();
+        closestHitNodesVisited.add(nodesVisited);
+    }
+
+    void countAnyHit(int nodesVisited) {
+        anyHitQueries.increment();
+        anyHitNodesVisited.add(nodesVisited);
+    }
+
+    void countPacket(int rays, int nodesVisited) {
+        packetQueries.increment();
+        packetRays.add(rays);
+        packetNodesVisited.add(nodesVisited);
+    }
+
+    public long closestHitQueries() {
+        return closestHitQueries.sum();
+    }
+
+    public double averageNodesVisitedPerClosestHit() {
+        return average(closestHitNodesVisited, closestHitQueries);
+    }
+
+    public long anyHitQueries() {
+        return anyHitQueries.sum();
+    }
+
+    public double averageNodesVisitedPerAnyHit() {
+        return average(anyHitNodesVisited, anyHitQueries);
+    }
+
+    private static double average(LongAdder total, LongAdder queries) {
+        long queryCount = queries.sum();
+        return queryCount == 0 ? 0.0 : (double) total.sum() / queryCount;
+    }
+
+    public void reset() {
+        closestHitQueries.reset();
+        closestHitNodesVisited.reset();
+        anyHitQueries.reset();
+        anyHitNodesVisited.reset();
+        packetQueries.reset();
+        packetRays.reset();
+        packetNodesVisited.reset();
+    }
+
+    /**
+     * A node is counted as visited when the traversal processes it:  for a LinearBvh when the ray enters its
+     * bounds, and for a WideBvh when the traversal tests its children
+     */
+    @Override
+    public String toString() {
+        String statistics = String.format("closest-hit queries: %d, nodes visited per query: %.2f; any-hit queries: %d, nodes visited per query: %.2f",
+                closestHitQueries(), averageNodesVisitedPerClosestHit(), anyHitQueries(), averageNodesVisitedPerAnyHit());
+        if (packetQueries.sum() > 0) {
+            statistics += String.format("; packet queries: %d, rays per packet: %.2f, nodes visited per packet: %.2f",
+                    packetQueries.sum(), average(packetRays, packetQueries), average(packetNodesVisited, packetQueries));
+        }
+        return statistics;
+    }
+}
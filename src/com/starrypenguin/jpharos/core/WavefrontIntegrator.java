@@ -0,0 +1,516 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.core;
+
+import com.starrypenguin.jpharos.cameras.Camera;
+import com.starrypenguin.jpharos.cameras.Film;
+import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.geometry.Vector;
+import com.starrypenguin.jpharos.main.jPharos;
+import com.starrypenguin.jpharos.materials.ChromaticMaterial;
+import com.starrypenguin.jpharos.materials.ColorMaterial;
+import com.starrypenguin.jpharos.materials.Material;
+import com.starrypenguin.jpharos.materials.MirrorMaterial;
+import com.starrypenguin.jpharos.materials.NullMaterial;
+import com.starrypenguin.jpharos.materials.RefractiveMaterial;
+import com.starrypenguin.jpharos.parallel.ParallelExecutor;
+import com.starrypenguin.jpharos.parallel.RenderProgress;
+import com.starrypenguin.jpharos.parallel.RenderTile;
+import com.starrypenguin.jpharos.samplers.Sampler;
+import com.starrypenguin.jpharos.util.Shared;
+
+import java.util.List;
+
+/**
+ * WavefrontIntegrator
+ * <p/>
+ * Follows the same paths as Integrator, but for a large batch of camera rays at once and one stage at a time:
+ * generate the camera rays, extend every active path to its closest hit, shade the hits grouped by Material class,
+ * and test the shadow rays that the diffuse materials made; extend and shade repeat until no path has a ray left.
+ * Each stage is a parallel loop over its queue of paths, so the JIT and the CPU caches see one kind of work at a
+ * time, and no material is called through the megamorphic getColor.
+ * <p>
+ * The state of each path lives in arrays indexed by path rather than in per-ray objects.  Paths draw the same
+ * sample values they would with Integrator, so both render the same image.  Materials without a stage of their
+ * own are shaded with Integrator.
+ */
+final public class WavefrontIntegrator {
+
+    final public static String ENABLED_PROPERTY = "jpharos.wavefront";
+    final public static int DEFAULT_BATCH_SIZE = 1 << 14; // camera rays traced together
+    final private static int RANGE_SIZE = 256; // paths in each parallel task
+
+    // what the shade stage does with a path
+    final private static int MISS = 0;
+    final private static int COLOR = 1;
+    final private static int CHROMATIC = 2;
+    final private static int MIRROR = 3;
+    final private static int REFRACTIVE = 4;
+    final private static int EXIT = 5; // a refracted ray hit the Body it entered again
+    final private static int NULL = 6;
+    final private static int OTHER = 7;
+    final private static int KINDS = 8;
+
+    final public int maxDepth;
+    final public int batchSize;
+
+    public WavefrontIntegrator() {
+        this(Integrator.DEFAULT_MAX_DEPTH, DEFAULT_BATCH_SIZE);
+    }
+
+    public WavefrontIntegrator(int maxDepth, int batchSize) {
+        Shared.inclusiveRangeCheck(maxDepth, 0, Integer.MAX_VALUE, "Parameter maxDepth cannot be negative!");
+        Shared.positive(batchSize, "Parameter batchSize must be positive!");
+        this.maxDepth = maxDepth;
+        this.batchSize = batchSize;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "false"));
+    }
+
+    /**
+     * Render the pixels of tiles, in order, on a background thread; each finished batch of camera rays counts as
+     * one unit of the returned RenderProgress
+     */
+    public RenderProgress submit(Camera camera, List<RenderTile> tiles) {
+        Shared.notNull(camera, "Parameter camera cannot be null!");
+        Shared.notNullAndNotEmpty(tiles, "Parameter tiles cannot be null or empty!");
+        int pixelsPerBatch = Math.max(1, batchSize / camera.film.raysPerPixel);
+        int pixels = 0;
+        for (RenderTile tile : tiles) {
+            pixels += tile.pixelCount();
+        }
+        RenderProgress progress = new RenderProgress((pixels + pixelsPerBatch - 1) / pixelsPerBatch);
+        Thread renderThread = new Thread(() -> {
+            try {
+                Batch batch = new Batch(camera, pixelsPerBatch);
+                int tileIndex = 0;
+                int pixelInTile = 0;
+                while (tileIndex < tiles.size()) {
+                    // fill the batch with the next pixels, tile by tile
+                    batch.pixelCount = 0;
+                    while (batch.pixelCount < pixelsPerBatch && tileIndex < tiles.size()) {
+                        RenderTile tile = tiles.get(tileIndex);
+                        batch.pixelHeightIndex[batch.pixelCount] = tile.firstHeightIndex + pixelInTile / tile.widthInPixels;
+                        batch.pixelWidthIndex[batch.pixelCount] = tile.firstWidthIndex + pixelInTile % tile.widthInPixels;
+                        batch.pixelCount++;
+                        if (++pixelInTile == tile.pixelCount()) {
+                            tileIndex++;
+                            pixelInTile = 0;
+                        }
+                    }
+                    batch.trace();
+                    progress.unitsCompleted(1);
+                }
+            } catch (Throwable t) {
+                progress.failed(t);
+            }
+        }, "wavefront");
+        renderThread.setDaemon(true);
+        renderThread.start();
+        return progress;
+    }
+
+    private static int kindOf(Intersection hit, Body enteredBody) {
+        if (hit == null) {
+            return MISS;
+        }
+        if (hit.body == enteredBody) {
+            return EXIT;
+        }
+        Class<? extends Material> materialClass = hit.body.material.getClass();
+        if (materialClass == ColorMaterial.class) {
+            return COLOR;
+        } else if (materialClass == ChromaticMaterial.class) {
+            return CHROMATIC;
+        } else if (materialClass == MirrorMaterial.class) {
+            return MIRROR;
+        } else if (materialClass == RefractiveMaterial.class) {
+            return REFRACTIVE;
+        } else if (materialClass == NullMaterial.class) {
+            return NULL;
+        }
+        return OTHER;
+    }
+
+    // the paths for one batch of pixels; a path is one camera ray and the rays that follow from it
+    private class Batch {
+
+        final Camera camera;
+        final ParallelExecutor executor = jPharos.instance.executor;
+        final BoundingVolumeHierarchy bvh = jPharos.instance.scene.boundingVolumeHierarchy;
+        final int raysPerPixel;
+        final int shadowStride;
+
+        // pixels; path p belongs to pixel p / raysPerPixel
+        final int[] pixelHeightIndex;
+        final int[] pixelWidthIndex;
+        int pixelCount;
+
+        // the ray each path traces next
+        final double[] originX;
+        final double[] originY;
+        final double[] originZ;
+        final double[] directionX;
+        final double[] directionY;
+        final double[] directionZ;
+        final int[] depth;          // the depth a hit is shaded at
+        final int[] missRgb;        // the color if the ray hits nothing
+        final Body[] enteredBody;   // the refracting Body the ray is inside, if any
+        final int[] dimension;      // sample values drawn so far
+
+        // extend stage results
+        final Intersection[] hit;
+        final int[] kind;
+
+        // colors found along each path
+        final double[] redSum;
+        final double[] greenSum;
+        final double[] blueSum;
+        final int[] colorCount;
+
+        // shadow rays, shadowStride slots per path
+        final double[] shadowOriginX;
+        final double[] shadowOriginY;
+        final double[] shadowOriginZ;
+        final double[] shadowDirectionX;
+        final double[] shadowDirectionY;
+        final double[] shadowDirectionZ;
+        final double[] shadowRed;
+        final double[] shadowGreen;
+        final double[] shadowBlue;
+        final int[] shadowCount;
+
+        // queues
+        final int[] active;
+        int activeCount;
+        final int[] sorted;         // active paths grouped by kind
+        final int[] kindStart = new int[KINDS + 1];
+        final boolean[] extending;  // does the path have another ray to trace?
+
+        Batch(Camera camera, int pixelsPerBatch) {
+            this.camera = camera;
+            this.raysPerPixel = camera.film.raysPerPixel;
+            this.shadowStride = Material.maxShadowRays();
+            int paths = pixelsPerBatch * raysPerPixel;
+            pixelHeightIndex = new int[pixelsPerBatch];
+            pixelWidthIndex = new int[pixelsPerBatch];
+            originX = new double[paths];
+            originY = new double[paths];
+            originZ = new double[paths];
+            directionX = new double[paths];
+            directionY = new double[paths];
+            directionZ = new double[paths];
+            depth = new int[paths];
+            missRgb = new int[paths];
+            enteredBody = new Body[paths];
+            dimension = new int[paths];
+            hit = new Intersection[paths];
+            kind = new int[paths];
+            redSum = new double[paths];
+            greenSum = new double[paths];
+            blueSum = new double[paths];
+            colorCount = new int[paths];
+            shadowOriginX = new double[paths * shadowStride];
+            shadowOriginY = new double[paths * shadowStride];
+            shadowOriginZ = new double[paths * shadowStride];
+            shadowDirectionX = new double[paths * shadowStride];
+            shadowDirectionY = new double[paths * shadowStride];
+            shadowDirectionZ = new double[paths * shadowStride];
+            shadowRed = new double[paths * shadowStride];
+            shadowGreen = new double[paths * shadowStride];
+            shadowBlue = new double[paths * shadowStride];
+            shadowCount = new int[paths];
+            active = new int[paths];
+            sorted = new int[paths];
+            extending = new boolean[paths];
+        }
+
+        void trace() throws InterruptedException {
+            executor.forEachRange(pixelCount, Math.max(1, RANGE_SIZE / raysPerPixel), this::generate);
+            activeCount = pixelCount * raysPerPixel;
+            while (activeCount > 0) {
+                executor.forEachRange(activeCount, RANGE_SIZE, this::extend);
+                sortByKind();
+                for (int k = 0; k < KINDS; k++) {
+                    int first = kindStart[k];
+                    int shadeKind = k;
+                    executor.forEachRange(kindStart[k + 1] - first, RANGE_SIZE,
+                            (start, end) -> shade(shadeKind, first + start, first + end));
+                }
+                // the diffuse kinds are next to each other in sorted
+                int firstDiffuse = kindStart[COLOR];
+                executor.forEachRange(kindStart[CHROMATIC + 1] - firstDiffuse, RANGE_SIZE,
+                        (start, end) -> castShadowRays(firstDiffuse + start, firstDiffuse + end));
+                compactActive();
+            }
+            executor.forEachRange(pixelCount, Math.max(1, RANGE_SIZE / raysPerPixel), this::capture);
+        }
+
+        Sampler startSampler() {
+            Sampler sampler = jPharos.instance.samplerFactory.apply(raysPerPixel);
+            Sampler.setCurrent(sampler);
+            return sampler;
+        }
+
+        void setRay(int path, Ray ray) {
+            originX[path] = ray.origin.x;
+            originY[path] = ray.origin.y;
+            originZ[path] = ray.origin.z;
+            directionX[path] = ray.direction.x;
+            directionY[path] = ray.direction.y;
+            directionZ[path] = ray.direction.z;
+        }
+
+        void addPacked(int path, int rgb) {
+            add(path, RgbAccumulator.red(rgb), RgbAccumulator.green(rgb), RgbAccumulator.blue(rgb));
+        }
+
+        void add(int path, double red, double green, double blue) {
+            redSum[path] += red;
+            greenSum[path] += green;
+            blueSum[path] += blue;
+            colorCount[path]++;
+        }
+
+        // generate stage:  the camera rays for pixels [start, end)
+        void generate(int start, int end) {
+            Sampler sampler = startSampler();
+            for (int pixel = start; pixel < end; pixel++) {
+                int heightIndex = pixelHeightIndex[pixel];
+                int widthIndex = pixelWidthIndex[pixel];
+                Film.FilmCoordinate filmCoordinate = camera.film.newFilmCoordinate(heightIndex, widthIndex);
+                for (int sampleIndex = 0; sampleIndex < raysPerPixel; sampleIndex++) {
+                    int path = pixel * raysPerPixel + sampleIndex;
+                    sampler.startPixelSample(heightIndex, widthIndex, sampleIndex);
+                    setRay(path, camera.generateRay(filmCoordinate, sampler));
+                    dimension[path] = sampler.getDimension();
+                    depth[path] = 0;
+                    missRgb[path] = Integrator.BACKGROUND_RGB;
+                    enteredBody[path] = null;
+                    redSum[path] = 0.0;
+                    greenSum[path] = 0.0;
+                    blueSum[path] = 0.0;
+                    colorCount[path] = 0;
+                    active[path] = path;
+                }
+            }
+        }
+
+        // extend stage:  the closest hit for active[start, end)
+        void extend(int start, int end) {
+            int cameraRaysHit = 0;
+            for (int i = start; i < end; i++) {
+                int path = active[i];
+                Ray ray = new Ray(new Point(originX[path], originY[path], originZ[path]),
+                        new Vector(directionX[path], directionY[path], directionZ[path]));
+                Intersection intersection = bvh.castRay(ray);
+                hit[path] = intersection;
+                kind[path] = kindOf(intersection, enteredBody[path]);
+                if (intersection != null && depth[path] == 0) {
+                    cameraRaysHit++;
+                }
+            }
+            jPharos.instance.raysCast.addAndGet(end - start);
+            jPharos.instance.raysHit.addAndGet(cameraRaysHit);
+        }
+
+        // counting sort of the active paths by kind, keeping their order within each kind
+        void sortByKind() {
+            int[] counts = new int[KINDS];
+            for (int i = 0; i < activeCount; i++) {
+                counts[kind[active[i]]]++;
+            }
+            kindStart[0] = 0;
+            for (int k = 0; k < KINDS; k++) {
+                kindStart[k + 1] = kindStart[k] + counts[k];
+            }
+            int[] next = kindStart.clone();
+            for (int i = 0; i < activeCount; i++) {
+                int path = active[i];
+                sorted[next[kind[path]]++] = path;
+            }
+        }
+
+        // shade stage:  sorted[start, end), which all have the same kind
+        void shade(int shadeKind, int start, int end) {
+            switch (shadeKind) {
+                case MISS:
+                    for (int i = start; i < end; i++) {
+                        int path = sorted[i];
+                        addPacked(path, missRgb[path]);
+                        extending[path] = false;
+                    }
+                    break;
+                case COLOR:
+                case CHROMATIC:
+                    shadeDiffuse(start, end);
+                    break;
+                case MIRROR:
+                    for (int i = start; i < end; i++) {
+                        int path = sorted[i];
+                        if (depth[path] >= maxDepth) {
+                            addPacked(path, Integrator.DEPTH_LIMIT_RGB);
+                            extending[path] = false;
+                            continue;
+                        }
+                        setRay(path, MirrorMaterial.reflectedRay(hit[path]));
+                        depth[path]++;
+                        missRgb[path] = MirrorMaterial.ENVIRONMENT_RGB;
+                        enteredBody[path] = null;
+                        extending[path] = true;
+                    }
+                    break;
+                case REFRACTIVE:
+                    for (int i = start; i < end; i++) {
+                        int path = sorted[i];
+                        Ray refractedRay = RefractiveMaterial.refractedRay(hit[path]);
+                        if (refractedRay == null || depth[path] >= maxDepth) {
+                            addPacked(path, refractedRay == null ? RefractiveMaterial.BACKGROUND_RGB : Integrator.DEPTH_LIMIT_RGB);
+                            extending[path] = false;
+                            continue;
+                        }
+                        setRay(path, refractedRay);
+                        depth[path]++;
+                        missRgb[path] = RefractiveMaterial.BACKGROUND_RGB;
+                        enteredBody[path] = hit[path].body;
+                        extending[path] = true;
+                    }
+                    break;
+                case EXIT:
+                    for (int i = start; i < end; i++) {
+                        int path = sorted[i];
+                        // the ray goes on from where it leaves the Body, still to be shaded at the same depth
+                        setRay(path, RefractiveMaterial.exitRay(hit[path]));
+                        enteredBody[path] = null;
+                        extending[path] = true;
+                    }
+                    break;
+                case NULL:
+                    for (int i = start; i < end; i++) {
+                        extending[sorted[i]] = false;
+                    }
+                    break;
+                default:
+                    shadeOther(start, end);
+            }
+        }
+
+        void shadeDiffuse(int start, int end) {
+            Sampler sampler = startSampler();
+            ShadowRayQueue shadowRays = new ShadowRayQueue();
+            for (int i = start; i < end; i++) {
+                int path = sorted[i];
+                int pixel = path / raysPerPixel;
+                sampler.resumePixelSample(pixelHeightIndex[pixel], pixelWidthIndex[pixel], path % raysPerPixel, dimension[path]);
+                shadowRays.path = path;
+                shadowCount[path] = 0;
+                Material.generateShadowRays(hit[path], shadowRays);
+                dimension[path] = sampler.getDimension();
+                extending[path] = false;
+            }
+        }
+
+        void shadeOther(int start, int end) {
+            Sampler sampler = startSampler();
+            Integrator integrator = jPharos.instance.integrator;
+            RgbAccumulator colors = new RgbAccumulator();
+            for (int i = start; i < end; i++) {
+                int path = sorted[i];
+                int pixel = path / raysPerPixel;
+                sampler.resumePixelSample(pixelHeightIndex[pixel], pixelWidthIndex[pixel], path % raysPerPixel, dimension[path]);
+                colors.reset();
+                hit[path].body.material.getColor(hit[path], integrator, depth[path], colors);
+                redSum[path] += colors.redSum();
+                greenSum[path] += colors.greenSum();
+                blueSum[path] += colors.blueSum();
+                colorCount[path] += colors.count();
+                dimension[path] = sampler.getDimension();
+                extending[path] = false;
+            }
+        }
+
+        // shadow stage:  the shadow rays of the diffuse paths sorted[start, end)
+        void castShadowRays(int start, int end) {
+            int raysCast = 0;
+            for (int i = start; i < end; i++) {
+                int path = sorted[i];
+                Body body = hit[path].body;
+                for (int slot = path * shadowStride; slot < path * shadowStride + shadowCount[path]; slot++) {
+                    Ray ray = new Ray(new Point(shadowOriginX[slot], shadowOriginY[slot], shadowOriginZ[slot]),
+                            new Vector(shadowDirectionX[slot], shadowDirectionY[slot], shadowDirectionZ[slot]));
+                    if (bvh.occluded(ray, Material.SHADOW_RAY_LENGTH, body)) {
+                        addPacked(path, Material.SHADOW_RGB);
+                    } else {
+                        add(path, shadowRed[slot], shadowGreen[slot], shadowBlue[slot]);
+                    }
+                }
+                raysCast += shadowCount[path];
+            }
+            jPharos.instance.raysCast.addAndGet(raysCast);
+        }
+
+        // keep the paths that have another ray to trace
+        void compactActive() {
+            int kept = 0;
+            for (int i = 0; i < activeCount; i++) {
+                int path = active[i];
+                if (extending[path]) {
+                    active[kept++] = path;
+                }
+            }
+            activeCount = kept;
+        }
+
+        // capture the color of every path for pixels [start, end) on the film
+        void capture(int start, int end) {
+            for (int pixel = start; pixel < end; pixel++) {
+                for (int path = pixel * raysPerPixel; path < (pixel + 1) * raysPerPixel; path++) {
+                    if (colorCount[path] > 0) {
+                        camera.film.filmBuffer.addSample(pixelHeightIndex[pixel], pixelWidthIndex[pixel],
+                                (float) (redSum[path] / colorCount[path]),
+                                (float) (greenSum[path] / colorCount[path]),
+                                (float) (blueSum[path] / colorCount[path]));
+                    }
+                    hit[path] = null;
+                }
+            }
+        }
+
+        // stores the shadow rays generateShadowRays makes for one path in that path's slots
+        private class ShadowRayQueue implements Material.ShadowRayConsumer {
+            int path;
+
+            @Override
+            public void accept(Ray ray, double red, double green, double blue) {
+                int slot = path * shadowStride + shadowCount[path]++;
+                shadowOriginX[slot] = ray.origin.x;
+                shadowOriginY[slot] = ray.origin.y;
+                shadowOriginZ[slot] = ray.origin.z;
+                shadowDirectionX[slot] = ray.direction.x;
+                shadowDirectionY[slot] = ray.direction.y;
+                shadowDirectionZ[slot] = ray.direction.z;
+                shadowRed[slot] = red;
+                shadowGreen[slot] = green;
+                shadowBlue[slot] = blue;
+            }
+        }
+    }
+}
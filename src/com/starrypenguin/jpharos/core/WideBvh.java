@@ -0,0 +1,331 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.core;
+
+import com.starrypenguin.jpharos.kernels.IntersectionKernel;
+import com.starrypenguin.jpharos.util.Shared;
+
+import java.util.Arrays;
+
+/**
+ * WideBvh
+ * <p/>
+ * Bounding volume hierarchy whose interior nodes have up to width (4 or 8) children, made by collapsing a binary
+ * LinearBvh:  starting from the two children of a binary node, the interior child with the largest surface area is
+ * repeatedly replaced by its own two children until the node has width children or only leaves are left.  A wide
+ * tree is about half as deep as the binary one, and all the children of a node are tested against the ray in one
+ * call to the IntersectionKernel.
+ * <p>
+ * Leaves are stored in their parent, so every node is interior.  For child c of node n, with slot s = n * width + c:
+ * <ul>
+ * <li>childBounds[6 * width * n + row * width + c] holds minX, minY, minZ, maxX, maxY, maxZ for rows 0 to 5;
+ * the layout expected by IntersectionKernel.intersectBoxes</li>
+ * <li>childData[2s] holds the index of the child node for an interior child, or the index of the first primitive
+ * for a leaf</li>
+ * <li>childData[2s+1] holds the number of primitives for a leaf (always positive), or 0 for an interior child</li>
+ * </ul>
+ * and childCounts[n] holds the number of children of node n.  Primitives keep the leaf order of the binary hierarchy.
+ * <p>
+ * Reference:  Wald et al., "Getting Rid of Packets - Efficient SIMD Single-Ray Traversal using Multi-branching BVHs"
+ */
+public class WideBvh {
+
+    final public static String WIDTH_PROPERTY = "jpharos.bvhWidth";
+    final public static int BINARY = 2;
+    final private static int INITIAL_STACK_SIZE = 64;
+
+    final public int width;
+    final public double[] childBounds;
+    final public int[] childData;
+    final public int[] childCounts;
+    final public int nodeCount;
+    // counts only when TraversalStatistics.isEnabled()
+    final public TraversalStatistics statistics = new TraversalStatistics();
+    final private IntersectionKernel kernel = IntersectionKernel.get();
+    final private ThreadLocal<Traversal> traversals = ThreadLocal.withInitial(this::newTraversal);
+
+    public WideBvh(LinearBvh binary, int width) {
+        Shared.notNull(binary, "Parameter binary cannot be null!");
+        if (width != 4 && width != 8) {
+            throw new IllegalArgumentException("Parameter width must be 4 or 8!");
+        }
+        this.width = width;
+        // every wide node absorbs at least one binary interior node
+        int maxNodes = Math.max(1, binary.nodeCount / 2);
+        double[] bounds = new double[maxNodes * LinearBvh.BOUNDS_STRIDE * width];
+        int[] data = new int[maxNodes * width * 2];
+        int[] counts = new int[maxNodes];
+        int count = 0;
+        // binary nodes waiting to become wide nodes, and the slot in their parent that will point at them
+        int[] pending = new int[INITIAL_STACK_SIZE];
+        int[] pendingSlots = new int[INITIAL_STACK_SIZE];
+        int pendingSize = 0;
+        pending[pendingSize] = 0;
+        pendingSlots[pendingSize++] = -1;
+        int[] children = new int[width];
+        while (pendingSize > 0) {
+            pendingSize--;
+            int binaryNode = pending[pendingSize];
+            int parentSlot = pendingSlots[pendingSize];
+            int node = count++;
+            if (parentSlot != -1) {
+                data[2 * parentSlot] = node;
+            }
+            int childCount = collapse(binary, binaryNode, children);
+            counts[node] = childCount;
+            for (int child = 0; child < childCount; child++) {
+                int binaryChild = children[child];
+                int slot = node * width + child;
+                int boundsOffset = binaryChild * LinearBvh.BOUNDS_STRIDE;
+                for (int row = 0; row < LinearBvh.BOUNDS_STRIDE; row++) {
+                    bounds[node * LinearBvh.BOUNDS_STRIDE * width + row * width + child] = binary.nodeBounds[boundsOffset + row];
+                }
+                if (binary.isLeaf(binaryChild)) {
+                    data[2 * slot] = binary.nodeData[binaryChild * LinearBvh.DATA_STRIDE];
+                    data[2 * slot + 1] = binary.nodeData[binaryChild * LinearBvh.DATA_STRIDE + 1];
+                } else {
+                    if (pendingSize == pending.length) {
+                        pending = Arrays.copyOf(pending, pending.length * 2);
+                        pendingSlots = Arrays.copyOf(pendingSlots, pendingSlots.length * 2);
+                    }
+                    pending[pendingSize] = binaryChild;
+                    pendingSlots[pendingSize++] = slot;
+                }
+            }
+        }
+        this.childBounds = Arrays.copyOf(bounds, count * LinearBvh.BOUNDS_STRIDE * width);
+        this.childData = Arrays.copyOf(data, count * width * 2);
+        this.childCounts = Arrays.copyOf(counts, count);
+        this.nodeCount = count;
+    }
+
+    // fill children with the binary nodes that become the children of a wide node made from binaryNode;
+    // returns how many there are.  A binary leaf at the root becomes the only child of the root.
+    private int collapse(LinearBvh binary, int binaryNode, int[] children) {
+        if (binary.isLeaf(binaryNode)) {
+            children[0] = binaryNode;
+            return 1;
+        }
+        int childCount = 0;
+        children[childCount++] = binaryNode + 1; // the first child is adjacent to its parent
+        children[childCount++] = binary.nodeData[binaryNode * LinearBvh.DATA_STRIDE];
+        while (childCount < width) {
+            int largest = -1;
+            double largestArea = -1.0;
+            for (int child = 0; child < childCount; child++) {
+                if (!binary.isLeaf(children[child])) {
+                    double area = BinnedSahBuilder.surfaceArea(binary.nodeBounds, children[child] * LinearBvh.BOUNDS_STRIDE);
+                    if (area > largestArea) {
+                        largestArea = area;
+                        largest = child;
+                    }
+                }
+            }
+            if (largest == -1) {
+                break; // only leaves are left
+            }
+            int opened = children[largest];
+            children[largest] = opened + 1;
+            children[childCount++] = binary.nodeData[opened * LinearBvh.DATA_STRIDE];
+        }
+        return childCount;
+    }
+
+    /**
+     * The wide BVH width set with the jpharos.bvhWidth system property; if it is not set, 8 when the
+     * IntersectionKernel tests at least 8 boxes at once and 4 otherwise.  BINARY turns wide BVHs off.
+     */
+    public static int width() {
+        int defaultWidth = IntersectionKernel.get().laneCount() >= 8 ? 8 : 4;
+        return Integer.getInteger(WIDTH_PROPERTY, defaultWidth);
+    }
+
+    /**
+     * Collapse binary into a WideBvh of width(), or return null if wide BVHs are turned off
+     */
+    public static WideBvh collapseIfEnabled(LinearBvh binary) {
+        int width = width();
+        return width == BINARY ? null : new WideBvh(binary, width);
+    }
+
+    /**
+     * Number of levels in the hierarchy, counting the leaves stored in the deepest nodes
+     */
+    public int depth() {
+        int[] depths = new int[nodeCount];
+        int maxDepth = 0;
+        // children are always created after their parent
+        depths[0] = 1;
+        for (int node = 0; node < nodeCount; node++) {
+            for (int child = 0; child < childCounts[node]; child++) {
+                int slot = node * width + child;
+                if (childData[2 * slot + 1] == 0) {
+                    depths[childData[2 * slot]] = depths[node] + 1;
+                } else {
+                    maxDepth = Math.max(maxDepth, depths[node] + 1);
+                }
+            }
+        }
+        return maxDepth;
+    }
+
+    /**
+     * Find the closest primitive hit by the ray before maxTime and within the range of the ray
+     * <p>
+     * All the children of a node are tested at once and the ones the ray enters are pushed farthest first, so that
+     * the nearest is visited next; as in LinearBvh.closestHit, a child whose entry time is not before the closest
+     * hit found so far is skipped
+     * <p>
+     * The stacks are reused by every query on the same thread, so intersector must not start another
+     * query on this hierarchy
+     *
+     * @return the leaf-order index of the closest primitive hit, or -1 if no primitive is hit
+     */
+    public int closestHit(Ray ray, double maxTime, LinearBvh.PrimitiveIntersector intersector) {
+        double closestTime = Math.min(maxTime, ray.maxTime);
+        int closestPrimitive = -1;
+        int nodesVisited = 0;
+        Traversal traversal = traversals.get();
+        int[] slotStack = traversal.slotStack;
+        double[] entryStack = traversal.entryStack;
+        int stackSize = 0;
+        final double[] entryTimes = traversal.entryTimes;
+        final int[] order = traversal.order;
+        final double[] hitTime = traversal.hitTime;
+        int node = 0;
+        while (true) {
+            if (node != -1) {
+                // test every child of node and push the ones the ray enters, farthest first
+                nodesVisited++;
+                int hits = kernel.intersectBoxes(childBounds, node * LinearBvh.BOUNDS_STRIDE * width, width,
+                        childCounts[node], ray, ray.minTime, closestTime, entryTimes);
+                int hitCount = 0;
+                for (; hits != 0; hits &= hits - 1) {
+                    // insertion sort by decreasing entry time; a few children at most
+                    int child = Integer.numberOfTrailingZeros(hits);
+                    int position = hitCount++;
+                    // on a tie the earlier child is visited first, as in LinearBvh
+                    while (position > 0 && entryTimes[order[position - 1]] <= entryTimes[child]) {
+                        order[position] = order[position - 1];
+                        position--;
+                    }
+                    order[position] = child;
+                }
+                if (stackSize + hitCount > slotStack.length) {
+                    slotStack = traversal.slotStack = Arrays.copyOf(slotStack, slotStack.length * 2);
+                    entryStack = traversal.entryStack = Arrays.copyOf(entryStack, entryStack.length * 2);
+                }
+                for (int index = 0; index < hitCount; index++) {
+                    slotStack[stackSize] = node * width + order[index];
+                    entryStack[stackSize++] = entryTimes[order[index]];
+                }
+                node = -1;
+            }
+            if (stackSize == 0) {
+                break;
+            }
+            stackSize--;
+            if (entryStack[stackSize] >= closestTime) {
+                continue; // the ray enters this child after the closest hit found so far
+            }
+            int slot = slotStack[stackSize];
+            int count = childData[2 * slot + 1];
+            if (count > 0) {
+                int primitive = intersector.closestInLeaf(childData[2 * slot], count, ray, closestTime, hitTime);
+                if (primitive != -1) {
+                    closestTime = hitTime[0];
+                    closestPrimitive = primitive;
+                }
+            } else {
+                node = childData[2 * slot];
+            }
+        }
+        if (TraversalStatistics.ENABLED) {
+            statistics.countClosestHit(nodesVisited);
+        }
+        return closestPrimitive;
+    }
+
+    /**
+     * Determine whether the ray hits any primitive before maxDistance and within the range of the ray;
+     * returns at the first hit found
+     */
+    public boolean anyHit(Ray ray, double maxDistance, LinearBvh.PrimitiveIntersector intersector) {
+        final double maxTime = Math.min(maxDistance, ray.maxTime);
+        int nodesVisited = 0;
+        boolean hit = false;
+        Traversal traversal = traversals.get();
+        int[] slotStack = traversal.anyHitStack;
+        int stackSize = 0;
+        final double[] entryTimes = traversal.entryTimes;
+        int node = 0;
+        while (true) {
+            if (node != -1) {
+                nodesVisited++;
+                int hits = kernel.intersectBoxes(childBounds, node * LinearBvh.BOUNDS_STRIDE * width, width,
+                        childCounts[node], ray, ray.minTime, maxTime, entryTimes);
+                if (stackSize + width > slotStack.length) {
+                    slotStack = traversal.anyHitStack = Arrays.copyOf(slotStack, slotStack.length * 2);
+                }
+                for (; hits != 0; hits &= hits - 1) {
+                    slotStack[stackSize++] = node * width + Integer.numberOfTrailingZeros(hits);
+                }
+                node = -1;
+            }
+            if (stackSize == 0) {
+                break;
+            }
+            int slot = slotStack[--stackSize];
+            int count = childData[2 * slot + 1];
+            if (count > 0) {
+                if (intersector.anyInLeaf(childData[2 * slot], count, ray, maxTime)) {
+                    hit = true;
+                    break;
+                }
+            } else {
+                node = childData[2 * slot];
+            }
+        }
+        if (TraversalStatistics.ENABLED) {
+            statistics.countAnyHit(nodesVisited);
+        }
+        return hit;
+    }
+
+    private Traversal newTraversal() {
+        return new Traversal(width);
+    }
+
+    // scratch space for the queries of one thread on one hierarchy, as in LinearBvh; the stacks grow to the depth
+    // of the hierarchy and are then reused
+    private static final class Traversal {
+        // slotStack and entryStack grow together
+        int[] slotStack = new int[INITIAL_STACK_SIZE];
+        double[] entryStack = new double[INITIAL_STACK_SIZE];
+        int[] anyHitStack = new int[INITIAL_STACK_SIZE];
+        final double[] entryTimes;
+        final int[] order;
+        final double[] hitTime = new double[1];
+
+        Traversal(int width) {
+            entryTimes = new double[width];
+            order = new int[width];
+        }
+    }
+}
@@ -21,10 +21,8 @@ package com.starrypenguin.jpharos.geometry;
 import com.starrypenguin.jpharos.core.Body;
 import com.starrypenguin.jpharos.core.Intersection;
 import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.core.RayPacket;
 import com.starrypenguin.jpharos.shapes.Shape;
-import com.starrypenguin.jpharos.shapes.Triangle;
-import com.starrypenguin.jpharos.shapes.TriangleMesh;
-import com.starrypenguin.jpharos.shapes.TriangleMeshBuilder;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -39,13 +37,18 @@ public class BoundingBox extends Shape {
     public final Point max;  // the point with the highest x, y, and z values calculated from the supplied corner Points
     public final Point min;  // the point with the lowest x, y, and z values calculated from the supplied corner Points
     private Point center = null; // if we calculate the center Point, cache it for reuse
-    private TriangleMesh triangleMesh = null;  // if we create the TriangleMesh for this BoundingBox, cache it for reuse
+    // min x, y, z followed by max x, y, z; the layout expected by intersectSlabs
+    private final double[] bounds;
+
+    // widen slab exits so that grazing rays are not lost to rounding
+    public static final double ROUNDING_GUARD = 1.0 + 1e-10;
 
     public BoundingBox(Point pA, Point pB) {
         super(Point.linearInterpolate(0.5, pA, pB));
         // calculate the max point and min point using the supplied corner Points
         max = new Point(Math.max(pA.x, pB.x), Math.max(pA.y, pB.y), Math.max(pA.z, pB.z));
         min = new Point(Math.min(pA.x, pB.x), Math.min(pA.y, pB.y), Math.min(pA.z, pB.z));
+        bounds = new double[]{min.x, min.y, min.z, max.x, max.y, max.z};
     }
 
     public boolean containsPoint(Point point) {
@@ -73,19 +76,6 @@ public class BoundingBox extends Shape {
         return rectangles;
     }
 
-    public synchronized TriangleMesh getTriangleMesh() {
-        if (triangleMesh == null) {
-            TriangleMeshBuilder builder = new TriangleMeshBuilder();
-            for (Rectangle rectangle : toRectangles()) {
-                for (Triangle triangle : rectangle.toTriangles()) {
-                    builder.addTriangle(triangle.v1, triangle.v2, triangle.v3);
-                }
-            }
-            triangleMesh =  builder.build();
-        }
-        return triangleMesh;
-    }
-
     public BoundingBox union(BoundingBox boundingBox) {
         Point max = new Point(Math.max(this.max.x, boundingBox.max.x), Math.max(this.max.y, boundingBox.max.y), Math.max(this.max.z, boundingBox.max.z));
         Point min = new Point(Math.min(this.min.x, boundingBox.min.x), Math.min(this.min.y, boundingBox.min.y), Math.min(this.min.z, boundingBox.min.z));
@@ -99,14 +89,129 @@ public class BoundingBox extends Shape {
         return center;
     }
 
+    /**
+     * Slab test of the ray against the bounds stored at offset in the bounds array (min x, y, z, max x, y, z)
+     * <p>
+     * The reciprocal direction and direction signs cached in the Ray pick the near and far plane of each slab
+     * directly, so no division or swap is needed per box.  On entry interval holds the [minTime, maxTime] range
+     * of the ray that is of interest; if the ray passes through the box within that range, interval is narrowed
+     * to the times the ray enters and exits the box and true is returned, otherwise interval is left in an
+     * unspecified state.
+     * <p>
+     * The comparisons are written so that a NaN from 0 * infinity, which happens when the ray lies in the plane
+     * of a slab, leaves the interval unchanged.
+     *
+     * Reference:  "Physically Based Rendering", Third Edition, Section 3.9.1 "Bounds Intersections"
+     */
+    public static boolean intersectSlabs(double[] bounds, int offset, Ray ray, double[] interval) {
+        final double originX = ray.origin.x;
+        final double originY = ray.origin.y;
+        final double originZ = ray.origin.z;
+        double timeNear = interval[0];
+        double timeFar = interval[1];
+
+        double slabNear = (bounds[offset + 3 * ray.signX] - originX) * ray.inverseX;
+        double slabFar = (bounds[offset + 3 - 3 * ray.signX] - originX) * ray.inverseX * ROUNDING_GUARD;
+        timeNear = slabNear > timeNear ? slabNear : timeNear;
+        timeFar = slabFar < timeFar ? slabFar : timeFar;
+
+        slabNear = (bounds[offset + 1 + 3 * ray.signY] - originY) * ray.inverseY;
+        slabFar = (bounds[offset + 4 - 3 * ray.signY] - originY) * ray.inverseY * ROUNDING_GUARD;
+        timeNear = slabNear > timeNear ? slabNear : timeNear;
+        timeFar = slabFar < timeFar ? slabFar : timeFar;
+
+        slabNear = (bounds[offset + 2 + 3 * ray.signZ] - originZ) * ray.inverseZ;
+        slabFar = (bounds[offset + 5 - 3 * ray.signZ] - originZ) * ray.inverseZ * ROUNDING_GUARD;
+        timeNear = slabNear > timeNear ? slabNear : timeNear;
+        timeFar = slabFar < timeFar ? slabFar : timeFar;
+
+        interval[0] = timeNear;
+        interval[1] = timeFar;
+        return timeNear <= timeFar;
+    }
+
+    /**
+     * Conservative slab test of a whole coherent RayPacket against the bounds stored at offset in the bounds array
+     * <p>
+     * Each slab time is a product of (plane - origin) and the reciprocal direction, so over the ranges of origins
+     * and reciprocal directions in the packet it is smallest and largest at the corners of those ranges; using those
+     * extremes, the test returns false only if no ray of the packet can hit the box between minTime and maxTime.
+     * A NaN from 0 * infinity leaves a slab out of the test, as in the single ray test.
+     *
+     * Reference:  Boulos et al., "Geometric and Arithmetic Culling Methods for Entire Ray Packets"
+     */
+    public static boolean intersectSlabs(double[] bounds, int offset, RayPacket packet, double minTime, double maxTime) {
+        double timeNear = minTime;
+        double timeFar = maxTime;
+        for (int axis = 0; axis < 3; axis++) {
+            int sign = axis == 0 ? packet.signX : (axis == 1 ? packet.signY : packet.signZ);
+            double originMin = packet.originBounds[axis];
+            double originMax = packet.originBounds[axis + 3];
+            double inverseMin = packet.inverseBounds[axis];
+            double inverseMax = packet.inverseBounds[axis + 3];
+            double nearPlane = bounds[offset + axis + 3 * sign];
+            double farPlane = bounds[offset + axis + 3 - 3 * sign];
+            double slabNear = Math.min(Math.min((nearPlane - originMin) * inverseMin, (nearPlane - originMin) * inverseMax),
+                    Math.min((nearPlane - originMax) * inverseMin, (nearPlane - originMax) * inverseMax));
+            double slabFar = Math.max(Math.max((farPlane - originMin) * inverseMin, (farPlane - originMin) * inverseMax),
+                    Math.max((farPlane - originMax) * inverseMin, (farPlane - originMax) * inverseMax)) * ROUNDING_GUARD;
+            timeNear = slabNear > timeNear ? slabNear : timeNear;
+            timeFar = slabFar < timeFar ? slabFar : timeFar;
+        }
+        return timeNear <= timeFar;
+    }
+
+    /**
+     * Slab test of the ray against this BoundingBox over the range of the ray that can be hit
+     *
+     * @return the times the ray enters and exits the box, clipped to [ray.minTime, maxTime], or null if the ray misses
+     */
+    public double[] entryAndExitTimes(Ray ray, double maxTime) {
+        double[] interval = new double[]{ray.minTime, Math.min(maxTime, ray.maxTime)};
+        return intersectSlabs(bounds, 0, ray, interval) ? interval : null;
+    }
+
+    // the time the ray first meets the surface of the box:  the entry time, or the exit time when the ray starts inside
+    private double surfaceHitTime(Ray ray, double maxTime) {
+        double[] interval = entryAndExitTimes(ray, maxTime);
+        if (interval == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double time = interval[0] > ray.minTime ? interval[0] : interval[1];
+        return (ray.inRange(time) && time < maxTime) ? time : Double.POSITIVE_INFINITY;
+    }
+
     @Override
     public boolean IntersectsP(Ray ray) {
-        return getTriangleMesh().IntersectsP(ray);
+        return surfaceHitTime(ray, Double.POSITIVE_INFINITY) != Double.POSITIVE_INFINITY;
     }
 
     @Override
     public Intersection Intersects(Ray ray, Body body) {
-        return getTriangleMesh().Intersects(ray, body);
+        double time = surfaceHitTime(ray, Double.POSITIVE_INFINITY);
+        if (time == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        Point intersectionPoint = ray.atTime(time);
+        // the face that was hit is the one the intersection point is closest to
+        double[] distances = new double[]{
+                Math.abs(intersectionPoint.x - min.x), Math.abs(intersectionPoint.y - min.y), Math.abs(intersectionPoint.z - min.z),
+                Math.abs(intersectionPoint.x - max.x), Math.abs(intersectionPoint.y - max.y), Math.abs(intersectionPoint.z - max.z)};
+        int face = 0;
+        for (int index = 1; index < distances.length; index++) {
+            if (distances[index] < distances[face]) {
+                face = index;
+            }
+        }
+        double sign = face < 3 ? -1.0 : 1.0;
+        int axis = face % 3;
+        Normal surfaceNormal = new Normal(axis == 0 ? sign : 0.0, axis == 1 ? sign : 0.0, axis == 2 ? sign : 0.0);
+        return new Intersection(ray, time, surfaceNormal, intersectionPoint, body);
+    }
+
+    @Override
+    public boolean occluded(Ray ray, double maxDistance) {
+        return surfaceHitTime(ray, maxDistance) != Double.POSITIVE_INFINITY;
     }
 
     @Override
@@ -116,7 +221,10 @@ public class BoundingBox extends Shape {
 
     @Override
     public double surfaceArea() {
-        return getTriangleMesh().surfaceArea();
+        double deltaX = max.x - min.x;
+        double deltaY = max.y - min.y;
+        double deltaZ = max.z - min.z;
+        return 2.0 * (deltaX * deltaY + deltaY * deltaZ + deltaZ * deltaX);
     }
 
     @Override
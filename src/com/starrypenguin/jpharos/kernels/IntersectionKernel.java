@@ -0,0 +1,119 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.kernels;
+
+import com.starrypenguin.jpharos.core.Ray;
+
+/**
+ * IntersectionKernel
+ * <p/>
+ * Intersects one ray with a small group of triangles or boxes at a time, such as the triangles of a BVH leaf or the
+ * children of a wide BVH node.  The groups are stored as structures of arrays (see PackedTriangles, and intersectBoxes
+ * for the box layout) so that an implementation can test a whole group with vector instructions.
+ * <p>
+ * The kernel is chosen once, at startup.  VectorIntersectionKernel, which uses the Java Vector API, is used when it
+ * was compiled (it needs JDK 16 or later; see the compile-vector target in build.xml), when the jdk.incubator.vector
+ * module is present (java --add-modules jdk.incubator.vector), and when DoubleVector.SPECIES_PREFERRED holds at least
+ * MIN_VECTOR_LANES doubles.  Otherwise, or when the system property jpharos.simd is false, ScalarIntersectionKernel
+ * is used.  Both kernels return exactly the same results.
+ */
+public abstract class IntersectionKernel {
+
+    final public static String ENABLED_PROPERTY = "jpharos.simd";
+    final public static int MIN_VECTOR_LANES = 4;
+    final private static String VECTOR_KERNEL_CLASS = "com.starrypenguin.jpharos.kernels.VectorIntersectionKernel";
+    final private static IntersectionKernel instance = select();
+
+    /**
+     * The kernel chosen at startup
+     */
+    public static IntersectionKernel get() {
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+    }
+
+    private static IntersectionKernel select() {
+        if (isEnabled()) {
+            try {
+                IntersectionKernel kernel = (IntersectionKernel) Class.forName(VECTOR_KERNEL_CLASS).getConstructor().newInstance();
+                if (kernel.laneCount() >= MIN_VECTOR_LANES) {
+                    return kernel;
+                }
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // not compiled, or the jdk.incubator.vector module was not added; use the scalar kernel
+            }
+        }
+        return new ScalarIntersectionKernel();
+    }
+
+    public abstract String getName();
+
+    /**
+     * Number of triangles or boxes tested by one vector operation; 1 for the scalar kernel
+     */
+    public abstract int laneCount();
+
+    /**
+     * Prepare the triangles of a mesh for this kernel.  Only a kernel that tests several triangles at once reads
+     * the packed arrays, so the scalar kernel shares the positions and indices of the mesh without copying them.
+     *
+     * @param positions x, y, z of each vertex
+     * @param indices   three vertex indices for each triangle
+     * @param count     the number of triangles from the start of indices
+     */
+    public PackedTriangles packTriangles(double[] positions, int[] indices, int count) {
+        return new PackedTriangles(positions, indices, count, laneCount() > 1);
+    }
+
+    /**
+     * Find the closest of the triangles first .. first + count - 1 hit by the ray before maxTime and within the range
+     * of the ray; as when the triangles are tested one at a time, a tie goes to the triangle with the lowest index
+     *
+     * @param triangles as returned by packTriangles
+     * @param hitTime receives the time of the hit in element 0, if there is one
+     * @return the index of the closest triangle hit, or -1 if no triangle is hit
+     */
+    public abstract int closestTriangle(PackedTriangles triangles, int first, int count, Ray ray, double maxTime, double[] hitTime);
+
+    /**
+     * @return true if the ray hits any of the triangles first .. first + count - 1 before maxTime and within the range of the ray
+     */
+    public abstract boolean anyTriangle(PackedTriangles triangles, int first, int count, Ray ray, double maxTime);
+
+    /**
+     * Slab test of the ray against count boxes stored side by side; see BoundingBox.intersectSlabs
+     * <p>
+     * Box i has minX at bounds[offset + i], minY at bounds[offset + stride + i], and so on through minZ, maxX, maxY
+     * and maxZ, so each bound of the group is contiguous.  count is at most 32.
+     *
+     * @param entryTimes receives in element i the time the ray enters box i, or Double.POSITIVE_INFINITY if it misses
+     *                   the box between minTime and maxTime
+     * @return a mask with bit i set if the ray hits box i
+     */
+    public abstract int intersectBoxes(double[] bounds, int offset, int stride, int count, Ray ray,
+                                       double minTime, double maxTime, double[] entryTimes);
+
+    @Override
+    public String toString() {
+        return getName() + " intersection kernel (" + laneCount() + (laneCount() == 1 ? " lane)" : " lanes)");
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.kernels;
+
+import com.starrypenguin.jpharos.util.Shared;
+
+/**
+ * PackedTriangles
+ * <p/>
+ * The triangles of a mesh as an IntersectionKernel reads them.  The vertex positions and triangle indices of the
+ * mesh are always shared, not copied.  When packed, the triangles are also stored as a structure of arrays:
+ * triangle i is its first vertex (v1X[i], v1Y[i], v1Z[i]) and the two edges leaving that vertex, the form
+ * Triangle.intersect works from.  Keeping each coordinate in its own array lets a vector kernel load the same
+ * coordinate of neighbouring triangles into one vector.
+ * <p>
+ * The packed arrays cost 72 bytes per triangle, so they are only filled for kernels that use them; see
+ * IntersectionKernel.packTriangles.  Each packed array is PADDING elements longer than count, so that a kernel can
+ * load a full vector starting at any triangle without a bounds mask; the padding holds degenerate triangles that
+ * no ray hits.
+ */
+public final class PackedTriangles {
+
+    // the most doubles in a vector that a kernel uses
+    final public static int PADDING = 8;
+
+    final public int count;
+    final public double[] positions; // x, y, z of each vertex
+    final public int[] indices; // three vertex indices for each triangle
+    final public boolean packed;
+    // the rest are null unless packed
+    final public double[] v1X;
+    final public double[] v1Y;
+    final public double[] v1Z;
+    final public double[] edge1X; // v2 - v1
+    final public double[] edge1Y;
+    final public double[] edge1Z;
+    final public double[] edge2X; // v3 - v1
+    final public double[] edge2Y;
+    final public double[] edge2Z;
+
+    /**
+     * @param positions x, y, z of each vertex
+     * @param indices   three vertex indices for each triangle
+     * @param count     the number of triangles from the start of indices
+     * @param pack      whether to fill the packed arrays
+     */
+    public PackedTriangles(double[] positions, int[] indices, int count, boolean pack) {
+        Shared.notNull(positions, "Parameter positions cannot be null!");
+        Shared.notNull(indices, "Parameter indices cannot be null!");
+        Shared.inclusiveRangeCheck(count, 0, indices.length / 3, "Parameter indices must hold three vertex indices for each of count triangles!");
+        this.count = count;
+        this.positions = positions;
+        this.indices = indices;
+        this.packed = pack;
+        if (!pack) {
+            v1X = v1Y = v1Z = null;
+            edge1X = edge1Y = edge1Z = null;
+            edge2X = edge2Y = edge2Z = null;
+            return;
+        }
+        v1X = new double[count + PADDING];
+        v1Y = new double[count + PADDING];
+        v1Z = new double[count + PADDING];
+        edge1X = new double[count + PADDING];
+        edge1Y = new double[count + PADDING];
+        edge1Z = new double[count + PADDING];
+        edge2X = new double[count + PADDING];
+        edge2Y = new double[count + PADDING];
+        edge2Z = new double[count + PADDING];
+        for (int triangle = 0; triangle < count; triangle++) {
+            int a = 3 * indices[3 * triangle];
+            int b = 3 * indices[3 * triangle + 1];
+            int c = 3 * indices[3 * triangle + 2];
+            v1X[triangle] = positions[a];
+            v1Y[triangle] = positions[a + 1];
+            v1Z[triangle] = positions[a + 2];
+            edge1X[triangle] = positions[b] - positions[a];
+            edge1Y[triangle] = positions[b + 1] - positions[a + 1];
+            edge1Z[triangle] = positions[b + 2] - positions[a + 2];
+            edge2X[triangle] = positions[c] - positions[a];
+            edge2Y[triangle] = positions[c + 1] - positions[a + 1];
+            edge2Z[triangle] = positions[c + 2] - positions[a + 2];
+        }
+    }
+}
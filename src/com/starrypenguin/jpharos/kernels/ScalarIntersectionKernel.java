@@ -0,0 +1,128 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.kernels;
+
+import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.geometry.BoundingBox;
+import com.starrypenguin.jpharos.shapes.Triangle;
+
+/**
+ * ScalarIntersectionKernel
+ * <p/>
+ * IntersectionKernel that tests one triangle or box at a time; used when the Java Vector API is not available.
+ * Triangles are read from the positions and indices of the mesh, so they do not need to be packed.
+ */
+public class ScalarIntersectionKernel extends IntersectionKernel {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public int laneCount() {
+        return 1;
+    }
+
+    @Override
+    public int closestTriangle(PackedTriangles triangles, int first, int count, Ray ray, double maxTime, double[] hitTime) {
+        int closest = -1;
+        for (int triangle = first; triangle < first + count; triangle++) {
+            double time = intersect(triangles.positions, triangles.indices, triangle, ray, maxTime);
+            if (time < maxTime) {
+                maxTime = time;
+                closest = triangle;
+            }
+        }
+        if (closest != -1) {
+            hitTime[0] = maxTime;
+        }
+        return closest;
+    }
+
+    @Override
+    public boolean anyTriangle(PackedTriangles triangles, int first, int count, Ray ray, double maxTime) {
+        for (int triangle = first; triangle < first + count; triangle++) {
+            if (intersect(triangles.positions, triangles.indices, triangle, ray, maxTime) < maxTime) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Intersect the ray with one triangle of a mesh, computing its edges the same way PackedTriangles does
+     */
+    public static double intersect(double[] positions, int[] indices, int triangle, Ray ray, double maxTime) {
+        return intersect(positions, indices, triangle, ray, maxTime, null);
+    }
+
+    /**
+     * @param barycentric if not null and the ray hits, receives the barycentric u and v of the hit; see Triangle.intersect
+     */
+    public static double intersect(double[] positions, int[] indices, int triangle, Ray ray, double maxTime, double[] barycentric) {
+        int a = 3 * indices[3 * triangle];
+        int b = 3 * indices[3 * triangle + 1];
+        int c = 3 * indices[3 * triangle + 2];
+        return Triangle.intersect(positions[a], positions[a + 1], positions[a + 2],
+                positions[b] - positions[a], positions[b + 1] - positions[a + 1], positions[b + 2] - positions[a + 2],
+                positions[c] - positions[a], positions[c + 1] - positions[a + 1], positions[c + 2] - positions[a + 2],
+                ray, maxTime, barycentric);
+    }
+
+    @Override
+    public int intersectBoxes(double[] bounds, int offset, int stride, int count, Ray ray,
+                              double minTime, double maxTime, double[] entryTimes) {
+        // the rows holding the near and far planes of each slab, as chosen by BoundingBox.intersectSlabs
+        int nearX = offset + 3 * ray.signX * stride;
+        int farX = offset + (3 - 3 * ray.signX) * stride;
+        int nearY = offset + (1 + 3 * ray.signY) * stride;
+        int farY = offset + (4 - 3 * ray.signY) * stride;
+        int nearZ = offset + (2 + 3 * ray.signZ) * stride;
+        int farZ = offset + (5 - 3 * ray.signZ) * stride;
+        int hits = 0;
+        for (int box = 0; box < count; box++) {
+            double timeNear = minTime;
+            double timeFar = maxTime;
+
+            double slabNear = (bounds[nearX + box] - ray.origin.x) * ray.inverseX;
+            double slabFar = (bounds[farX + box] - ray.origin.x) * ray.inverseX * BoundingBox.ROUNDING_GUARD;
+            timeNear = slabNear > timeNear ? slabNear : timeNear;
+            timeFar = slabFar < timeFar ? slabFar : timeFar;
+
+            slabNear = (bounds[nearY + box] - ray.origin.y) * ray.inverseY;
+            slabFar = (bounds[farY + box] - ray.origin.y) * ray.inverseY * BoundingBox.ROUNDING_GUARD;
+            timeNear = slabNear > timeNear ? slabNear : timeNear;
+            timeFar = slabFar < timeFar ? slabFar : timeFar;
+
+            slabNear = (bounds[nearZ + box] - ray.origin.z) * ray.inverseZ;
+            slabFar = (bounds[farZ + box] - ray.origin.z) * ray.inverseZ * BoundingBox.ROUNDING_GUARD;
+            timeNear = slabNear > timeNear ? slabNear : timeNear;
+            timeFar = slabFar < timeFar ? slabFar : timeFar;
+
+            if (timeNear <= timeFar) {
+                entryTimes[box] = timeNear;
+                hits |= 1 << box;
+            } else {
+                entryTimes[box] = Double.POSITIVE_INFINITY;
+            }
+        }
+        return hits;
+    }
+}
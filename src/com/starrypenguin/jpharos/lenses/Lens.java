@@ -25,6 +25,7 @@ package com.starrypenguin.jpharos.lenses;
  */
 
 import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.samplers.Sampler;
 import com.starrypenguin.jpharos.util.Shared;
 
 public abstract class Lens {
@@ -40,6 +41,10 @@ public abstract class Lens {
     }
 
     public Point getSamplePoint() {
+        return getSamplePoint(Sampler.current());
+    }
+
+    public Point getSamplePoint(Sampler sampler) {
         return location;
     }
 }
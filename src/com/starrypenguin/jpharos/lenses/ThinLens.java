@@ -20,6 +20,7 @@ package com.starrypenguin.jpharos.lenses;
 
 import com.starrypenguin.jpharos.geometry.Point;
 import com.starrypenguin.jpharos.geometry.Vector;
+import com.starrypenguin.jpharos.samplers.Sampler;
 import com.starrypenguin.jpharos.util.Shared;
 
 /**
@@ -48,12 +49,14 @@ public class ThinLens extends Lens {
         this.normalizedUp = up.normalized();
     }
 
-    public Point getSamplePoint() {
+    @Override
+    public Point getSamplePoint(Sampler sampler) {
+        Shared.notNull(sampler, "Parameter sampler cannot be null!");
         // theta's range is [0, 2*Pi]
-        double theta = Shared.random.nextDouble() * 2.0 * Math.PI;
+        double theta = sampler.next1D() * 2.0 * Math.PI;
 
         // r's range is [0, radius]
-        double r = Shared.random.nextDouble() * radius;
+        double r = sampler.next1D() * radius;
 
         // x = r * cos(theta)
         double leftRightOffset = r * Math.cos(theta);
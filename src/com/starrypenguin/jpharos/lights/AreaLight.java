@@ -23,6 +23,7 @@ import com.starrypenguin.jpharos.core.Intersection;
 import com.starrypenguin.jpharos.core.Ray;
 import com.starrypenguin.jpharos.geometry.BoundingBox;
 import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.samplers.Sampler;
 import com.starrypenguin.jpharos.shapes.Shape;
 
 /**
@@ -56,7 +57,7 @@ public class AreaLight extends Light {
     }
 
     @Override
-    public Point getSamplePoint() {
-        return shape.getSamplePoint();
+    public Point getSamplePoint(Sampler sampler) {
+        return shape.getSamplePoint(sampler);
     }
 }
@@ -19,6 +19,7 @@
 package com.starrypenguin.jpharos.lights;
 
 import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.samplers.Sampler;
 import com.starrypenguin.jpharos.util.Shared;
 
 /**
@@ -36,6 +37,10 @@ public abstract class Light {
     }
 
     public Point getSamplePoint() {
+        return getSamplePoint(Sampler.current());
+    }
+
+    public Point getSamplePoint(Sampler sampler) {
         return location;
     }
 }
@@ -18,10 +18,59 @@
 
 package com.starrypenguin.jpharos.main;
 
+import com.starrypenguin.jpharos.cameras.ImageWriter;
+import com.starrypenguin.jpharos.util.Shared;
+
 /**
  * CommandLineParser
  * <p/>
  * The command line parser reads in command line options and parses them
+ * <p>
+ * Options start with "--"; any other non-empty argument is the output file name.
  */
 public class CommandLineParser {
+
+    final public static String DEFAULT_OUT_FILENAME = "out.ppm";
+    // print the statistics of every BVH build strategy for the scene before rendering
+    final public static String COMPARE_BUILD_STRATEGIES = "--compare-build-strategies";
+    // time single ray and packet traversal of the camera rays before rendering
+    final public static String COMPARE_PACKET_TRAVERSAL = "--compare-packet-traversal";
+    // write the image as ASCII (P3) PPM instead of choosing the format from the output file name
+    final public static String ASCII_PPM = "--ascii-ppm";
+
+    public String outFilename = DEFAULT_OUT_FILENAME;
+    public boolean compareBuildStrategies = false;
+    public boolean comparePacketTraversal = false;
+    // null to choose the format from the output file name; see ImageWriter.Format.fromFilename
+    public ImageWriter.Format format = null;
+
+    public CommandLineParser(String[] args) {
+        Shared.notNull(args, "Parameter args cannot be null!");
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                switch (arg) {
+                    case COMPARE_BUILD_STRATEGIES:
+                        compareBuildStrategies = true;
+                        break;
+                    case COMPARE_PACKET_TRAVERSAL:
+                        comparePacketTraversal = true;
+                        break;
+                    case ASCII_PPM:
+                        format = ImageWriter.Format.ASCII_PPM;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            } else if (!arg.isEmpty()) {
+                outFilename = arg;
+            }
+        }
+    }
+
+    /**
+     * The format to write the image in:  the one chosen with an option, otherwise the one for the output file name
+     */
+    public ImageWriter.Format imageFormat() {
+        return format != null ? format : ImageWriter.Format.fromFilename(outFilename);
+    }
 }
@@ -19,17 +19,30 @@
 package com.starrypenguin.jpharos.main;
 
 import com.starrypenguin.jpharos.cameras.Camera;
-import com.starrypenguin.jpharos.cameras.Film;
-import com.starrypenguin.jpharos.core.CastRayForDevelopedPixel;
-import com.starrypenguin.jpharos.core.DevelopPixel;
-import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.cameras.ImageWriter;
+import com.starrypenguin.jpharos.core.Body;
+import com.starrypenguin.jpharos.core.BoundingVolumeHierarchy;
+import com.starrypenguin.jpharos.core.Integrator;
 import com.starrypenguin.jpharos.core.Scene;
+import com.starrypenguin.jpharos.core.TraceTile;
+import com.starrypenguin.jpharos.core.TraversalStatistics;
+import com.starrypenguin.jpharos.core.WavefrontIntegrator;
+import com.starrypenguin.jpharos.core.WideBvh;
+import com.starrypenguin.jpharos.kernels.IntersectionKernel;
 import com.starrypenguin.jpharos.parallel.ParallelExecutor;
+import com.starrypenguin.jpharos.parallel.RenderProgress;
+import com.starrypenguin.jpharos.parallel.RenderTile;
+import com.starrypenguin.jpharos.samplers.Sampler;
+import com.starrypenguin.jpharos.samplers.StratifiedSampler;
 import com.starrypenguin.jpharos.scenes.BeautifulSpheres;
 import com.starrypenguin.jpharos.scenes.SceneBuilder;
+import com.starrypenguin.jpharos.shapes.TriangleMesh;
 
-import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 /**
  * jPharos
@@ -39,9 +52,13 @@ import java.util.concurrent.atomic.AtomicInteger;
 final public class jPharos {
 
     final public static jPharos instance = new jPharos();
-    final private static long WAIT_TIME = 2500; // milliseconds
+    final private static int TILE_SIZE = 16; // pixels on each side of a render tile
+    final private static long PROGRESS_INTERVAL = 5000; // milliseconds between progress reports
     public Scene scene;
     public Camera camera;
+    public Integrator integrator = new Integrator();
+    // makes a sampler for a render tile, given the rays per pixel;  HaltonSampler and SobolSampler also work here
+    public IntFunction<Sampler> samplerFactory = raysPerPixel -> new StratifiedSampler(raysPerPixel, 0);
     public ParallelExecutor executor = new ParallelExecutor();
     public AtomicInteger raysCast = new AtomicInteger(0);
     public AtomicInteger raysHit = new AtomicInteger(0);
@@ -50,10 +67,7 @@ final public class jPharos {
     }
 
     public static void main(String[] args) {
-        String outFilename = "out.ppm";
-        if (args.length > 0 && !args[0].isEmpty()) {
-            outFilename = args[0];
-        }
+        CommandLineParser options = new CommandLineParser(args);
         System.out.println("Reading scene . . .");
         SceneBuilder sceneBuilder;
 
@@ -68,42 +82,59 @@ final public class jPharos {
 
         instance.scene = sceneBuilder.build();
         instance.camera = instance.scene.camera;
+        System.out.println(instance.scene.boundingVolumeHierarchy.getStatistics());
+        if (options.compareBuildStrategies) {
+            BoundingVolumeHierarchy.compareBuildStrategies(instance.scene.bodies);
+        }
+        if (options.comparePacketTraversal) {
+            instance.scene.boundingVolumeHierarchy.comparePacketTraversal(instance.camera);
+        }
         System.out.println("Rendering . . .");
-        instance.render(outFilename);
+        instance.render(options.outFilename, options.imageFormat());
     }
 
-    private void render(String outFilename) {
-        try {
-            java.util.List<Ray> rays = instance.camera.generateRays();
-            for (Ray ray : rays) {
-                if (ray != null) {
-                    instance.executor.submit(new CastRayForDevelopedPixel(ray));
-                }
+    private void render(String outFilename, ImageWriter.Format format) {
+        List<RenderTile> renderTiles = RenderTile.split(camera.film.filmHeightInPixels, camera.film.filmWidthInPixels, TILE_SIZE);
+        RenderProgress progress;
+        System.out.println("Using the " + IntersectionKernel.get());
+        if (WavefrontIntegrator.isEnabled()) {
+            // trace batches of rays stage by stage instead of one ray at a time
+            WavefrontIntegrator wavefrontIntegrator = new WavefrontIntegrator(integrator.maxDepth, WavefrontIntegrator.DEFAULT_BATCH_SIZE);
+            progress = wavefrontIntegrator.submit(camera, renderTiles);
+            System.out.println("Rendering " + progress.totalUnits + " wavefront batches . . .");
+        } else {
+            List<TraceTile> tiles = new ArrayList<>();
+            int packetSize = TraceTile.packetSize();
+            for (RenderTile tile : renderTiles) {
+                tiles.add(new TraceTile(tile, packetSize));
             }
-            System.out.println("All initial rays submitted!");
-            // wait a moment for the queue to prime
-            Thread.sleep(WAIT_TIME);
-
-            while (!instance.executor.isEmpty()) {
-                Future<Film.DevelopedPixel> futureDevelopedPixel = instance.executor.pollPixels();
-                if (futureDevelopedPixel != null) {
-                    instance.executor.execute(new DevelopPixel(futureDevelopedPixel));
-                } else {
-                    Thread.sleep(WAIT_TIME);
-                }
+            if (packetSize > 1 && WideBvh.width() != WideBvh.BINARY) {
+                System.out.println("Camera ray packets walk the binary BVH; the " + WideBvh.width() + "-wide BVH is used for the other rays");
+            }
+            System.out.println("Rendering " + tiles.size() + " tiles . . .");
+            progress = instance.executor.submitAll(tiles);
+        }
+        try {
+            while (!progress.await(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS)) {
+                System.out.println(progress + String.format(" (rays cast: %d, rays hit: %d)", raysCast.get(), raysHit.get()));
             }
-            // wait a moment for the executor to run
-            Thread.sleep(WAIT_TIME);
-            instance.executor.finishExecuting();
-
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+        instance.executor.shutdown();
 
         // write out the image
-        instance.camera.develop(outFilename);
+        instance.camera.develop(outFilename, format);
 
         System.out.println("Total rays cast: " + instance.raysCast.get() + ", total rays hit: " + instance.raysHit.get());
+        if (TraversalStatistics.isEnabled()) {
+            System.out.println(instance.scene.boundingVolumeHierarchy.getTraversalStatistics());
+            for (Body body : instance.scene.bodies) {
+                if (body.shape instanceof TriangleMesh) {
+                    System.out.println("Mesh " + body.name + " BVH traversal: " + ((TriangleMesh) body.shape).getTraversalStatistics());
+                }
+            }
+        }
     }
 
 }
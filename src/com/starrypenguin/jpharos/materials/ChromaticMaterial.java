@@ -18,10 +18,9 @@
 
 package com.starrypenguin.jpharos.materials;
 
+import com.starrypenguin.jpharos.core.Integrator;
 import com.starrypenguin.jpharos.core.Intersection;
-
-import java.awt.*;
-import java.util.Queue;
+import com.starrypenguin.jpharos.core.RgbAccumulator;
 
 /**
  * ChromaticMaterial
@@ -36,21 +35,21 @@ public class ChromaticMaterial extends Material {
     final static private double OFFSET = 0.5;
 
     @Override
-    protected Color getColorInternal(Intersection intersection) {
+    protected int getColorInternal(Intersection intersection) {
         double deltaX = intersection.body.getBoundingBox().max.x - intersection.body.getBoundingBox().min.x;
         double deltaY = intersection.body.getBoundingBox().max.y - intersection.body.getBoundingBox().min.y;
         double deltaZ = intersection.body.getBoundingBox().max.z - intersection.body.getBoundingBox().min.z;
 
-        float red  = (float) Math.min(Math.max(((((intersection.intersectionPoint.x - intersection.body.getBoundingBox().max.x)/ deltaX) * SCALE) + OFFSET), 0.0), 1.0);
-        float green  = (float) Math.min(Math.max(((((intersection.intersectionPoint.y - intersection.body.getBoundingBox().max.y)/ deltaY) * SCALE) + OFFSET), 0.0), 1.0);
-        float blue  = (float) Math.min(Math.max(((((intersection.intersectionPoint.z - intersection.body.getBoundingBox().max.z)/ deltaZ) * SCALE) + OFFSET), 0.0), 1.0);
+        double red  = Math.min(Math.max(((((intersection.intersectionPoint.x - intersection.body.getBoundingBox().max.x)/ deltaX) * SCALE) + OFFSET), 0.0), 1.0);
+        double green  = Math.min(Math.max(((((intersection.intersectionPoint.y - intersection.body.getBoundingBox().max.y)/ deltaY) * SCALE) + OFFSET), 0.0), 1.0);
+        double blue  = Math.min(Math.max(((((intersection.intersectionPoint.z - intersection.body.getBoundingBox().max.z)/ deltaZ) * SCALE) + OFFSET), 0.0), 1.0);
 
-        return new Color(red, green, blue);
+        return RgbAccumulator.pack(red, green, blue);
     }
 
     @Override
-    public Queue<Color> getColor(Intersection intersection) {
-        return Material.calculateLambertianAndShadow(intersection);
+    public void getColor(Intersection intersection, Integrator integrator, int depth, RgbAccumulator colors) {
+        Material.calculateLambertianAndShadow(intersection, colors);
     }
 
 }
@@ -18,109 +18,69 @@
 
 package com.starrypenguin.jpharos.materials;
 
+import com.starrypenguin.jpharos.core.Integrator;
 import com.starrypenguin.jpharos.core.Intersection;
-import com.starrypenguin.jpharos.geometry.BarycentricCoordinate;
-import com.starrypenguin.jpharos.geometry.Point;
-import com.starrypenguin.jpharos.shapes.Triangle;
+import com.starrypenguin.jpharos.core.RgbAccumulator;
 import com.starrypenguin.jpharos.shapes.TriangleMesh;
 import com.starrypenguin.jpharos.util.Shared;
 
 import java.awt.*;
-import java.util.Map;
-import java.util.Optional;
-import java.util.Queue;
 
 /**
  * ColorMaterial
  * <p/>
  * A Material with a given color or colors that does not specify light interaction
+ * <p>
+ * With a TriangleMesh, the color at a hit is blended from the colors of the vertices of the triangle hit, using the
+ * triangle index and barycentric coordinates that the mesh records in the Intersection; nothing is allocated.
  */
 public class ColorMaterial extends Material {
 
-    private Map<Point, Color> colorMap = null;
-    private Color color = null;
+    private TriangleMesh triangleMesh = null;
+    private int color = 0;
 
     public ColorMaterial(Color color) {
         Shared.notNull(color, "Parameter color cannot be null!");
-        this.color = color;
+        this.color = color.getRGB();
     }
 
-    public ColorMaterial(Map<Point, Color> colorMap) {
-        Shared.notNull(colorMap, "Parameter colorMap cannot be null!");
-        this.colorMap = colorMap;
+    /**
+     * Use the per-vertex colors of triangleMesh, for example those read from a PLY file with RGB values per vertex
+     */
+    public ColorMaterial(TriangleMesh triangleMesh) {
+        Shared.notNull(triangleMesh, "Parameter triangleMesh cannot be null!");
+        this.triangleMesh = triangleMesh;
     }
 
     @Override
-    public Queue<Color> getColor(Intersection intersection) {
-        return Material.calculateLambertianAndShadow(intersection);
+    public void getColor(Intersection intersection, Integrator integrator, int depth, RgbAccumulator colors) {
+        Material.calculateLambertianAndShadow(intersection, colors);
     }
 
     @Override
-    protected Color getColorInternal(Intersection intersection) {
+    protected int getColorInternal(Intersection intersection) {
         Shared.notNull(intersection, "Parameter intersection cannot be null!");
-        if (colorMap != null) {
-            Color mappedColor = getColorFromTriangleMesh(intersection);
-            if (mappedColor == null) {
-                return Color.BLACK;  // need to interpolate an arbitrary point to get the color
-            } else {
-                return mappedColor;
-            }
-
+        if (triangleMesh != null) {
+            return getColorFromTriangleMesh(intersection);
         }
         return color;
     }
 
-    private Color getColorFromTriangleMesh(Intersection intersection) {
-        // get the Triangle from the TriangleMesh
-        TriangleMesh triangleMesh = null;
-        if (intersection.body.shape instanceof TriangleMesh) {
-            triangleMesh = (TriangleMesh) intersection.body.shape;
-
-            // get the Barycentric Coordinate from the Triangle using the intersectionPoint
-            Optional<Triangle> maybeTriangle = triangleMesh.getIntersectingTriangle(intersection.ray);
-            Triangle triangle = maybeTriangle.get();
-            if (triangle == null) {
-                throw new IllegalArgumentException("Inconsistent Intersection!");
-            }
-            BarycentricCoordinate barycentricCoordinate = triangle.calculateBarycentricCoordinateForPoint(intersection.intersectionPoint);
-            //System.out.println("Found BarycentricCoordinate: " + barycentricCoordinate);
-
-            // blend / scale the colors of the vertex points to get the Color for the intersectionPoint
-            Color blendedColor = barycentricBlendColor(barycentricCoordinate, triangle);
-
-            // return the blended Color
-            return blendedColor;
-        } else {
-            throw new IllegalArgumentException("The intersected Shape is not a TriangleMesh!");
+    private int getColorFromTriangleMesh(Intersection intersection) {
+        if (intersection.body.shape != triangleMesh || intersection.primitive == -1) {
+            throw new IllegalArgumentException("The intersected Shape is not the TriangleMesh of this ColorMaterial!");
         }
-    }
-
-    private Color barycentricBlendColor(BarycentricCoordinate barycentricCoordinate, Triangle triangle) {
-        Color v1Color = colorMap.get(triangle.v1);
-        Color v2Color = colorMap.get(triangle.v2);
-        Color v3Color = colorMap.get(triangle.v3);
-        double v1RedScaled = (v1Color.getRed() / 255.0) * barycentricCoordinate.u;
-        double v1GreenScaled = (v1Color.getGreen() / 255.0) * barycentricCoordinate.u;
-        double v1BlueScaled = (v1Color.getBlue() / 255.0) * barycentricCoordinate.u;
-        //System.out.println(String.format("v1 Scaled colors{ red: %f, green: %f, blue: %f }", v1RedScaled, v1GreenScaled, v1BlueScaled));
-
-        double v2RedScaled = (v2Color.getRed() / 255.0) * barycentricCoordinate.v;
-        double v2GreenScaled = (v2Color.getGreen() / 255.0) * barycentricCoordinate.v;
-        double v2BlueScaled = (v2Color.getBlue() / 255.0) * barycentricCoordinate.v;
-        //System.out.println(String.format("v2 Scaled colors{ red: %f, green: %f, blue: %f }", v2RedScaled, v2GreenScaled, v2BlueScaled));
-
-        double v3RedScaled = (v3Color.getRed() / 255.0) * barycentricCoordinate.w;
-        double v3GreenScaled = (v3Color.getGreen() / 255.0) * barycentricCoordinate.w;
-        double v3BlueScaled = (v3Color.getBlue() / 255.0) * barycentricCoordinate.w;
-        //System.out.println(String.format("v3 Scaled colors{ red: %f, green: %f, blue: %f }", v3RedScaled, v3GreenScaled, v3BlueScaled));
-
-        float scaledRed = (float) Math.max(Math.min(v1RedScaled + v2RedScaled + v3RedScaled, 1.0f), 0.0f);
-        float scaledGreen = (float) Math.max(Math.min(v1GreenScaled + v2GreenScaled + v3GreenScaled, 1.0f), 0.0f);
-        float scaledBlue = (float) Math.max(Math.min(v1BlueScaled + v2BlueScaled + v3BlueScaled, 1.0f), 0.0f);
-        //System.out.println(String.format("Returning blended Color: red: %f, green: %f, blue: %f", scaledRed, scaledGreen, scaledBlue));
-
-        Color blended = new Color(scaledRed, scaledGreen, scaledBlue);
-        return blended;
+        // blend / scale the colors of the vertices by their barycentric weights to get the color of the hit
+        double v1Weight = 1.0 - intersection.u - intersection.v;
+        double v2Weight = intersection.u;
+        double v3Weight = intersection.v;
+        int v1Color = triangleMesh.getVertexColor(intersection.primitive, 0);
+        int v2Color = triangleMesh.getVertexColor(intersection.primitive, 1);
+        int v3Color = triangleMesh.getVertexColor(intersection.primitive, 2);
+        double red = RgbAccumulator.red(v1Color) * v1Weight + RgbAccumulator.red(v2Color) * v2Weight + RgbAccumulator.red(v3Color) * v3Weight;
+        double green = RgbAccumulator.green(v1Color) * v1Weight + RgbAccumulator.green(v2Color) * v2Weight + RgbAccumulator.green(v3Color) * v3Weight;
+        double blue = RgbAccumulator.blue(v1Color) * v1Weight + RgbAccumulator.blue(v2Color) * v2Weight + RgbAccumulator.blue(v3Color) * v3Weight;
+        return RgbAccumulator.pack(Math.max(Math.min(red, 1.0), 0.0), Math.max(Math.min(green, 1.0), 0.0), Math.max(Math.min(blue, 1.0), 0.0));
     }
 
 }
@@ -18,20 +18,17 @@
 
 package com.starrypenguin.jpharos.materials;
 
-import com.starrypenguin.jpharos.core.CastRayForIntersection;
+import com.starrypenguin.jpharos.core.Integrator;
 import com.starrypenguin.jpharos.core.Intersection;
 import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.core.RgbAccumulator;
 import com.starrypenguin.jpharos.geometry.Vector;
 import com.starrypenguin.jpharos.lights.Light;
 import com.starrypenguin.jpharos.main.jPharos;
 import com.starrypenguin.jpharos.util.Shared;
 
 import java.awt.*;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 /**
  * Material
@@ -41,48 +38,77 @@ import java.util.concurrent.Future;
  */
 public abstract class Material {
 
+    // each shadow ray ends at its light sample point, which is at time 1.0 along the ray
+    final public static double SHADOW_RAY_LENGTH = 1.0;
+
+    // what a point in shadow contributes
+    final public static int SHADOW_RGB = Color.BLACK.brighter().getRGB();
+
     /**
-     * Calculate the Lambertian lighting and shadows
-     *
-     * @return Color with darkness values adjusted
+     * Calculate the Lambertian lighting and shadows, adding one color to colors for each shadow ray
      */
-    protected static Queue<Color> calculateLambertianAndShadow(Intersection intersection) {
-        Queue<Color> intersectionColors = new ConcurrentLinkedQueue<>();
+    protected static void calculateLambertianAndShadow(Intersection intersection, RgbAccumulator colors) {
         // see if this intersection point is in the shadows:  can we cast rays to a light source?
+        generateShadowRays(intersection, (ray, red, green, blue) -> {
+            jPharos.instance.raysCast.incrementAndGet();
+            if (jPharos.instance.scene.boundingVolumeHierarchy.occluded(ray, SHADOW_RAY_LENGTH, intersection.body)) {  // we hit something, a shadow is here
+                colors.addPacked(SHADOW_RGB);
+            } else {
+                colors.add(red, green, blue);
+            }
+        });
+    }
+
+    /**
+     * Make the shadow rays toward every light for a diffuse Intersection without casting them; each ray is handed to
+     * shadowRays along with the Lambertian color it contributes if nothing blocks it
+     */
+    public static void generateShadowRays(Intersection intersection, ShadowRayConsumer shadowRays) {
+        Shared.notNull(intersection, "Parameter intersection cannot be null!");
+        Shared.notNull(shadowRays, "Parameter shadowRays cannot be null!");
+        double rawLambert = Math.max(intersection.ray.direction.dot(intersection.surfaceNormal), 0.0);
+        double maxValue = intersection.ray.direction.magnitude() * intersection.surfaceNormal.magnitude();
+        double scaledLambert = rawLambert / maxValue;
+        double factor = 1.0 - scaledLambert;
+        int intersectionPointColor = intersection.body.material.getColorInternal(intersection);
+        double red = RgbAccumulator.red(intersectionPointColor) * factor;
+        double green = RgbAccumulator.green(intersectionPointColor) * factor;
+        double blue = RgbAccumulator.blue(intersectionPointColor) * factor;
         for (Light light : jPharos.instance.scene.lights) {
             Vector directionToLight = new Vector(intersection.intersectionPoint, light.getSamplePoint());
             Ray towardLight = new Ray(intersection.intersectionPoint, directionToLight);
             Set<Ray> raysTowardLight = Shared.perturbRay(towardLight, Shared.DIFFERENTIALS_PER_RAY, Shared.LENGTH_PERCENTAGE);
-            raysTowardLight.stream().forEach((Ray ray) -> {
-                CastRayForIntersection castRayForIntersection = new CastRayForIntersection(ray);
-                Future<Intersection> futureIntersection = jPharos.instance.executor.castRayForFutureIntersection(castRayForIntersection);
-                Intersection maybeIntersection = null;
-                try {
-                    maybeIntersection = futureIntersection.get();
-                } catch (InterruptedException | ExecutionException e) {
-                    e.printStackTrace();
-                }
-                if (maybeIntersection != null && !maybeIntersection.body.emissive &&
-                        maybeIntersection.body != intersection.body) {  // we hit something, a shadow is here
-                    intersectionColors.add(Color.BLACK.brighter());
-                } else {
-                    double rawLambert = Math.max(intersection.ray.direction.dot(intersection.surfaceNormal), 0.0);
-                    double maxValue = intersection.ray.direction.magnitude() * intersection.surfaceNormal.magnitude();
-                    double scaledLambert = rawLambert / maxValue;
-                    float factor = (float) (1.0 - scaledLambert);
-                    Color intersectionPointColor = intersection.body.material.getColorInternal(intersection);
-                    float red = (float) (intersectionPointColor.getRed() / 255.0) * factor;
-                    float green = (float) (intersectionPointColor.getGreen() / 255.0) * factor;
-                    float blue = (float) (intersectionPointColor.getBlue() / 255.0) * factor;
-                    intersectionColors.add(new Color(red, green, blue));
-                }
-            });
+            for (Ray ray : raysTowardLight) {
+                shadowRays.accept(ray, red, green, blue);
+            }
         }
-        return intersectionColors;
     }
 
+    /**
+     * The most shadow rays generateShadowRays makes for one Intersection
+     */
+    public static int maxShadowRays() {
+        return jPharos.instance.scene.lights.size() * (1 + Shared.DIFFERENTIALS_PER_RAY);
+    }
+
+    /**
+     * Add the colors seen at an Intersection to colors
+     *
+     * @param integrator casts any further rays the material needs, such as reflections
+     * @param depth the number of bounces between the camera and this Intersection
+     */
+    public abstract void getColor(Intersection intersection, Integrator integrator, int depth, RgbAccumulator colors);
 
-    public abstract Queue<Color> getColor(Intersection intersection);
+    /**
+     * The color of the surface itself at an Intersection, packed as by java.awt.Color.getRGB
+     */
+    protected abstract int getColorInternal(Intersection intersection);
 
-    protected abstract Color getColorInternal(Intersection intersection);
+    public interface ShadowRayConsumer {
+        /**
+         * @param ray a shadow ray that ends at SHADOW_RAY_LENGTH
+         * @param red the red the ray contributes if nothing blocks it; likewise green and blue
+         */
+        void accept(Ray ray, double red, double green, double blue);
+    }
 }
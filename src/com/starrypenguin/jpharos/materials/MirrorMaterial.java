@@ -18,18 +18,15 @@
 
 package com.starrypenguin.jpharos.materials;
 
-import com.starrypenguin.jpharos.core.CastRayForIntersection;
+import com.starrypenguin.jpharos.core.Integrator;
 import com.starrypenguin.jpharos.core.Intersection;
 import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.core.RgbAccumulator;
 import com.starrypenguin.jpharos.geometry.Point;
 import com.starrypenguin.jpharos.geometry.Vector;
-import com.starrypenguin.jpharos.main.jPharos;
+import com.starrypenguin.jpharos.util.Shared;
 
 import java.awt.*;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 /**
  * MirrorMaterial
@@ -39,36 +36,31 @@ import java.util.concurrent.Future;
 public class MirrorMaterial extends Material {
 
     private final static double RAY_ADJUST_TIME = 0.01;
+    // what a reflection that hits nothing shows
+    public final static int ENVIRONMENT_RGB = Color.BLACK.brighter().getRGB();
 
     protected static Vector calculateReflectedVector(Intersection intersection) {
         return intersection.surfaceNormal.scale(2.0).minus(intersection.ray.direction);
 
     }
 
-    protected static Queue<Color> calculateReflection(Intersection intersection) {
+    /**
+     * The ray reflected from an Intersection, starting just off the surface
+     */
+    public static Ray reflectedRay(Intersection intersection) {
+        Shared.notNull(intersection, "Parameter intersection cannot be null!");
         Vector v_reflect = calculateReflectedVector(intersection);
-        // cast v_reflect to get color of whatever it hits, reduced by some factor
         //System.out.println("Intersection point is: " + intersection.intersectionPoint + ", v_reflect is: " + v_reflect);
-        Ray reflectedRay = adjustRayOrigin(intersection.intersectionPoint, v_reflect);
+        return adjustRayOrigin(intersection.intersectionPoint, v_reflect);
+    }
+
+    protected static void calculateReflection(Intersection intersection, Integrator integrator, int depth, RgbAccumulator colors) {
+        // cast v_reflect to get color of whatever it hits, reduced by some factor
+        Ray reflectedRay = reflectedRay(intersection);
         //System.out.println("Angle between inverted incidence and normal: " + intersection.ray.direction.inverse().angleBetween(intersection.surfaceNormal.toVector()) + ", angle between normal and reflection: " + reflectedRay.direction.angleBetween(intersection.surfaceNormal.toVector()));
         //System.out.println("Incident ray: " + intersection.ray + ", intersection Point: " + intersection.intersectionPoint + ", Intersection Point distance from origin: " + Point.distance(intersection.intersectionPoint, Point.ORIGIN)  + ", Reflected ray: " + reflectedRay);
-        CastRayForIntersection castRayForIntersection = new CastRayForIntersection(reflectedRay);
-        Future<Intersection> futureIntersection = jPharos.instance.executor.castRayForFutureIntersection(castRayForIntersection);
-        Intersection maybeIntersection = null;
-        try {
-            maybeIntersection = futureIntersection.get();
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
-        }
-
-        if (maybeIntersection != null) { // use the color of the reflection
-            //System.out.println("Reflected ray: " + maybeIntersection.ray + " hit " + maybeIntersection.body.name + " at intersection point: " + maybeIntersection.intersectionPoint + " and intersection time: " + maybeIntersection.intersectionTime);
-            return maybeIntersection.body.material.getColor(maybeIntersection);
-        }
-        // the reflected ray did not hit anything, show the color of the surrounding environment
-        Queue<Color> colors = new ConcurrentLinkedQueue<>();
-        colors.add(Color.BLACK.brighter());
-        return colors;
+        // use the color of the reflection; if the reflected ray does not hit anything, show the color of the surrounding environment
+        integrator.traceSecondary(reflectedRay, depth, ENVIRONMENT_RGB, colors);
     }
 
     private static Ray adjustRayOrigin(Point intersectionPoint, Vector direction) {
@@ -78,13 +70,13 @@ public class MirrorMaterial extends Material {
     }
 
     @Override
-    public Queue<Color> getColor(Intersection intersection) {
-        return calculateReflection(intersection);
+    public void getColor(Intersection intersection, Integrator integrator, int depth, RgbAccumulator colors) {
+        calculateReflection(intersection, integrator, depth, colors);
     }
 
     @Override
-    protected Color getColorInternal(Intersection intersection) {
-        return null;
+    protected int getColorInternal(Intersection intersection) {
+        return 0;
     }
 
 }
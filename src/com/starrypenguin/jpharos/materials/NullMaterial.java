@@ -18,10 +18,9 @@
 
 package com.starrypenguin.jpharos.materials;
 
+import com.starrypenguin.jpharos.core.Integrator;
 import com.starrypenguin.jpharos.core.Intersection;
-
-import java.awt.*;
-import java.util.Queue;
+import com.starrypenguin.jpharos.core.RgbAccumulator;
 
 /**
  * NullMaterial
@@ -41,12 +40,12 @@ final public class NullMaterial extends Material {
     }
 
     @Override
-    protected Color getColorInternal(Intersection intersection) {
-        return null;
+    protected int getColorInternal(Intersection intersection) {
+        return 0;
     }
 
     @Override
-    public Queue<Color> getColor(Intersection intersection) {
-        return null;
+    public void getColor(Intersection intersection, Integrator integrator, int depth, RgbAccumulator colors) {
+        // nothing to see
     }
 }
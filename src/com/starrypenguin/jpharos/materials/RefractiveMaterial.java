@@ -18,19 +18,15 @@
 
 package com.starrypenguin.jpharos.materials;
 
-import com.starrypenguin.jpharos.core.CastRayForIntersection;
+import com.starrypenguin.jpharos.core.Integrator;
 import com.starrypenguin.jpharos.core.Intersection;
 import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.core.RgbAccumulator;
 import com.starrypenguin.jpharos.geometry.Point;
 import com.starrypenguin.jpharos.geometry.Vector;
-import com.starrypenguin.jpharos.main.jPharos;
 import com.starrypenguin.jpharos.util.Shared;
 
 import java.awt.*;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 /**
  * RefractiveMaterial
@@ -41,6 +37,8 @@ import java.util.concurrent.Future;
 public class RefractiveMaterial extends Material {
 
     private final static double RAY_ADJUST_TIME = 0.01;
+    // what a refracted ray that hits nothing shows
+    public final static int BACKGROUND_RGB = Color.DARK_GRAY.getRGB();
     final private double indexOfRefraction;
 
     public RefractiveMaterial(double indexOfRefraction) {
@@ -48,7 +46,12 @@ public class RefractiveMaterial extends Material {
         this.indexOfRefraction = indexOfRefraction;
     }
 
-    protected static Queue<Color> calculateRefraction(Intersection intersection) {
+    /**
+     * The ray refracted into the Body at an Intersection, starting just inside the surface
+     *
+     * @return the refracted Ray, or null if the ray does not enter the Body
+     */
+    public static Ray refractedRay(Intersection intersection) {
         Shared.notNull(intersection, "Parameter intersection cannot be null!");
         // make sure the intersected material is refractive
         if (!(intersection.body.material instanceof RefractiveMaterial)) {
@@ -67,40 +70,43 @@ public class RefractiveMaterial extends Material {
         // v_refract = r * ray.direction + (r * c - sqrt( (1 - r^2) * (1 - c^2))) * normal
         Vector rl = intersection.ray.direction.scale(r);
         double temp = (r * c) - Math.sqrt(1 - Math.pow(r, 2) * (1 - Math.pow(c, 2)));
-        if (!Double.isNaN(temp)) {
-            Vector tn = intersection.surfaceNormal.scale(temp).toVector();
-            Vector v_refract = rl.plus(tn);
-            Ray refractedRay = adjustRayOrigin(intersection.intersectionPoint, v_refract);
-            CastRayForIntersection castRayForIntersection = new CastRayForIntersection(refractedRay);
-            Future<Intersection> futureIntersection = jPharos.instance.executor.castRayForFutureIntersection(castRayForIntersection);
-            Intersection maybeIntersection = null;
-            try {
-                maybeIntersection = futureIntersection.get();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+        if (Double.isNaN(temp)) {
+            return null;
+        }
+        Vector tn = intersection.surfaceNormal.scale(temp).toVector();
+        Vector v_refract = rl.plus(tn);
+        return adjustRayOrigin(intersection.intersectionPoint, v_refract);
+    }
+
+    /**
+     * The ray that leaves a refracting Body where a refracted ray hits it again; it keeps going in the same direction
+     */
+    public static Ray exitRay(Intersection exitIntersection) {
+        Shared.notNull(exitIntersection, "Parameter exitIntersection cannot be null!");
+        return adjustRayOrigin(exitIntersection.intersectionPoint, exitIntersection.ray.direction);
+    }
+
+    protected static void calculateRefraction(Intersection intersection, Integrator integrator, int depth, RgbAccumulator colors) {
+        Ray refractedRay = refractedRay(intersection);
+        if (refractedRay != null) {
+            if (depth >= integrator.maxDepth) {
+                // out of bounces; traceSecondary supplies the color for that
+                integrator.traceSecondary(refractedRay, depth, BACKGROUND_RGB, colors);
+                return;
             }
+            Intersection maybeIntersection = integrator.castRay(refractedRay);
             if (maybeIntersection != null && maybeIntersection.body == intersection.body) {
                 // re-cast the ray starting at the new intersection point
-                refractedRay = adjustRayOrigin(maybeIntersection.intersectionPoint, v_refract);
-                castRayForIntersection = new CastRayForIntersection(refractedRay);
-                futureIntersection = jPharos.instance.executor.castRayForFutureIntersection(castRayForIntersection);
-                maybeIntersection = null;
-                try {
-                    maybeIntersection = futureIntersection.get();
-                } catch (InterruptedException | ExecutionException e) {
-                    e.printStackTrace();
-                }
-                if (maybeIntersection != null) {
-                    return maybeIntersection.body.material.getColor(maybeIntersection);
-                }
+                refractedRay = exitRay(maybeIntersection);
+                integrator.traceSecondary(refractedRay, depth, BACKGROUND_RGB, colors);
+                return;
             } else if (maybeIntersection != null) {
-                return maybeIntersection.body.material.getColor(maybeIntersection);
+                maybeIntersection.body.material.getColor(maybeIntersection, integrator, depth + 1, colors);
+                return;
             }
         }
         // We did not hit anything return the "background" color
-        Queue<Color> colors = new ConcurrentLinkedQueue<>();
-        colors.add(Color.DARK_GRAY);
-        return colors;
+        colors.addPacked(BACKGROUND_RGB);
     }
 
     private static Ray adjustRayOrigin(Point intersectionPoint, Vector direction) {
@@ -110,13 +116,13 @@ public class RefractiveMaterial extends Material {
     }
 
     @Override
-    public Queue<Color> getColor(Intersection intersection) {
-        return calculateRefraction(intersection);
+    public void getColor(Intersection intersection, Integrator integrator, int depth, RgbAccumulator colors) {
+        calculateRefraction(intersection, integrator, depth, colors);
     }
 
     @Override
-    protected Color getColorInternal(Intersection intersection) {
-        return null;
+    protected int getColorInternal(Intersection intersection) {
+        return 0;
     }
 
     public static final class RefractionIndices {
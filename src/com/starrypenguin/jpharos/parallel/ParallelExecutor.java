@@ -18,11 +18,14 @@
 
 package com.starrypenguin.jpharos.parallel;
 
-import com.starrypenguin.jpharos.cameras.Film;
-import com.starrypenguin.jpharos.core.Intersection;
-import com.starrypenguin.jpharos.main.jPharos;
+import com.starrypenguin.jpharos.util.Shared;
 
-import java.util.concurrent.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ParallelExecutor
@@ -31,50 +34,59 @@ import java.util.concurrent.*;
  */
 public class ParallelExecutor {
 
-    final private static long WAIT_TIME = 2500; // milliseconds
-    final private ConcurrentLinkedQueue<Future<Film.DevelopedPixel>> pixelOutputQueue = new ConcurrentLinkedQueue<>();
     final private ExecutorService executor = Executors.newWorkStealingPool();
 
-
-    public void submit(Callable<Film.DevelopedPixel> task) {
-        pixelOutputQueue.add(executor.submit(task));
-    }
-
-    public Future<Intersection> castRayForFutureIntersection(Callable<Intersection> task) {
-        jPharos.instance.raysCast.incrementAndGet();
-        return executor.submit(task);
+    /**
+     * Start every task on the pool; each finished task counts as one unit of the returned RenderProgress
+     */
+    public RenderProgress submitAll(Collection<? extends Runnable> tasks) {
+        Shared.notNull(tasks, "Parameter tasks cannot be null!");
+        RenderProgress progress = new RenderProgress(tasks.size());
+        for (Runnable task : tasks) {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                    progress.unitsCompleted(1);
+                } catch (Throwable t) {
+                    progress.failed(t);
+                }
+            });
+        }
+        return progress;
     }
 
-    public void finishExecuting() {
-        while (!jPharos.instance.camera.film.readyToDevelop()) {
-            try {
-                Thread.sleep(WAIT_TIME * 4);
-                System.out.println(String.format("Rays cast: %d, rays hit: %d", jPharos.instance.raysCast.get(), jPharos.instance.raysHit.get()));
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-        executor.shutdown();
-        for (int count = 0; !executor.isShutdown() && count < 10; count++) {
-            try {
-                Thread.sleep(WAIT_TIME * 4);
-                System.out.println("Waiting for executor to shutdown. Count is " + count + " of 10 max.");
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Split [0, count) into ranges of at most rangeSize, run task on every range on the pool, and wait until all of
+     * them are done; must not be called from a task running on this executor
+     *
+     * @throws IllegalStateException if task fails on any range
+     */
+    public void forEachRange(int count, int rangeSize, RangeTask task) throws InterruptedException {
+        Shared.inclusiveRangeCheck(count, 0, Integer.MAX_VALUE, "Parameter count cannot be negative!");
+        Shared.positive(rangeSize, "Parameter rangeSize must be positive!");
+        Shared.notNull(task, "Parameter task cannot be null!");
+        List<Runnable> ranges = new ArrayList<>();
+        for (int start = 0; start < count; start += rangeSize) {
+            int rangeStart = start;
+            int rangeEnd = Math.min(count, start + rangeSize);
+            ranges.add(() -> task.run(rangeStart, rangeEnd));
         }
+        submitAll(ranges).await(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
     }
 
     public void execute(Runnable command) {
         executor.execute(command);
     }
 
-    public Future<Film.DevelopedPixel> pollPixels() throws InterruptedException {
-        return pixelOutputQueue.poll();
+    public void shutdown() {
+        executor.shutdown();
     }
 
-    public boolean isEmpty() {
-        return pixelOutputQueue.isEmpty();
+    public interface RangeTask {
+        /**
+         * Process the indices from start, inclusive, to end, exclusive
+         */
+        void run(int start, int end);
     }
 
 }
@@ -0,0 +1,112 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.parallel;
+
+import com.starrypenguin.jpharos.util.Shared;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * RenderProgress
+ * <p/>
+ * Counts the work units of a render as they finish, so that waiting threads wake the moment the
+ * last unit is done, and so that progress and the time remaining can be reported along the way
+ */
+final public class RenderProgress {
+
+    final public int totalUnits;
+    final private AtomicInteger completedUnits = new AtomicInteger(0);
+    final private AtomicReference<Throwable> failure = new AtomicReference<>();
+    final private CountDownLatch finished = new CountDownLatch(1);
+    final private long startNanos = System.nanoTime();
+
+    public RenderProgress(int totalUnits) {
+        Shared.inclusiveRangeCheck(totalUnits, 0, Integer.MAX_VALUE, "Parameter totalUnits cannot be negative!");
+        this.totalUnits = totalUnits;
+        if (totalUnits == 0) {
+            finished.countDown();
+        }
+    }
+
+    public void unitsCompleted(int units) {
+        Shared.inclusiveRangeCheck(units, 0, Integer.MAX_VALUE, "Parameter units cannot be negative!");
+        if (completedUnits.addAndGet(units) >= totalUnits) {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Record that a work unit failed; the render is finished, and await reports the failure
+     */
+    public void failed(Throwable cause) {
+        Shared.notNull(cause, "Parameter cause cannot be null!");
+        failure.compareAndSet(null, cause);
+        finished.countDown();
+    }
+
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * Wait until every unit is done, or the timeout passes
+     *
+     * @return true if the render is finished
+     * @throws IllegalStateException if a work unit failed
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        boolean done = finished.await(timeout, unit);
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw new IllegalStateException("Render task failed!", cause);
+        }
+        return done;
+    }
+
+    public double fractionComplete() {
+        return totalUnits == 0 ? 1.0 : Math.min(1.0, (double) completedUnits.get() / totalUnits);
+    }
+
+    public long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Estimate the time left from the average rate so far
+     *
+     * @return milliseconds remaining, or -1 before any unit has finished
+     */
+    public long estimatedMillisRemaining() {
+        double fraction = fractionComplete();
+        if (fraction <= 0.0) {
+            return -1;
+        }
+        return (long) (elapsedMillis() * (1.0 - fraction) / fraction);
+    }
+
+    @Override
+    public String toString() {
+        long remaining = estimatedMillisRemaining();
+        return String.format("%.1f%% complete after %.1f s, %s", 100.0 * fractionComplete(), elapsedMillis() / 1000.0,
+                remaining < 0 ? "time remaining unknown" : String.format("about %.1f s remaining", remaining / 1000.0));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.parallel;
+
+import com.starrypenguin.jpharos.util.Shared;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RenderTile
+ * <p/>
+ * A rectangular block of film pixels that one worker renders from start to finish
+ */
+final public class RenderTile {
+
+    final public int firstHeightIndex;
+    final public int firstWidthIndex;
+    final public int heightInPixels;
+    final public int widthInPixels;
+
+    public RenderTile(int firstHeightIndex, int firstWidthIndex, int heightInPixels, int widthInPixels) {
+        Shared.inclusiveRangeCheck(firstHeightIndex, 0, Integer.MAX_VALUE, "firstHeightIndex cannot be negative!");
+        Shared.inclusiveRangeCheck(firstWidthIndex, 0, Integer.MAX_VALUE, "firstWidthIndex cannot be negative!");
+        Shared.positive(heightInPixels, "heightInPixels must be positive!");
+        Shared.positive(widthInPixels, "widthInPixels must be positive!");
+        this.firstHeightIndex = firstHeightIndex;
+        this.firstWidthIndex = firstWidthIndex;
+        this.heightInPixels = heightInPixels;
+        this.widthInPixels = widthInPixels;
+    }
+
+    /**
+     * Cover a film with square tiles of tileSize pixels, row by row; tiles on the bottom and right edges
+     * are cut down to fit
+     */
+    public static List<RenderTile> split(int filmHeightInPixels, int filmWidthInPixels, int tileSize) {
+        Shared.positive(filmHeightInPixels, "filmHeightInPixels must be positive!");
+        Shared.positive(filmWidthInPixels, "filmWidthInPixels must be positive!");
+        Shared.positive(tileSize, "tileSize must be positive!");
+        List<RenderTile> tiles = new ArrayList<>();
+        for (int heightIndex = 0; heightIndex < filmHeightInPixels; heightIndex += tileSize) {
+            for (int widthIndex = 0; widthIndex < filmWidthInPixels; widthIndex += tileSize) {
+                tiles.add(new RenderTile(heightIndex, widthIndex,
+                        Math.min(tileSize, filmHeightInPixels - heightIndex),
+                        Math.min(tileSize, filmWidthInPixels - widthIndex)));
+            }
+        }
+        return tiles;
+    }
+
+    public int pixelCount() {
+        return heightInPixels * widthInPixels;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderTile{" +
+                "firstHeightIndex=" + firstHeightIndex +
+                ", firstWidthIndex=" + firstWidthIndex +
+                ", heightInPixels=" + heightInPixels +
+                ", widthInPixels=" + widthInPixels +
+                '}';
+    }
+}
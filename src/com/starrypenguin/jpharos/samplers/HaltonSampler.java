@@ -0,0 +1,59 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.samplers;
+
+/**
+ * HaltonSampler
+ * <p/>
+ * Low-discrepancy samples from the Halton sequence:  dimension d of sample i is the radical inverse of i in the
+ * d-th prime base; every pixel shifts each dimension by its own random offset (a Cranley-Patterson rotation)
+ * so that neighboring pixels do not repeat the same pattern
+ * <p>
+ * Dimensions past the table of primes fall back to independent random values
+ */
+public class HaltonSampler extends Sampler {
+
+    final private static int[] PRIMES = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53,
+            59, 61, 67, 71, 73, 79, 83, 89, 97, 101, 103, 107, 109, 113, 127, 131};
+
+    public HaltonSampler(int samplesPerPixel, long seed) {
+        super(samplesPerPixel, seed);
+    }
+
+    static double radicalInverse(int base, int index) {
+        double inverseBase = 1.0 / base;
+        double scale = inverseBase;
+        double result = 0.0;
+        while (index > 0) {
+            result += (index % base) * scale;
+            index /= base;
+            scale *= inverseBase;
+        }
+        return result;
+    }
+
+    @Override
+    protected double sample(int sampleIndex, int dimension) {
+        if (dimension >= PRIMES.length) {
+            return toUnit(hash(sampleIndex, dimension));
+        }
+        double value = radicalInverse(PRIMES[dimension], sampleIndex) + toUnit(hash(dimension, -1));
+        return Math.min(value >= 1.0 ? value - 1.0 : value, ONE_MINUS_EPSILON);
+    }
+}
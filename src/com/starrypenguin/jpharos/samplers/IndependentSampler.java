@@ -0,0 +1,40 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.samplers;
+
+/**
+ * IndependentSampler
+ * <p/>
+ * Every value is an independent uniform random number, hashed from the pixel, sample index, and dimension
+ */
+public class IndependentSampler extends Sampler {
+
+    public IndependentSampler() {
+        this(1, 0);
+    }
+
+    public IndependentSampler(int samplesPerPixel, long seed) {
+        super(samplesPerPixel, seed);
+    }
+
+    @Override
+    protected double sample(int sampleIndex, int dimension) {
+        return toUnit(hash(sampleIndex, dimension));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.samplers;
+
+import com.starrypenguin.jpharos.util.Shared;
+
+/**
+ * Sampler
+ * <p/>
+ * Supplies the random numbers used for lens, light, and shadow sampling; this is the abstract base class for all samplers
+ * <p>
+ * Before each camera sample the renderer calls startPixelSample, and every value after that depends only on the seed,
+ * the pixel, the sample index, and how many values have been drawn since (the dimension), so renders repeat exactly no
+ * matter which thread traces which pixel.  Samplers keep per-sample state and must not be shared between threads;
+ * current() returns the sampler the calling thread is using.
+ */
+public abstract class Sampler {
+
+    // the largest double below 1.0
+    final protected static double ONE_MINUS_EPSILON = 0x1.fffffffffffffp-1;
+    final private static ThreadLocal<Sampler> current = ThreadLocal.withInitial(IndependentSampler::new);
+
+    final public int samplesPerPixel;
+    final public long seed;
+    private int heightIndex;
+    private int widthIndex;
+    private int sampleIndex;
+    private int dimension;
+
+    public Sampler(int samplesPerPixel, long seed) {
+        Shared.positive(samplesPerPixel, "Parameter samplesPerPixel must be positive!");
+        this.samplesPerPixel = samplesPerPixel;
+        this.seed = seed;
+    }
+
+    /**
+     * The sampler used by the calling thread
+     */
+    public static Sampler current() {
+        return current.get();
+    }
+
+    /**
+     * Make sampler the one used by the calling thread
+     */
+    public static void setCurrent(Sampler sampler) {
+        Shared.notNull(sampler, "Parameter sampler cannot be null!");
+        current.set(sampler);
+    }
+
+    public void startPixelSample(int heightIndex, int widthIndex, int sampleIndex) {
+        Shared.inclusiveRangeCheck(sampleIndex, 0, Integer.MAX_VALUE, "Parameter sampleIndex cannot be negative!");
+        this.heightIndex = heightIndex;
+        this.widthIndex = widthIndex;
+        this.sampleIndex = sampleIndex;
+        this.dimension = 0;
+    }
+
+    /**
+     * Pick up a sample where an earlier startPixelSample left off, after dimension values were drawn; this lets
+     * a renderer that interleaves many samples on one thread draw the same values as one that does not
+     */
+    public void resumePixelSample(int heightIndex, int widthIndex, int sampleIndex, int dimension) {
+        Shared.inclusiveRangeCheck(dimension, 0, Integer.MAX_VALUE, "Parameter dimension cannot be negative!");
+        startPixelSample(heightIndex, widthIndex, sampleIndex);
+        this.dimension = dimension;
+    }
+
+    /**
+     * How many values have been drawn for the current sample
+     */
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * The next value for the current sample, in [0, 1)
+     */
+    public double next1D() {
+        return sample(sampleIndex, dimension++);
+    }
+
+    /**
+     * The value of one dimension of the current sample, in [0, 1)
+     */
+    protected abstract double sample(int sampleIndex, int dimension);
+
+    /**
+     * A well mixed 64 bit hash of the seed, the current pixel, and the given values
+     */
+    protected long hash(long first, long second) {
+        long h = mix(seed + 0x9E3779B97F4A7C15L);
+        h = mix(h ^ (((long) heightIndex << 32) | (widthIndex & 0xFFFFFFFFL)));
+        h = mix(h ^ first);
+        return mix(h ^ second);
+    }
+
+    // the SplitMix64 finalizer
+    protected static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Map the high 53 bits of a hash to [0, 1)
+     */
+    protected static double toUnit(long bits) {
+        return (bits >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Element index of a pseudo-random permutation of [0, length) chosen by permutationSeed, without building the
+     * permutation; from Kensler, "Correlated Multi-Jittered Sampling"
+     */
+    protected static int permutationElement(int index, int length, int permutationSeed) {
+        int w = length - 1;
+        w |= w >>> 1;
+        w |= w >>> 2;
+        w |= w >>> 4;
+        w |= w >>> 8;
+        w |= w >>> 16;
+        do {
+            index ^= permutationSeed;
+            index *= 0xE170893D;
+            index ^= permutationSeed >>> 16;
+            index ^= (index & w) >>> 4;
+            index ^= permutationSeed >>> 8;
+            index *= 0x0929EB3F;
+            index ^= permutationSeed >>> 23;
+            index ^= (index & w) >>> 1;
+            index *= 1 | permutationSeed >>> 27;
+            index *= 0x6935FA69;
+            index ^= (index & w) >>> 11;
+            index *= 0x74DCB303;
+            index ^= (index & w) >>> 2;
+            index *= 0x9E501CC3;
+            index ^= (index & w) >>> 2;
+            index *= 0xC860A3DF;
+            index &= w;
+            index ^= index >>> 5;
+        } while (index >= length);
+        return Integer.remainderUnsigned(index + permutationSeed, length);
+    }
+}
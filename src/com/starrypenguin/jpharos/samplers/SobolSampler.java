@@ -0,0 +1,60 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.samplers;
+
+/**
+ * SobolSampler
+ * <p/>
+ * Low-discrepancy samples from the first two dimensions of the Sobol sequence, which form a (0,2)-sequence, used
+ * for each consecutive pair of dimensions in turn ("padded" samples); each pixel and pair of dimensions gets its
+ * own shuffle of the sample indices and its own random digit scrambling, so the pairs are not correlated
+ * <p>
+ * Best with a power of two samples per pixel
+ */
+public class SobolSampler extends Sampler {
+
+    public SobolSampler(int samplesPerPixel, long seed) {
+        super(samplesPerPixel, seed);
+    }
+
+    /**
+     * Bits of the second Sobol dimension for an index; the first dimension is Integer.reverse(index)
+     */
+    static int sobolSecondDimension(int index) {
+        int result = 0;
+        for (int direction = 1 << 31; index != 0; index >>>= 1, direction ^= direction >>> 1) {
+            if ((index & 1) != 0) {
+                result ^= direction;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    protected double sample(int sampleIndex, int dimension) {
+        int pair = dimension / 2;
+        long pairHash = hash(pair, -1);
+        int index = sampleIndex < samplesPerPixel
+                ? permutationElement(sampleIndex, samplesPerPixel, (int) pairHash)
+                : sampleIndex;
+        int bits = (dimension % 2 == 0) ? Integer.reverse(index) : sobolSecondDimension(index);
+        bits ^= (dimension % 2 == 0) ? (int) (pairHash >>> 32) : (int) mix(pairHash);
+        return Math.min((bits & 0xFFFFFFFFL) * 0x1.0p-32, ONE_MINUS_EPSILON);
+    }
+}
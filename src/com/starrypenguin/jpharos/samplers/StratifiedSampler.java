@@ -0,0 +1,39 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.samplers;
+
+/**
+ * StratifiedSampler
+ * <p/>
+ * Splits each dimension into samplesPerPixel equal strata and gives each sample of a pixel its own stratum,
+ * jittered within it; the strata are shuffled differently for every pixel and dimension
+ */
+public class StratifiedSampler extends Sampler {
+
+    public StratifiedSampler(int samplesPerPixel, long seed) {
+        super(samplesPerPixel, seed);
+    }
+
+    @Override
+    protected double sample(int sampleIndex, int dimension) {
+        int stratum = permutationElement(sampleIndex % samplesPerPixel, samplesPerPixel, (int) hash(dimension, -1));
+        double jitter = toUnit(hash(sampleIndex, dimension));
+        return Math.min((stratum + jitter) / samplesPerPixel, ONE_MINUS_EPSILON);
+    }
+}
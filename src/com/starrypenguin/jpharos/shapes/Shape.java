@@ -23,6 +23,7 @@ import com.starrypenguin.jpharos.core.Intersection;
 import com.starrypenguin.jpharos.core.Ray;
 import com.starrypenguin.jpharos.geometry.BoundingBox;
 import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.samplers.Sampler;
 import com.starrypenguin.jpharos.util.Shared;
 
 /**
@@ -44,6 +45,17 @@ public abstract class Shape {
 
     public abstract Intersection Intersects(Ray ray, Body body);
 
+    /**
+     * Any-hit query used for shadow rays:  does the ray hit this Shape before maxDistance?
+     * Implementations return as soon as any hit is found and do not create Intersections.
+     *
+     * @param ray the Ray to test
+     * @param maxDistance only hits before this time along the ray count; for a ray with a
+     *                    normalized direction this is a distance
+     * @return true if the ray hits this Shape at a time greater than zero and less than maxDistance
+     */
+    public abstract boolean occluded(Ray ray, double maxDistance);
+
     public abstract BoundingBox getBoundingBox();
 
     public abstract double surfaceArea();
@@ -56,6 +68,10 @@ public abstract class Shape {
     }
 
     public Point getSamplePoint() {
+        return getSamplePoint(Sampler.current());
+    }
+
+    public Point getSamplePoint(Sampler sampler) {
         return location;
     }
 }
@@ -24,7 +24,7 @@ import com.starrypenguin.jpharos.core.Ray;
 import com.starrypenguin.jpharos.geometry.BoundingBox;
 import com.starrypenguin.jpharos.geometry.Normal;
 import com.starrypenguin.jpharos.geometry.Point;
-import com.starrypenguin.jpharos.geometry.Vector;
+import com.starrypenguin.jpharos.samplers.Sampler;
 import com.starrypenguin.jpharos.util.Shared;
 
 import java.util.ArrayList;
@@ -47,8 +47,24 @@ final public class Sphere extends Shape {
 
     @Override
     public boolean IntersectsP(Ray ray) {
-        List<Double> intersectionTimes = getIntersectionTimes(ray);
-        return !intersectionTimes.isEmpty();
+        return closestIntersectionTime(ray, Double.POSITIVE_INFINITY) != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Any-hit test for shadow rays:  does the ray hit the sphere before maxDistance?
+     * Rejects rays that start outside the sphere and point away from it before taking a square root.
+     */
+    @Override
+    public boolean occluded(Ray ray, double maxDistance) {
+        double fX = ray.origin.x - location.x;
+        double fY = ray.origin.y - location.y;
+        double fZ = ray.origin.z - location.z;
+        double c = fX * fX + fY * fY + fZ * fZ - radius * radius;
+        double halfB = fX * ray.direction.x + fY * ray.direction.y + fZ * ray.direction.z;
+        if (c > 0.0 && halfB > 0.0) {
+            return false; // the origin is outside the sphere and the ray points away from it
+        }
+        return closestIntersectionTime(ray, maxDistance) != Double.POSITIVE_INFINITY;
     }
 
     /**
@@ -60,62 +76,115 @@ final public class Sphere extends Shape {
      *
      * Substituting the ray components into the implicit sphere equation gives:  (o_x + (d_x)t)^2 + (o_y + (d_y)t)^2 + (o_z + (d_z)t)^2 = r^2
      *
-     * The equation can be expanded and then we can gather coefficients to fit the quadratic equation for t:  at^2 + bt + c = 0
-     * where:  a = (d_x)^2 + (d_y)^2 + (d_z)^2
-     *         b = 2( (d_x)(o_x) + (d_y)(o_y) + (d_z)(o_z) )
-     *         c = (o_x)^2 + (o_y)^2 + (o_z)^2 - r^2
+     * The equation can be expanded and then we can gather coefficients to fit the quadratic equation for t:  at^2 + 2b't + c = 0
+     * where, with f = o - center:
+     *         a = d . d
+     *         b' = f . d
+     *         c = f . f - r^2
      *
-     * This will allow the quadratic formula to be used to find the minimum root in t, which corresponds to the intersection of the ray with the sphere
-     * If there are no real roots, then no intersection occurs and we return null
+     * The textbook discriminant b'^2 - ac loses most of its precision to cancellation when the ray passes far from a
+     * small sphere, so it is calculated in the equivalent form a(r^2 - |f - (b'/a)d|^2).  The root with the larger
+     * magnitude is q/a where q = -(b' + sign(b')sqrt(discriminant)), and the other root is c/q; this avoids
+     * subtracting two nearly equal numbers.
      *
      * Reference:  "Physically Based Rendering", Third Edition, Section 3.2 "Spheres"
+     * Reference:  "Ray Tracing Gems", Chapter 7 "Precision Improvements for Ray/Sphere Intersection"
      *
-     * Updated to use vector forms for simpler code
-     * Reference: https://en.wikipedia.org/wiki/Line%E2%80%93sphere_intersection
-     * @param ray
-     * @return
+     * @param ray the Ray to test for intersection
+     * @param nearAndFar receives the near and far intersection times, in that order, if the ray's line hits the sphere;
+     *                   either time may be negative or outside the range of the ray
+     * @return true if the ray's line hits the sphere
      */
-     private List<Double> getIntersectionTimes(Ray ray) {
-         double a = ray.direction.dot(ray.direction);
-         Vector temp = new Vector(location, ray.origin);
-         double b = 2 * ray.direction.dot(temp);
-         double c = temp.dot(temp) - (radius * radius);
-         //System.out.println("Finding quadratic roots for a=" + a + ", b=" + b + ",c=" + c);
-         List<Double> roots = Shared.findQuadraticRoots(a, b, c);
-         List<Double> results = new ArrayList<>(2);
-         for (Double root : roots) {
-             if (!Double.isNaN(root) && (root >= 0.0)) {
-                 results.add(root);
-             }
-         }
-         return results;
-     }
+    public boolean intersectionTimes(Ray ray, double[] nearAndFar) {
+        final double dX = ray.direction.x;
+        final double dY = ray.direction.y;
+        final double dZ = ray.direction.z;
+        double fX = ray.origin.x - location.x;
+        double fY = ray.origin.y - location.y;
+        double fZ = ray.origin.z - location.z;
+        double a = dX * dX + dY * dY + dZ * dZ;
+        double halfB = fX * dX + fY * dY + fZ * dZ;
+        double q = largerRootNumerator(fX, fY, fZ, dX, dY, dZ, a, halfB);
+        if (Double.isNaN(q)) {
+            return false;
+        }
+        double c = fX * fX + fY * fY + fZ * fZ - radius * radius;
+        double root1 = q / a;
+        double root0 = q == 0.0 ? root1 : c / q; // c / q is 0 / 0 when the ray grazes the sphere at its origin
+        nearAndFar[0] = Math.min(root0, root1);
+        nearAndFar[1] = Math.max(root0, root1);
+        return true;
+    }
+
+    /**
+     * @return the earliest time the ray hits the sphere before maxTime and within the range of the ray,
+     * or Double.POSITIVE_INFINITY if it does not
+     */
+    public double closestIntersectionTime(Ray ray, double maxTime) {
+        // the same calculation as intersectionTimes, kept in locals so that testing a ray allocates nothing
+        final double dX = ray.direction.x;
+        final double dY = ray.direction.y;
+        final double dZ = ray.direction.z;
+        double fX = ray.origin.x - location.x;
+        double fY = ray.origin.y - location.y;
+        double fZ = ray.origin.z - location.z;
+        double a = dX * dX + dY * dY + dZ * dZ;
+        double halfB = fX * dX + fY * dY + fZ * dZ;
+        double q = largerRootNumerator(fX, fY, fZ, dX, dY, dZ, a, halfB);
+        if (Double.isNaN(q)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double c = fX * fX + fY * fY + fZ * fZ - radius * radius;
+        double root1 = q / a;
+        double root0 = q == 0.0 ? root1 : c / q;
+        double near = Math.min(root0, root1);
+        double far = Math.max(root0, root1);
+        if (ray.inRange(near) && near < maxTime) {
+            return near;
+        }
+        if (ray.inRange(far) && far < maxTime) {
+            return far;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    // q = -(b' + sign(b')sqrt(discriminant)), with the discriminant in its precise form (see intersectionTimes);
+    // NaN if the ray's line misses the sphere
+    private double largerRootNumerator(double fX, double fY, double fZ, double dX, double dY, double dZ, double a, double halfB) {
+        // l is the vector from the center to the point on the ray's line closest to the center
+        double scale = halfB / a;
+        double lX = fX - scale * dX;
+        double lY = fY - scale * dY;
+        double lZ = fZ - scale * dZ;
+        double discriminant = a * (radius * radius - (lX * lX + lY * lY + lZ * lZ));
+        if (!(discriminant >= 0.0)) {
+            return Double.NaN; // no real roots; this also rejects NaN
+        }
+        return -(halfB + Math.copySign(Math.sqrt(discriminant), halfB));
+    }
 
     public List<Point> getIntersectionPoints(Ray ray) {
         List<Point> intersectionPoints = new ArrayList<>(2);
-        List<Double> intersectionTimes = getIntersectionTimes(ray);
-        for (double intersectionTime : intersectionTimes) {
-            Point intersectionPoint = ray.atTime(intersectionTime);
-            intersectionPoints.add(intersectionPoint);
+        double[] nearAndFar = new double[2];
+        if (intersectionTimes(ray, nearAndFar)) {
+            for (double intersectionTime : nearAndFar) {
+                if (intersectionTime >= 0.0) {
+                    intersectionPoints.add(ray.atTime(intersectionTime));
+                }
+            }
         }
         return intersectionPoints;
     }
 
     @Override
     public Intersection Intersects(Ray ray, Body body) {
-        List<Double> intersectionTimes = getIntersectionTimes(ray);
+        double intersectionTime = closestIntersectionTime(ray, Double.POSITIVE_INFINITY);
         Intersection intersection = null;
-        if (intersectionTimes.size() > 0) {
+        if (intersectionTime != Double.POSITIVE_INFINITY) {
             // calculate surface normal for intersection
-            double intersectionTime = intersectionTimes.get(0);
-            if (Double.isNaN(intersectionTime) && intersectionTimes.get(1) != null) {
-                intersectionTime = intersectionTimes.get(1);
-            }
-            if (!Double.isNaN(intersectionTime)) {
-                Point intersectionPoint = ray.atTime(intersectionTime);
-                Normal surfaceNormal = new Normal(location, intersectionPoint);
-                intersection = new Intersection(ray, intersectionTime, surfaceNormal, intersectionPoint, body);
-            }
+            Point intersectionPoint = ray.atTime(intersectionTime);
+            Normal surfaceNormal = new Normal(location, intersectionPoint);
+            intersection = new Intersection(ray, intersectionTime, surfaceNormal, intersectionPoint, body);
         }
         return intersection;
     }
@@ -156,12 +225,13 @@ final public class Sphere extends Shape {
     }
 
     @Override
-    public Point getSamplePoint() {
+    public Point getSamplePoint(Sampler sampler) {
+        Shared.notNull(sampler, "Parameter sampler cannot be null!");
         // theta's range is [0, 2*Pi]
-        double theta = Shared.random.nextDouble() * 2.0 * Math.PI;
+        double theta = sampler.next1D() * 2.0 * Math.PI;
 
         // phi's range is [0, Pi]
-        double phi = Shared.random.nextDouble() * Math.PI;
+        double phi = sampler.next1D() * Math.PI;
 
         // x = r * sin(phi) * cos(theta)
         double x = this.radius * Math.sin(phi) * Math.cos(theta) + location.x;
@@ -31,16 +31,39 @@ import com.starrypenguin.jpharos.util.Shared;
  */
 public class Triangle extends Shape {
 
-    private final static double EPSILON = 0.000001;
+    public final static double EPSILON = 0.000001;
     public final Point v1;
     public final Point v2;
     public final Point v3;
+    // the intersection kernel works on primitive copies of v1 and the two edges leaving it,
+    // so that testing a ray does not dereference the vertex Points or allocate Vectors
+    private final double v1X, v1Y, v1Z;
+    private final double edge1X, edge1Y, edge1Z; // v2 - v1
+    private final double edge2X, edge2Y, edge2Z; // v3 - v1
+    // geometric normal:  edge1 cross edge2, not normalized
+    public final double normalX, normalY, normalZ;
+    private final Normal surfaceNormal;
+    private final BoundingBox boundingBox;
 
     public Triangle(Point v1, Point v2, Point v3) {
         super(calculateTriangleCentroid(v1, v2, v3));
         this.v1 = v1;
         this.v2 = v2;
         this.v3 = v3;
+        v1X = v1.x;
+        v1Y = v1.y;
+        v1Z = v1.z;
+        edge1X = v2.x - v1.x;
+        edge1Y = v2.y - v1.y;
+        edge1Z = v2.z - v1.z;
+        edge2X = v3.x - v1.x;
+        edge2Y = v3.y - v1.y;
+        edge2Z = v3.z - v1.z;
+        normalX = edge1Y * edge2Z - edge1Z * edge2Y;
+        normalY = edge1Z * edge2X - edge1X * edge2Z;
+        normalZ = edge1X * edge2Y - edge1Y * edge2X;
+        surfaceNormal = new Normal(normalX, normalY, normalZ);
+        boundingBox = new BoundingBox(Point.max(Point.max(v1, v2), v3), Point.min(Point.min(v1, v2), v3));
     }
 
     /**
@@ -94,68 +117,95 @@ public class Triangle extends Shape {
 
     /**
      * Use the Möller–Trumbore intersection algorithm to quickly determine
-     * if the ray intersects the triangle
+     * if the ray intersects the triangle; no objects are allocated
      *
      * Reference:  https://en.wikipedia.org/wiki/M%C3%B6ller%E2%80%93Trumbore_intersection_algorithm
      * @param ray the Ray to test for intersection
-     * @return Double with the time that the intersection occurs or null if there is no intersection
+     * @param maxTime only intersections before this time count
+     * @param barycentric if not null and the ray hits, receives the barycentric u and v of the hit
+     *                    (the weights of v2 and v3) in elements 0 and 1
+     * @return the time that the intersection occurs, or Double.POSITIVE_INFINITY if there is no
+     * intersection before maxTime inside the range of the ray
      */
-    private Double determineIntersection(Ray ray) {
-        Double intersectionTime = null;
-        Vector edge1, edge2, P, Q, T;
-        double det, invDet, u, v, t;
-
-        // Find vectors for two edges sharing V1
-        edge1 = new Vector(v1, v2);
-        edge2 = new Vector(v1, v3);
+    public double intersect(Ray ray, double maxTime, double[] barycentric) {
+        return intersect(v1X, v1Y, v1Z, edge1X, edge1Y, edge1Z, edge2X, edge2Y, edge2Z, ray, maxTime, barycentric);
+    }
+
+    /**
+     * Möller–Trumbore test of a triangle given as its first vertex and the two edges leaving it;
+     * this is the kernel behind intersect(Ray, double, double[]) and is also used by ScalarIntersectionKernel
+     * for the packed triangles of a TriangleMesh
+     */
+    public static double intersect(double v1X, double v1Y, double v1Z,
+                                   double edge1X, double edge1Y, double edge1Z,
+                                   double edge2X, double edge2Y, double edge2Z,
+                                   Ray ray, double maxTime, double[] barycentric) {
+        final double directionX = ray.direction.x;
+        final double directionY = ray.direction.y;
+        final double directionZ = ray.direction.z;
         // Begin calculating determinant - also used to calculate u parameter
-        P = ray.direction.cross(edge2);
+        double pX = directionY * edge2Z - directionZ * edge2Y;
+        double pY = directionZ * edge2X - directionX * edge2Z;
+        double pZ = directionX * edge2Y - directionY * edge2X;
         // if determinant is near zero, ray lies in plane of triangle or ray is parallel to plane of triangle
-        det = edge1.dot(P);
+        double det = edge1X * pX + edge1Y * pY + edge1Z * pZ;
         if (det > -EPSILON && det < EPSILON) {
-            return intersectionTime;
+            return Double.POSITIVE_INFINITY;
         }
 
-        invDet = 1.0 / det;
+        double invDet = 1.0 / det;
         // Calculate distance from V1 to ray origin
-        T = new Vector(v1, ray.origin);
+        double tX = ray.origin.x - v1X;
+        double tY = ray.origin.y - v1Y;
+        double tZ = ray.origin.z - v1Z;
         // Calculate u parameter and test bound
-        u = T.dot(P) * invDet;
+        double u = (tX * pX + tY * pY + tZ * pZ) * invDet;
         //The intersection lies outside of the triangle
         if (u < 0.0 || u > 1.0) {
-            return intersectionTime;
+            return Double.POSITIVE_INFINITY;
         }
 
         //Prepare to test v parameter
-        Q = T.cross(edge1);
+        double qX = tY * edge1Z - tZ * edge1Y;
+        double qY = tZ * edge1X - tX * edge1Z;
+        double qZ = tX * edge1Y - tY * edge1X;
         //Calculate V parameter and test bound
-        v = ray.direction.dot(Q) * invDet;
+        double v = (directionX * qX + directionY * qY + directionZ * qZ) * invDet;
         //The intersection lies outside of the triangle
-        if (v < 0.0 || (u+v) > 1.0) {
-            return intersectionTime;
+        if (v < 0.0 || (u + v) > 1.0) {
+            return Double.POSITIVE_INFINITY;
         }
 
-        t = edge2.dot(Q)*invDet;
-
-        if (t > EPSILON) {
-            intersectionTime = t;
-            return intersectionTime;
+        double t = (edge2X * qX + edge2Y * qY + edge2Z * qZ) * invDet;
+        if (t > EPSILON && t < maxTime && ray.inRange(t)) {
+            if (barycentric != null) {
+                barycentric[0] = u;
+                barycentric[1] = v;
+            }
+            return t;
         }
-        return intersectionTime;
+        return Double.POSITIVE_INFINITY;
     }
 
     @Override
     public boolean IntersectsP(Ray ray) {
-        return determineIntersection(ray) != null;
+        return intersect(ray, Double.POSITIVE_INFINITY, null) != Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public boolean occluded(Ray ray, double maxDistance) {
+        return intersect(ray, maxDistance, null) != Double.POSITIVE_INFINITY;
     }
 
     @Override
     public Intersection Intersects(Ray ray, Body body) {
         Intersection intersection = null;
-        Double intersectionTime = determineIntersection(ray);
-        if (intersectionTime != null && intersectionTime > 0) {
+        double intersectionTime = intersect(ray, Double.POSITIVE_INFINITY, null);
+        if (intersectionTime != Double.POSITIVE_INFINITY) {
+            double[] barycentric = new double[2];
+            intersect(ray, Double.POSITIVE_INFINITY, barycentric);
             Point intersectionPoint = ray.atTime(intersectionTime);
-            intersection = new Intersection(ray, intersectionTime, getSurfaceNormal(), intersectionPoint, body);
+            intersection = new Intersection(ray, intersectionTime, surfaceNormal, intersectionPoint, body, 0, barycentric[0], barycentric[1]);
             //System.out.println("Intersected with triangle: " + intersection);
         }
         return intersection;
@@ -163,15 +213,11 @@ public class Triangle extends Shape {
 
     @Override
     public BoundingBox getBoundingBox() {
-        Point max = Point.max(Point.max(v1, v2), v3);
-        Point min = Point.min(Point.min(v1, v2), v3);
-        return new BoundingBox(max, min);
+        return boundingBox;
     }
 
-    private Normal getSurfaceNormal() {
-        Vector vec1 = new Vector(v1, v2);
-        Vector vec2 = new Vector(v1, v3);
-        return Normal.fromVector(vec1.cross(vec2));
+    public Normal getSurfaceNormal() {
+        return surfaceNormal;
     }
 
     /**
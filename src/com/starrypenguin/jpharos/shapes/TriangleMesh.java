@@ -18,58 +18,169 @@
 
 package com.starrypenguin.jpharos.shapes;
 
+import com.starrypenguin.jpharos.core.BinnedSahBuilder;
 import com.starrypenguin.jpharos.core.Body;
 import com.starrypenguin.jpharos.core.Intersection;
+import com.starrypenguin.jpharos.core.LinearBvh;
 import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.core.TraversalStatistics;
+import com.starrypenguin.jpharos.core.WideBvh;
 import com.starrypenguin.jpharos.geometry.BoundingBox;
+import com.starrypenguin.jpharos.geometry.Normal;
 import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.kernels.IntersectionKernel;
+import com.starrypenguin.jpharos.kernels.PackedTriangles;
+import com.starrypenguin.jpharos.kernels.ScalarIntersectionKernel;
 import com.starrypenguin.jpharos.util.Shared;
 
-import java.awt.*;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * TriangleMesh
  * <p/>
  * Represents a group of interconnected triangles (mesh) that is used
  * to represent complex geometries
+ * <p>
+ * Each TriangleMesh builds its own bounding volume hierarchy over its triangles
+ * when it is created, so ray queries visit only the triangles near the ray; unless wide BVHs
+ * are turned off, the queries walk a WideBvh collapsed from it
+ * <p>
+ * The triangles are handed to the IntersectionKernel as PackedTriangles, so that it can test
+ * all of the triangles in a BVH leaf at once; only a vector kernel copies them into packed arrays
  */
 public class TriangleMesh extends Shape {
 
+    final static int MAX_TRIANGLES_PER_LEAF = 4;
+
     TriangleMeshVertices vertices;
+    // shared with vertices; triangles are ordered so that each BVH leaf covers a contiguous range
+    final private double[] positions;
+    final private int[] indices;
+    final private LinearBvh bvh;
+    // null when wide BVHs are turned off
+    final private WideBvh wideBvh;
+    final private PackedTriangles packedTriangles;
+    final private IntersectionKernel kernel = IntersectionKernel.get();
+    final private LinearBvh.PrimitiveIntersector triangleIntersector = new LinearBvh.PrimitiveIntersector() {
+        @Override
+        public double intersect(int primitive, Ray ray, double maxTime) {
+            return intersectTriangle(primitive, ray, maxTime);
+        }
+
+        @Override
+        public int closestInLeaf(int first, int count, Ray ray, double maxTime, double[] hitTime) {
+            return kernel.closestTriangle(packedTriangles, first, count, ray, maxTime, hitTime);
+        }
+
+        @Override
+        public boolean anyInLeaf(int first, int count, Ray ray, double maxTime) {
+            return kernel.anyTriangle(packedTriangles, first, count, ray, maxTime);
+        }
+    };
 
     public TriangleMesh(Point centroid, TriangleMeshVertices vertices) {
         super(centroid);
         Shared.notNull(vertices, "vertices parameter cannot be null!");
         this.vertices = vertices;
+        vertices.removeDuplicateTriangles();
+        vertices.trimToSize();
+        int triangleCount = vertices.size();
+        double[] primitiveBounds = new double[6 * triangleCount];
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            vertices.triangleBounds(triangle, primitiveBounds, 6 * triangle);
+        }
+        BinnedSahBuilder builder = new BinnedSahBuilder(primitiveBounds, MAX_TRIANGLES_PER_LEAF);
+        this.bvh = new LinearBvh(builder.build());
+        vertices.reorderTriangles(builder.getPrimitiveIndices());
+        this.positions = vertices.positions();
+        this.indices = vertices.indices();
+        this.packedTriangles = kernel.packTriangles(positions, indices, vertices.size());
+        this.wideBvh = WideBvh.collapseIfEnabled(bvh);
+    }
+
+    /**
+     * Create a mesh whose BVH has already been built, for example by loading it from a TriangleMeshCache;
+     * the triangles in vertices must already be in the leaf order of bvh
+     */
+    TriangleMesh(Point centroid, TriangleMeshVertices vertices, LinearBvh bvh) {
+        super(centroid);
+        Shared.notNull(vertices, "vertices parameter cannot be null!");
+        Shared.notNull(bvh, "bvh parameter cannot be null!");
+        this.vertices = vertices;
+        this.bvh = bvh;
+        this.positions = vertices.positions();
+        this.indices = vertices.indices();
+        this.packedTriangles = kernel.packTriangles(positions, indices, vertices.size());
+        this.wideBvh = WideBvh.collapseIfEnabled(bvh);
+    }
+
+    LinearBvh getBvh() {
+        return bvh;
+    }
+
+    /**
+     * Traversal statistics of the queries on the hierarchy of this mesh; see TraversalStatistics
+     */
+    public TraversalStatistics getTraversalStatistics() {
+        return wideBvh != null ? wideBvh.statistics : bvh.statistics;
+    }
+
+    private double intersectTriangle(int primitive, Ray ray, double maxTime) {
+        return ScalarIntersectionKernel.intersect(positions, indices, primitive, ray, maxTime);
+    }
+
+    // geometric normal of a triangle:  (v2 - v1) cross (v3 - v1), not normalized, matching Triangle
+    private Normal surfaceNormal(int primitive) {
+        int a = 3 * indices[3 * primitive];
+        int b = 3 * indices[3 * primitive + 1];
+        int c = 3 * indices[3 * primitive + 2];
+        double edge1X = positions[b] - positions[a];
+        double edge1Y = positions[b + 1] - positions[a + 1];
+        double edge1Z = positions[b + 2] - positions[a + 2];
+        double edge2X = positions[c] - positions[a];
+        double edge2Y = positions[c + 1] - positions[a + 1];
+        double edge2Z = positions[c + 2] - positions[a + 2];
+        return new Normal(edge1Y * edge2Z - edge1Z * edge2Y, edge1Z * edge2X - edge1X * edge2Z, edge1X * edge2Y - edge1Y * edge2X);
+    }
+
+    private int closestTriangle(Ray ray) {
+        return wideBvh != null ? wideBvh.closestHit(ray, Double.POSITIVE_INFINITY, triangleIntersector)
+                : bvh.closestHit(ray, Double.POSITIVE_INFINITY, triangleIntersector);
+    }
+
+    private boolean anyTriangle(Ray ray, double maxDistance) {
+        return wideBvh != null ? wideBvh.anyHit(ray, maxDistance, triangleIntersector)
+                : bvh.anyHit(ray, maxDistance, triangleIntersector);
     }
 
     @Override
     public boolean IntersectsP(Ray ray) {
-        return vertices.parallelStream().anyMatch(triangle -> triangle.IntersectsP(ray));
+        return anyTriangle(ray, Double.POSITIVE_INFINITY);
     }
 
-    private List<Intersection> getIntersections(Ray ray, Body body) {
-        return vertices.parallelStream().map(triangle -> triangle.Intersects(ray, body)).filter(Objects::nonNull).sorted().collect(Collectors.toList());
+    @Override
+    public boolean occluded(Ray ray, double maxDistance) {
+        return anyTriangle(ray, maxDistance);
     }
 
     public Optional<Triangle> getIntersectingTriangle(Ray ray) {
         Shared.notNull(ray, "Parameter ray cannot be null!");
-        return vertices.parallelStream().filter(triangle -> triangle.IntersectsP(ray)).findFirst();
+        int closestTriangle = closestTriangle(ray);
+        return closestTriangle == -1 ? Optional.empty() : Optional.of(vertices.getTriangle(closestTriangle));
     }
 
     @Override
     public Intersection Intersects(Ray ray, Body body) {
-        Intersection retVal = null;
-        List<Intersection> intersections = getIntersections(ray, body);
-        if (!intersections.isEmpty()) {
-            retVal = intersections.get(0);
+        int closestTriangle = closestTriangle(ray);
+        if (closestTriangle == -1) {
+            return null;
         }
-        return retVal;
+        // test the closest triangle again for the barycentric coordinates of the hit, which materials such as
+        // ColorMaterial use to blend the vertex colors
+        double[] barycentric = new double[2];
+        double intersectionTime = ScalarIntersectionKernel.intersect(positions, indices, closestTriangle, ray, Double.POSITIVE_INFINITY, barycentric);
+        return new Intersection(ray, intersectionTime, surfaceNormal(closestTriangle), ray.atTime(intersectionTime), body,
+                closestTriangle, barycentric[0], barycentric[1]);
     }
 
     @Override
@@ -82,8 +193,12 @@ public class TriangleMesh extends Shape {
         return vertices.getSurfaceArea();
     }
 
-    public Map<Point, Color> getColorMap() {
-        //System.out.println("ColorMap size is: " + vertices.getColorMap().size());
-        return vertices.getColorMap();
+    /**
+     * @param triangle index of a triangle, as recorded in Intersection.primitive
+     * @param corner   0, 1, or 2
+     * @return the packed RGB color of the vertex at corner of triangle, or 0 if the vertex has no color
+     */
+    public int getVertexColor(int triangle, int corner) {
+        return vertices.getColor(indices[3 * triangle + corner]);
     }
 }
@@ -19,6 +19,7 @@
 package com.starrypenguin.jpharos.shapes;
 
 import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.util.Shared;
 
 import java.awt.*;
 
@@ -29,7 +30,19 @@ import java.awt.*;
  */
 public class TriangleMeshBuilder {
 
-    private TriangleMeshVertices vertices = new TriangleMeshVertices();
+    private final TriangleMeshVertices vertices;
+
+    public TriangleMeshBuilder() {
+        this(new TriangleMeshVertices());
+    }
+
+    /**
+     * Continue building from vertices that were created elsewhere, for example with TriangleMeshVertices.fromArrays
+     */
+    public TriangleMeshBuilder(TriangleMeshVertices vertices) {
+        Shared.notNull(vertices, "Parameter vertices cannot be null!");
+        this.vertices = vertices;
+    }
 
     public TriangleMeshBuilder addTriangle(Point v1arg, Point v2arg, Point v3arg) {
         vertices.addTriangle(v1arg, v2arg, v3arg);
@@ -0,0 +1,247 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.shapes;
+
+import com.starrypenguin.jpharos.core.LinearBvh;
+import com.starrypenguin.jpharos.util.Shared;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * TriangleMeshCache
+ * <p/>
+ * Saves a TriangleMesh, together with its finished BVH, next to the file it was read from,
+ * so that later runs can load the mesh with a few bulk copies instead of parsing the source
+ * file and building the BVH again
+ * <p>
+ * The cache file is named after the source file with ".jpmesh" appended and holds a SHA-256
+ * hash of the source; a cache whose hash, version, or size does not match is ignored and rewritten.
+ * All values are little endian, laid out as:
+ * <pre>
+ *   header          magic "JPMESH\0\0", version, flags, source hash, vertex count,
+ *                   triangle count, BVH node count, mesh bounds, and surface area
+ *   double[]        vertex positions, then BVH node bounds
+ *   int[]           vertex colors (only if flags has HAS_COLORS), triangle indices
+ *                   (in BVH leaf order), then BVH node data
+ * </pre>
+ * Caching can be turned off with -Djpharos.meshCache=false
+ */
+public final class TriangleMeshCache {
+
+    public final static String EXTENSION = ".jpmesh";
+    public final static String ENABLED_PROPERTY = "jpharos.meshCache";
+
+    final static int VERSION = 1;
+    final static int HASH_SIZE = 32;
+    final static int HEADER_SIZE = 128;
+    private final static byte[] MAGIC = {'J', 'P', 'M', 'E', 'S', 'H', 0, 0};
+    private final static int HAS_COLORS = 1;
+
+    private TriangleMeshCache() {
+        // static methods only
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+    }
+
+    public static File cacheFileFor(File source) {
+        Shared.notNull(source, "source parameter cannot be null!");
+        return new File(source.getPath() + EXTENSION);
+    }
+
+    /**
+     * Load the mesh for source from its cache file, or read it with reader and save a new cache file;
+     * failing to write the cache is reported but does not stop the mesh from being returned
+     */
+    public static TriangleMesh loadOrBuild(File source, Function<File, TriangleMesh> reader) {
+        Shared.notNullExistsAndReadable(source, "source parameter cannot be null, must exist, and be readable!");
+        Shared.notNull(reader, "reader parameter cannot be null!");
+        byte[] hash = hashOf(source);
+        File cacheFile = cacheFileFor(source);
+        TriangleMesh mesh = read(cacheFile, hash);
+        if (mesh == null) {
+            mesh = reader.apply(source);
+            try {
+                write(cacheFile, hash, mesh);
+            } catch (IOException e) {
+                System.err.println("Could not write mesh cache " + cacheFile + ": " + e.getMessage());
+            }
+        }
+        return mesh;
+    }
+
+    static byte[] hashOf(File source) {
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long position = 0;
+            long size = channel.size();
+            while (position < size) {
+                long length = Math.min(size - position, Integer.MAX_VALUE);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                position += length;
+            }
+            return digest.digest();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + source, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available!", e);
+        }
+    }
+
+    /**
+     * Read the cached mesh, or return null if the cache file is missing, stale, or damaged
+     */
+    static TriangleMesh read(File cacheFile, byte[] sourceHash) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            byte[] hash = new byte[HASH_SIZE];
+            buffer.get(magic);
+            int version = buffer.getInt();
+            int flags = buffer.getInt();
+            buffer.get(hash);
+            int vertexCount = buffer.getInt();
+            int triangleCount = buffer.getInt();
+            int nodeCount = buffer.getInt();
+            buffer.getInt(); // padding
+            double[] meshBounds = new double[6];
+            buffer.asDoubleBuffer().get(meshBounds);
+            buffer.position(buffer.position() + 6 * Double.BYTES);
+            double surfaceArea = buffer.getDouble();
+            if (!Arrays.equals(magic, MAGIC) || version != VERSION || !Arrays.equals(hash, sourceHash)
+                    || vertexCount <= 0 || triangleCount <= 0 || nodeCount <= 0) {
+                return null;
+            }
+            boolean hasColors = (flags & HAS_COLORS) != 0;
+            if (size != fileSize(vertexCount, triangleCount, nodeCount, hasColors)) {
+                return null;
+            }
+
+            buffer.position(HEADER_SIZE);
+            double[] positions = new double[3 * vertexCount];
+            double[] nodeBounds = new double[6 * nodeCount];
+            buffer.asDoubleBuffer().get(positions).get(nodeBounds);
+            buffer.position(buffer.position() + (positions.length + nodeBounds.length) * Double.BYTES);
+            int[] colors = hasColors ? new int[vertexCount] : null;
+            int[] indices = new int[3 * triangleCount];
+            int[] nodeData = new int[2 * nodeCount];
+            if (hasColors) {
+                buffer.asIntBuffer().get(colors);
+                buffer.position(buffer.position() + colors.length * Integer.BYTES);
+            }
+            buffer.asIntBuffer().get(indices).get(nodeData);
+
+            TriangleMeshVertices vertices =
+                    TriangleMeshVertices.fromCompleteArrays(positions, colors, indices, meshBounds, surfaceArea);
+            return new TriangleMesh(vertices.getCenterPoint(), vertices, new LinearBvh(nodeBounds, nodeData));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable mesh cache " + cacheFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write the cache to a temporary file first and then move it into place, so that a run that is
+     * interrupted part way never leaves a truncated cache behind
+     */
+    static void write(File cacheFile, byte[] sourceHash, TriangleMesh mesh) throws IOException {
+        TriangleMeshVertices vertices = mesh.vertices;
+        LinearBvh bvh = mesh.getBvh();
+        double[] positions = vertices.positions();
+        int[] colors = vertices.colors();
+        int[] indices = vertices.indices();
+        int vertexCount = vertices.getVertexCount();
+        int triangleCount = vertices.size();
+        long size = fileSize(vertexCount, triangleCount, bvh.nodeCount, colors != null);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("mesh is too large to cache");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(colors != null ? HAS_COLORS : 0);
+        buffer.put(sourceHash);
+        buffer.putInt(vertexCount);
+        buffer.putInt(triangleCount);
+        buffer.putInt(bvh.nodeCount);
+        buffer.putInt(0); // padding
+        for (double bound : vertices.meshBounds()) {
+            buffer.putDouble(bound);
+        }
+        buffer.putDouble(vertices.getSurfaceArea());
+
+        buffer.position(HEADER_SIZE);
+        buffer.asDoubleBuffer()
+                .put(positions, 0, 3 * vertexCount)
+                .put(bvh.nodeBounds, 0, 6 * bvh.nodeCount);
+        buffer.position(buffer.position() + (3 * vertexCount + 6 * bvh.nodeCount) * Double.BYTES);
+        if (colors != null) {
+            buffer.asIntBuffer().put(colors, 0, vertexCount);
+            buffer.position(buffer.position() + vertexCount * Integer.BYTES);
+        }
+        buffer.asIntBuffer()
+                .put(indices, 0, 3 * triangleCount)
+                .put(bvh.nodeData, 0, 2 * bvh.nodeCount);
+        buffer.position(0);
+
+        Path target = cacheFile.toPath();
+        Path temporary = Files.createTempFile(target.toAbsolutePath().getParent(), cacheFile.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static long fileSize(int vertexCount, int triangleCount, int nodeCount, boolean hasColors) {
+        long doubles = 3L * vertexCount + 6L * nodeCount;
+        long ints = (hasColors ? (long) vertexCount : 0L) + 3L * triangleCount + 2L * nodeCount;
+        return HEADER_SIZE + doubles * Double.BYTES + ints * Integer.BYTES;
+    }
+
+}
@@ -25,116 +25,489 @@ import com.starrypenguin.jpharos.util.Shared;
 import java.awt.*;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
  * TriangleMeshVertices
  * <p/>
  * Used to manage and synchronize triangle mesh vertices and component triangles
+ * <p>
+ * The mesh is stored as a structure of arrays:  vertex positions in one double array (x, y, z per vertex),
+ * triangles as three vertex indices each in an int array, and per-vertex colors as packed RGB ints.
+ * Triangles are addressed by index; Triangle objects are only created when a caller asks for them.
+ * A triangle costs 12 bytes plus its share of the vertices, where a Triangle object with its
+ * Points, BoundingBox, and hash set entry costs several hundred.
  */
 public class TriangleMeshVertices {
 
-    private ArrayList<Point> verticesList = new ArrayList<>();
-    private HashMap<Point, Color> colorMap = new HashMap<>();
-    private Set<Triangle> triangles = new LinkedHashSet<>();
+    private final static int INITIAL_CAPACITY = 16;
+    private final static int NO_COLOR = 0; // packed colors always have a non-zero alpha
+
+    private double[] positions = new double[3 * INITIAL_CAPACITY];
+    private int vertexCount = 0;
+    private int[] colors = null; // allocated when the first color is added
+    private int[] indices = new int[3 * INITIAL_CAPACITY];
+    private int triangleCount = 0;
+    // min x, y, z, max x, y, z over every triangle; the BoundingBox is created from these when it is asked for
+    private final double[] meshBounds = new double[]{Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
     private BoundingBox boundingBox = null;
     private double surfaceArea = 0.0;
+    // open addressing table from vertex position to vertex index + 1, with 0 for an empty slot;
+    // only built when vertices are looked up by Point, and released by trimToSize
+    private int[] vertexTable = null;
 
     public TriangleMeshVertices() {
     }
 
+    /**
+     * Create the mesh from arrays that were decoded in bulk, for example by a PLY reader; the arrays are used
+     * directly rather than copied.  Triangles are checked the same way as addTriangleByVertexIndex checks them,
+     * and the ones that fail are skipped.
+     *
+     * @param positions x, y, z of each vertex
+     * @param colors packed RGB color of each vertex, or null if the vertices have no colors
+     * @param triangleIndices three vertex indices for each triangle
+     */
+    public static TriangleMeshVertices fromArrays(double[] positions, int[] colors, int[] triangleIndices) {
+        Shared.notNull(positions, "Parameter positions cannot be null!");
+        Shared.notNull(triangleIndices, "Parameter triangleIndices cannot be null!");
+        if (positions.length % 3 != 0 || triangleIndices.length % 3 != 0) {
+            throw new IllegalArgumentException("Parameters positions and triangleIndices must hold three values per vertex and per triangle!");
+        }
+        if (colors != null && colors.length != positions.length / 3) {
+            throw new IllegalArgumentException("Parameter colors must hold one color per vertex!");
+        }
+        TriangleMeshVertices vertices = new TriangleMeshVertices();
+        vertices.positions = positions;
+        vertices.vertexCount = positions.length / 3;
+        vertices.colors = colors;
+        vertices.indices = new int[triangleIndices.length];
+        for (int index = 0; index < triangleIndices.length; index += 3) {
+            vertices.addTriangleByVertexIndex(triangleIndices[index], triangleIndices[index + 1], triangleIndices[index + 2]);
+        }
+        return vertices;
+    }
+
+    /**
+     * Recreate complete mesh data, such as that saved by TriangleMeshCache, without checking or measuring
+     * each triangle again; the arrays are used directly rather than copied
+     */
+    static TriangleMeshVertices fromCompleteArrays(double[] positions, int[] colors, int[] triangleIndices,
+                                                   double[] meshBounds, double surfaceArea) {
+        TriangleMeshVertices vertices = new TriangleMeshVertices();
+        vertices.positions = positions;
+        vertices.vertexCount = positions.length / 3;
+        vertices.colors = colors;
+        vertices.indices = triangleIndices;
+        vertices.triangleCount = triangleIndices.length / 3;
+        System.arraycopy(meshBounds, 0, vertices.meshBounds, 0, vertices.meshBounds.length);
+        vertices.surfaceArea = surfaceArea;
+        return vertices;
+    }
+
     public void addVertex(Point vertex) {
         Shared.notNull(vertex, "Parameter vertex cannot be null!");
-        verticesList.add(vertex);
+        addVertex(vertex.x, vertex.y, vertex.z);
+    }
+
+    /**
+     * @return the index of the new vertex
+     */
+    public int addVertex(double x, double y, double z) {
+        if (3 * vertexCount + 3 > positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(positions.length * 2, 3 * INITIAL_CAPACITY));
+        }
+        positions[3 * vertexCount] = x;
+        positions[3 * vertexCount + 1] = y;
+        positions[3 * vertexCount + 2] = z;
+        vertexCount++;
+        if (vertexTable != null) {
+            indexVertex(vertexCount - 1);
+        }
+        return vertexCount - 1;
     }
 
+    /**
+     * Set the color of the most recently added vertex at point
+     */
     public void addColor(Point point, Color color) {
         Shared.notNull(point, "Parameter point cannot be null!");
         Shared.notNull(color, "Parameter color cannot be null!");
-        colorMap.put(point, color);
+        int vertex = findVertex(point);
+        if (vertex < 0) {
+            throw new IllegalArgumentException("Parameter point is not a vertex of this mesh!");
+        }
+        setColor(vertex, color.getRGB());
+    }
+
+    /**
+     * @return the index of the most recently added vertex at point, or -1 if there is none
+     */
+    private int findVertex(Point point) {
+        if (vertexTable == null) {
+            buildVertexTable();
+        }
+        int mask = vertexTable.length - 1;
+        for (int slot = tableSlot(point.x, point.y, point.z, mask); vertexTable[slot] != 0; slot = (slot + 1) & mask) {
+            int offset = 3 * (vertexTable[slot] - 1);
+            if (Double.compare(positions[offset], point.x) == 0 &&
+                Double.compare(positions[offset + 1], point.y) == 0 &&
+                Double.compare(positions[offset + 2], point.z) == 0) {
+                return vertexTable[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    // the index of an existing vertex at point, or of a new one
+    private int vertexAt(Point point) {
+        int vertex = findVertex(point);
+        return (vertex >= 0) ? vertex : addVertex(point.x, point.y, point.z);
+    }
+
+    // the table is kept at most half full, and later vertices replace earlier ones at the same position
+    private void buildVertexTable() {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < 2 * vertexCount) {
+            capacity <<= 1;
+        }
+        vertexTable = new int[capacity];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            indexVertex(vertex);
+        }
     }
 
-    private void addTriangle(Triangle triangleToAdd) {
-        triangles.add(triangleToAdd);
-        if (boundingBox == null) {
-            boundingBox = triangleToAdd.getBoundingBox();
-        } else {
-            boundingBox = boundingBox.union(triangleToAdd.getBoundingBox());
+    private void indexVertex(int vertex) {
+        if (2 * vertexCount > vertexTable.length) {
+            buildVertexTable();
+            return;
+        }
+        int mask = vertexTable.length - 1;
+        int slot = tableSlot(positions[3 * vertex], positions[3 * vertex + 1], positions[3 * vertex + 2], mask);
+        while (vertexTable[slot] != 0 && !sameBits(vertexTable[slot] - 1, vertex)) {
+            slot = (slot + 1) & mask;
         }
-        surfaceArea += triangleToAdd.surfaceArea(); // assume that this is a convex hull
+        vertexTable[slot] = vertex + 1;
+    }
+
+    private static int tableSlot(double x, double y, double z, int mask) {
+        int hash = Point.coordHashCode(x, y, z);
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    // compares positions the way Point.equals does, to agree with the hash used by the vertex table
+    private boolean sameBits(int vertexA, int vertexB) {
+        return Double.compare(positions[3 * vertexA], positions[3 * vertexB]) == 0 &&
+               Double.compare(positions[3 * vertexA + 1], positions[3 * vertexB + 1]) == 0 &&
+               Double.compare(positions[3 * vertexA + 2], positions[3 * vertexB + 2]) == 0;
+    }
+
+    /**
+     * @param vertex index of the vertex
+     * @param rgb packed color as returned by Color.getRGB()
+     */
+    public void setColor(int vertex, int rgb) {
+        Shared.inclusiveRangeCheck(vertex, 0, vertexCount - 1, "Parameter vertex must be the index of a vertex!");
+        if (colors == null) {
+            colors = new int[positions.length / 3];
+        } else if (colors.length < positions.length / 3) {
+            colors = Arrays.copyOf(colors, positions.length / 3);
+        }
+        colors[vertex] = rgb;
     }
 
     public void addTriangle(Point v1arg, Point v2arg, Point v3arg) {
         Shared.notNull(v1arg, "Parameter v1arg cannot be null!");
         Shared.notNull(v2arg, "Parameter v2arg cannot be null!");
         Shared.notNull(v3arg, "Parameter v3arg cannot be null!");
-        addVertex(v1arg);
-        addVertex(v2arg);
-        addVertex(v3arg);
-        // Create and add the new triangle
-        Triangle triangleToAdd = new Triangle(v1arg, v2arg, v3arg);
-        addTriangle(triangleToAdd);
+        if (v1arg.equals(v2arg) || v1arg.equals(v3arg) || v2arg.equals(v3arg)) {
+            throw new IllegalArgumentException("Invalid triangle!  Each vertex must be unique");
+        }
+        // triangles that share a corner share its vertex
+        int vertexIndex1 = vertexAt(v1arg);
+        int vertexIndex2 = vertexAt(v2arg);
+        int vertexIndex3 = vertexAt(v3arg);
+        addTriangle(vertexIndex1, vertexIndex2, vertexIndex3);
     }
 
+    /**
+     * Add the triangle with the given vertex indices; triangles with an index that is out of range
+     * or with two vertices at the same position are skipped
+     */
     public void addTriangleByVertexIndex(int vertexIndex1, int vertexIndex2, int vertexIndex3) {
         //System.out.println(String.format("addTriangleByVertexIndex: vI1=%d, vI2=%d, vI3=%d", vertexIndex1, vertexIndex2, vertexIndex3));
-        int vertexMaxIndex = verticesList.size() - 1;
-        try {
-            Shared.inclusiveRangeCheck(vertexIndex1, 0, vertexMaxIndex, String.format("Parameter vertexIndex1 must be between 0 and %d!  vertexIndex1 value was %d", vertexMaxIndex, vertexIndex1));
-            Shared.inclusiveRangeCheck(vertexIndex2, 0, vertexMaxIndex, String.format("Parameter vertexIndex2 must be between 0 and %d!  vertexIndex2 value was %d", vertexMaxIndex, vertexIndex2));
-            Shared.inclusiveRangeCheck(vertexIndex3, 0, vertexMaxIndex, String.format("Parameter vertexIndex3 must be between 0 and %d!  vertexIndex3 value was %d", vertexMaxIndex, vertexIndex3));
-            Triangle triangleToAdd = new Triangle(verticesList.get(vertexIndex1), verticesList.get(vertexIndex2), verticesList.get(vertexIndex3));
-            addTriangle(triangleToAdd);
-        } catch (IllegalArgumentException e) {
-            // do nothing
+        if (vertexIndex1 < 0 || vertexIndex1 >= vertexCount ||
+            vertexIndex2 < 0 || vertexIndex2 >= vertexCount ||
+            vertexIndex3 < 0 || vertexIndex3 >= vertexCount) {
+            return;
+        }
+        if (samePosition(vertexIndex1, vertexIndex2) || samePosition(vertexIndex1, vertexIndex3) || samePosition(vertexIndex2, vertexIndex3)) {
+            return;
+        }
+        addTriangle(vertexIndex1, vertexIndex2, vertexIndex3);
+    }
+
+    private boolean samePosition(int vertexA, int vertexB) {
+        return positions[3 * vertexA] == positions[3 * vertexB] &&
+               positions[3 * vertexA + 1] == positions[3 * vertexB + 1] &&
+               positions[3 * vertexA + 2] == positions[3 * vertexB + 2];
+    }
+
+    private void addTriangle(int vertexIndex1, int vertexIndex2, int vertexIndex3) {
+        if (3 * triangleCount + 3 > indices.length) {
+            indices = Arrays.copyOf(indices, Math.max(indices.length * 2, 3 * INITIAL_CAPACITY));
+        }
+        indices[3 * triangleCount] = vertexIndex1;
+        indices[3 * triangleCount + 1] = vertexIndex2;
+        indices[3 * triangleCount + 2] = vertexIndex3;
+        triangleCount++;
+        measureTriangle(triangleCount - 1);
+    }
+
+    // add a triangle to the mesh bounds and surface area
+    private void measureTriangle(int triangle) {
+        for (int corner = 0; corner < 3; corner++) {
+            int offset = 3 * indices[3 * triangle + corner];
+            for (int axis = 0; axis < 3; axis++) {
+                meshBounds[axis] = Math.min(meshBounds[axis], positions[offset + axis]);
+                meshBounds[3 + axis] = Math.max(meshBounds[3 + axis], positions[offset + axis]);
+            }
+        }
+        boundingBox = null;
+        surfaceArea += triangleArea(triangle); // assume that this is a convex hull
+    }
+
+    // measure the mesh bounds and surface area again from the remaining triangles
+    private void remeasure() {
+        Arrays.fill(meshBounds, 0, 3, Double.POSITIVE_INFINITY);
+        Arrays.fill(meshBounds, 3, 6, Double.NEGATIVE_INFINITY);
+        boundingBox = null;
+        surfaceArea = 0.0;
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            measureTriangle(triangle);
         }
     }
 
+    /**
+     * Write the bounds of a triangle (min x, y, z, max x, y, z) into bounds starting at offset
+     */
+    void triangleBounds(int triangle, double[] bounds, int offset) {
+        int a = 3 * indices[3 * triangle];
+        int b = 3 * indices[3 * triangle + 1];
+        int c = 3 * indices[3 * triangle + 2];
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[offset + axis] = Math.min(Math.min(positions[a + axis], positions[b + axis]), positions[c + axis]);
+            bounds[offset + 3 + axis] = Math.max(Math.max(positions[a + axis], positions[b + axis]), positions[c + axis]);
+        }
+    }
+
+    // half the magnitude of the cross product of two edges
+    private double triangleArea(int triangle) {
+        int a = 3 * indices[3 * triangle];
+        int b = 3 * indices[3 * triangle + 1];
+        int c = 3 * indices[3 * triangle + 2];
+        double edge1X = positions[b] - positions[a];
+        double edge1Y = positions[b + 1] - positions[a + 1];
+        double edge1Z = positions[b + 2] - positions[a + 2];
+        double edge2X = positions[c] - positions[a];
+        double edge2Y = positions[c + 1] - positions[a + 1];
+        double edge2Z = positions[c + 2] - positions[a + 2];
+        double crossX = edge1Y * edge2Z - edge1Z * edge2Y;
+        double crossY = edge1Z * edge2X - edge1X * edge2Z;
+        double crossZ = edge1X * edge2Y - edge1Y * edge2X;
+        return 0.5 * Math.sqrt(crossX * crossX + crossY * crossY + crossZ * crossZ);
+    }
+
+    /**
+     * Remove triangles whose corners are at the same positions, in the same order, as those of an earlier
+     * triangle, keeping the first; the triangles used to be held in a set, which silently dropped such repeats.
+     * Positions rather than vertex indices are compared, so repeats that were added with their own vertices are
+     * found as well.  Each triangle is keyed by a hash of its corner positions in the high 32 bits and its
+     * position in the low 32 bits, so sorting the keys groups candidate repeats together without creating an
+     * object per triangle.  The bounds and surface area are measured again when triangles are removed.
+     */
+    void removeDuplicateTriangles() {
+        long[] keys = new long[triangleCount];
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int hash = 0;
+            for (int corner = 0; corner < 3; corner++) {
+                int offset = 3 * indices[3 * triangle + corner];
+                hash = 31 * hash + Point.coordHashCode(positions[offset], positions[offset + 1], positions[offset + 2]);
+            }
+            keys[triangle] = ((long) hash << 32) | triangle;
+        }
+        Arrays.sort(keys);
+        boolean[] duplicate = new boolean[triangleCount];
+        int duplicates = 0;
+        for (int groupStart = 0; groupStart < triangleCount; ) {
+            int groupEnd = groupStart + 1;
+            while (groupEnd < triangleCount && (keys[groupEnd] >>> 32) == (keys[groupStart] >>> 32)) {
+                groupEnd++;
+            }
+            // within a group the triangles are in their original order, so the first of each repeat is kept
+            for (int later = groupStart + 1; later < groupEnd; later++) {
+                int laterTriangle = (int) keys[later];
+                for (int earlier = groupStart; earlier < later && !duplicate[laterTriangle]; earlier++) {
+                    int earlierTriangle = (int) keys[earlier];
+                    if (!duplicate[earlierTriangle] && sameCorners(earlierTriangle, laterTriangle)) {
+                        duplicate[laterTriangle] = true;
+                        duplicates++;
+                    }
+                }
+            }
+            groupStart = groupEnd;
+        }
+        if (duplicates > 0) {
+            int kept = 0;
+            for (int triangle = 0; triangle < triangleCount; triangle++) {
+                if (!duplicate[triangle]) {
+                    System.arraycopy(indices, 3 * triangle, indices, 3 * kept, 3);
+                    kept++;
+                }
+            }
+            triangleCount = kept;
+            remeasure();
+        }
+    }
+
+    // compares positions the way Point.equals does, so that the result matches the set of Triangles this replaced
+    private boolean sameCorners(int triangleA, int triangleB) {
+        for (int corner = 0; corner < 3; corner++) {
+            int offsetA = 3 * indices[3 * triangleA + corner];
+            int offsetB = 3 * indices[3 * triangleB + corner];
+            for (int axis = 0; axis < 3; axis++) {
+                if (Double.compare(positions[offsetA + axis], positions[offsetB + axis]) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reorder the triangles so that the triangle at position i moves to the position of order[i];
+     * used by TriangleMesh to store triangles in the leaf order of its BVH
+     */
+    void reorderTriangles(int[] order) {
+        int[] reordered = new int[3 * triangleCount];
+        for (int index = 0; index < triangleCount; index++) {
+            System.arraycopy(indices, 3 * order[index], reordered, 3 * index, 3);
+        }
+        indices = reordered;
+    }
+
+    /**
+     * Release the unused capacity of the growable arrays once the mesh is complete
+     */
+    void trimToSize() {
+        positions = Arrays.copyOf(positions, 3 * vertexCount);
+        indices = Arrays.copyOf(indices, 3 * triangleCount);
+        vertexTable = null;
+        if (colors != null) {
+            colors = Arrays.copyOf(colors, vertexCount);
+        }
+    }
+
+    // the arrays are shared with TriangleMesh rather than copied
+    double[] positions() {
+        return positions;
+    }
+
+    int[] indices() {
+        return indices;
+    }
+
+    int[] colors() {
+        return colors;
+    }
+
+    double[] meshBounds() {
+        return meshBounds;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public Point getVertex(int vertex) {
+        Shared.inclusiveRangeCheck(vertex, 0, vertexCount - 1, "Parameter vertex must be the index of a vertex!");
+        return new Point(positions[3 * vertex], positions[3 * vertex + 1], positions[3 * vertex + 2]);
+    }
+
+    public boolean hasColors() {
+        return colors != null;
+    }
+
+    /**
+     * @return the packed RGB color of the vertex, or 0 if the vertex has no color
+     */
+    public int getColor(int vertex) {
+        return (colors == null || vertex >= colors.length) ? NO_COLOR : colors[vertex];
+    }
+
+    public int getVertexIndex(int triangle, int corner) {
+        return indices[3 * triangle + corner];
+    }
+
+    /**
+     * Create a Triangle object for the triangle at the given index
+     */
+    public Triangle getTriangle(int triangle) {
+        Shared.inclusiveRangeCheck(triangle, 0, triangleCount - 1, "Parameter triangle must be the index of a triangle!");
+        return new Triangle(getVertex(indices[3 * triangle]), getVertex(indices[3 * triangle + 1]), getVertex(indices[3 * triangle + 2]));
+    }
+
     public int size() {
-        return triangles.size();
+        return triangleCount;
     }
 
     public boolean isEmpty() {
-        return triangles.isEmpty();
+        return triangleCount == 0;
     }
 
     public boolean contains(Object o) {
-        return triangles.contains(o);
+        return (o instanceof Triangle) && stream().anyMatch(o::equals);
     }
 
     public Iterator<Triangle> iterator() {
-        return triangles.iterator();
+        return stream().iterator();
     }
 
     public Spliterator<Triangle> spliterator() {
-        return triangles.spliterator();
+        return stream().spliterator();
     }
 
     public Stream<Triangle> stream() {
-        return triangles.stream();
+        return IntStream.range(0, triangleCount).mapToObj(this::getTriangle);
     }
 
     public Stream<Triangle> parallelStream() {
-        return triangles.parallelStream();
+        return stream().parallel();
     }
 
     public void forEach(Consumer<? super Triangle> action) {
-        triangles.forEach(action);
+        stream().forEach(action);
+    }
+
+    public Triangle[] toArray() {
+        return stream().toArray(Triangle[]::new);
     }
 
     public BoundingBox getBoundingBox() {
+        if (boundingBox == null && triangleCount > 0) {
+            boundingBox = new BoundingBox(new Point(meshBounds[0], meshBounds[1], meshBounds[2]),
+                                          new Point(meshBounds[3], meshBounds[4], meshBounds[5]));
+        }
         return this.boundingBox;
     }
 
     public Point getCenterPoint() {
-        return this.boundingBox.getCenterPoint();
+        return getBoundingBox().getCenterPoint();
     }
 
     public double getSurfaceArea() {
         return surfaceArea;
     }
-
-    public Map<Point, Color> getColorMap() {
-        return colorMap;
-    }
 }
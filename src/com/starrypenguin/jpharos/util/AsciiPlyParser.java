@@ -0,0 +1,465 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.util;
+
+import com.starrypenguin.jpharos.shapes.TriangleMeshVertices;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+
+/**
+ * AsciiPlyParser
+ * <p/>
+ * Decodes the body of an ASCII PLY file from a (memory mapped) ByteBuffer into the primitive arrays
+ * of a TriangleMeshVertices using every available core
+ * <p>
+ * The body is split into line-aligned chunks that are processed in two parallel passes:  the first counts
+ * the lines in each chunk, which tells each chunk the index of its first line, and so which vertices or faces
+ * it holds; the second parses each chunk and writes its values straight into the shared arrays.  Numbers are
+ * parsed from the bytes with a hand-written parser rather than through Strings.
+ */
+final class AsciiPlyParser {
+
+    private final static int MIN_CHUNK_SIZE = 1 << 16;
+    private final static int CHUNKS_PER_PROCESSOR = 4;
+    // every power of ten up to 10^22 is exactly representable as a double
+    private final static double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private final static long MAX_EXACT_MANTISSA = 1L << 53;
+    private final static int MAX_MANTISSA_DIGITS = 18; // fits in a long without overflow
+
+    // what a vertex property is used for
+    private final static int ROLE_SKIP = -1;
+    private final static int ROLE_X = 0;
+    private final static int ROLE_Y = 1;
+    private final static int ROLE_Z = 2;
+    private final static int ROLE_RED = 3;
+    private final static int ROLE_GREEN = 4;
+    private final static int ROLE_BLUE = 5;
+
+    private AsciiPlyParser() {
+    }
+
+    static TriangleMeshVertices parse(PlyHeader header, ByteBuffer buffer) {
+        Shared.notNull(header, "Parameter header cannot be null!");
+        Shared.notNull(buffer, "Parameter buffer cannot be null!");
+        if (header.format != PlyHeader.Format.ASCII) {
+            throw new IllegalArgumentException("AsciiPlyParser can only parse ASCII PLY files!");
+        }
+        PlyHeader.Element vertexElement = null;
+        PlyHeader.Element faceElement = null;
+        int vertexFirstLine = 0;
+        int faceFirstLine = 0;
+        int line = 0;
+        for (PlyHeader.Element element : header.elements) {
+            switch (element.name) {
+                case "vertex":
+                    vertexElement = element;
+                    vertexFirstLine = line;
+                    break;
+
+                case "face":
+                    faceElement = element;
+                    faceFirstLine = line;
+                    break;
+
+                default:
+                    throw new UnsupportedOperationException("Unknown PLY element type: " + element.name + "jPharos does not know how to handle this PLY element type!");
+            }
+            line += element.count;
+        }
+        ParseJob job = new ParseJob(buffer, vertexElement, vertexFirstLine, faceElement, faceFirstLine);
+
+        // split the body into chunks that start at the beginning of a line
+        int bodyStart = header.bodyOffset;
+        int bodyEnd = buffer.limit();
+        int chunkCount = (int) Math.max(1, Math.min((bodyEnd - bodyStart) / MIN_CHUNK_SIZE,
+                (long) CHUNKS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors()));
+        int[] chunkStarts = new int[chunkCount + 1];
+        chunkStarts[0] = bodyStart;
+        chunkStarts[chunkCount] = bodyEnd;
+        for (int chunk = 1; chunk < chunkCount; chunk++) {
+            int position = Math.max(bodyStart + (int) ((long) (bodyEnd - bodyStart) * chunk / chunkCount), chunkStarts[chunk - 1]);
+            while (position < bodyEnd && buffer.get(position - 1) != '\n') {
+                position++;
+            }
+            chunkStarts[chunk] = position;
+        }
+
+        int[] chunkFirstLines = new int[chunkCount];
+        IntStream.range(0, chunkCount).parallel().forEach(chunk ->
+                chunkFirstLines[chunk] = countLines(buffer, chunkStarts[chunk], chunkStarts[chunk + 1]));
+        int totalLines = 0;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int lines = chunkFirstLines[chunk];
+            chunkFirstLines[chunk] = totalLines;
+            totalLines += lines;
+        }
+        if (totalLines < line) {
+            throw new IllegalArgumentException("PLY file is shorter than its header says it is!");
+        }
+
+        IntStream.range(0, chunkCount).parallel().forEach(chunk ->
+                job.parseChunk(chunkStarts[chunk], chunkStarts[chunk + 1], chunkFirstLines[chunk]));
+        return TriangleMeshVertices.fromArrays(job.positions, job.colors, job.triangleIndices);
+    }
+
+    private static boolean isWhitespace(byte value) {
+        return value == ' ' || value == '\t' || value == '\r' || value == '\n';
+    }
+
+    // the number of lines in [start, end) that hold something other than whitespace
+    static int countLines(ByteBuffer buffer, int start, int end) {
+        int lines = 0;
+        boolean lineHasContent = false;
+        for (int position = start; position < end; position++) {
+            byte value = buffer.get(position);
+            if (value == '\n') {
+                if (lineHasContent) {
+                    lines++;
+                }
+                lineHasContent = false;
+            } else if (!isWhitespace(value)) {
+                lineHasContent = true;
+            }
+        }
+        return lineHasContent ? lines + 1 : lines;
+    }
+
+    /**
+     * The shared output arrays and the layout of the elements; each chunk writes only the entries
+     * for its own lines, so the chunks need no synchronization
+     */
+    private static final class ParseJob {
+        final ByteBuffer buffer;
+        final PlyHeader.Element vertexElement;
+        final int vertexFirstLine;
+        final int vertexCount;
+        final int[] vertexRoles;
+        final PlyHeader.Element faceElement;
+        final int faceFirstLine;
+        final int faceCount;
+        final int faceIndicesProperty;
+        final double[] positions;
+        final int[] colors;
+        final int[] triangleIndices;
+
+        ParseJob(ByteBuffer buffer, PlyHeader.Element vertexElement, int vertexFirstLine,
+                 PlyHeader.Element faceElement, int faceFirstLine) {
+            this.buffer = buffer;
+            this.vertexElement = vertexElement;
+            this.vertexFirstLine = vertexFirstLine;
+            this.vertexCount = vertexElement == null ? 0 : vertexElement.count;
+            this.faceElement = faceElement;
+            this.faceFirstLine = faceFirstLine;
+            this.faceCount = faceElement == null ? 0 : faceElement.count;
+            this.positions = new double[3 * vertexCount];
+            this.triangleIndices = new int[3 * faceCount];
+            this.faceIndicesProperty = faceElement == null ? -1 : BinaryPlyParser.faceIndicesProperty(faceElement);
+            if (vertexElement != null) {
+                vertexRoles = new int[vertexElement.properties.size()];
+                String[] roleNames = {"x", "y", "z", "red", "green", "blue"};
+                for (int property = 0; property < vertexRoles.length; property++) {
+                    vertexRoles[property] = ROLE_SKIP;
+                    for (int role = 0; role < roleNames.length; role++) {
+                        if (vertexElement.properties.get(property).name.equals(roleNames[role])) {
+                            vertexRoles[property] = role;
+                        }
+                    }
+                }
+                BinaryPlyParser.propertyType(vertexElement, "x");
+                BinaryPlyParser.propertyType(vertexElement, "y");
+                BinaryPlyParser.propertyType(vertexElement, "z");
+                boolean hasColors = vertexElement.indexOf("red") >= 0 && vertexElement.indexOf("green") >= 0 && vertexElement.indexOf("blue") >= 0;
+                this.colors = hasColors ? new int[vertexCount] : null;
+            } else {
+                vertexRoles = new int[0];
+                this.colors = null;
+            }
+        }
+
+        void parseChunk(int start, int end, int firstLine) {
+            Cursor cursor = new Cursor(buffer, start, end);
+            int line = firstLine;
+            while (cursor.skipBlankLines()) {
+                if (line >= vertexFirstLine && line < vertexFirstLine + vertexCount) {
+                    parseVertex(cursor, line - vertexFirstLine);
+                } else if (line >= faceFirstLine && line < faceFirstLine + faceCount) {
+                    parseFace(cursor, line - faceFirstLine);
+                }
+                cursor.nextLine();
+                line++;
+            }
+        }
+
+        private void parseVertex(Cursor cursor, int vertex) {
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int property = 0; property < vertexRoles.length; property++) {
+                PlyHeader.Property plyProperty = vertexElement.properties.get(property);
+                if (plyProperty.isList()) {
+                    int count = cursor.parseInt();
+                    for (int item = 0; item < count; item++) {
+                        cursor.skipToken();
+                    }
+                    continue;
+                }
+                switch (vertexRoles[property]) {
+                    case ROLE_X:
+                    case ROLE_Y:
+                    case ROLE_Z:
+                        positions[3 * vertex + vertexRoles[property]] = cursor.parseDouble();
+                        break;
+                    case ROLE_RED:
+                        red = cursor.parseInt();
+                        break;
+                    case ROLE_GREEN:
+                        green = cursor.parseInt();
+                        break;
+                    case ROLE_BLUE:
+                        blue = cursor.parseInt();
+                        break;
+                    default:
+                        cursor.skipToken();
+                        break;
+                }
+            }
+            if (colors != null) {
+                colors[vertex] = BinaryPlyParser.packColor(red, green, blue);
+            }
+        }
+
+        private void parseFace(Cursor cursor, int face) {
+            int propertyCount = faceElement.properties.size();
+            for (int property = 0; property < propertyCount; property++) {
+                if (!faceElement.properties.get(property).isList()) {
+                    cursor.skipToken();
+                    continue;
+                }
+                int count = cursor.parseInt();
+                if (property == faceIndicesProperty) {
+                    BinaryPlyParser.checkTriangle(count);
+                    triangleIndices[3 * face] = cursor.parseInt();
+                    triangleIndices[3 * face + 1] = cursor.parseInt();
+                    triangleIndices[3 * face + 2] = cursor.parseInt();
+                } else {
+                    for (int item = 0; item < count; item++) {
+                        cursor.skipToken();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads whitespace separated numbers from [position, end) of the buffer
+     */
+    static final class Cursor {
+        private final ByteBuffer buffer;
+        private final int end;
+        private int position;
+
+        Cursor(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.position = start;
+            this.end = end;
+        }
+
+        /**
+         * Move to the first non-whitespace byte, crossing line ends
+         *
+         * @return false if there is nothing left to read
+         */
+        boolean skipBlankLines() {
+            while (position < end && isWhitespace(buffer.get(position))) {
+                position++;
+            }
+            return position < end;
+        }
+
+        // move past the end of the current line
+        void nextLine() {
+            while (position < end && buffer.get(position) != '\n') {
+                position++;
+            }
+            if (position < end) {
+                position++;
+            }
+        }
+
+        // move to the start of the next token on the current line
+        private void skipSpaces() {
+            while (position < end) {
+                byte value = buffer.get(position);
+                if (value != ' ' && value != '\t' && value != '\r') {
+                    break;
+                }
+                position++;
+            }
+            if (position == end || buffer.get(position) == '\n') {
+                throw new IllegalArgumentException("PLY line has fewer values than its element declares!");
+            }
+        }
+
+        void skipToken() {
+            skipSpaces();
+            while (position < end && !isWhitespace(buffer.get(position))) {
+                position++;
+            }
+        }
+
+        int parseInt() {
+            skipSpaces();
+            int start = position;
+            boolean negative = false;
+            if (buffer.get(position) == '-' || buffer.get(position) == '+') {
+                negative = buffer.get(position) == '-';
+                position++;
+            }
+            long value = 0;
+            int digits = 0;
+            while (position < end) {
+                int digit = buffer.get(position) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                if (value > Integer.MAX_VALUE + 1L) {
+                    throw new IllegalArgumentException("PLY integer is too large: " + token(start));
+                }
+                digits++;
+                position++;
+            }
+            if (digits == 0 || (position < end && !isWhitespace(buffer.get(position)))) {
+                // not a plain integer, for example a color written as 255.0
+                position = start;
+                return (int) parseDouble();
+            }
+            return (int) (negative ? -value : value);
+        }
+
+        /**
+         * Parse a decimal number; when the digits fit in a long below 2^53 and the decimal exponent is at most 22,
+         * the value is one exactly rounded multiplication or division of two exact doubles, which gives the same
+         * result as Double.parseDouble (the Clinger fast path); other numbers fall back to Double.parseDouble
+         */
+        double parseDouble() {
+            skipSpaces();
+            int start = position;
+            boolean negative = false;
+            if (buffer.get(position) == '-' || buffer.get(position) == '+') {
+                negative = buffer.get(position) == '-';
+                position++;
+            }
+            long mantissa = 0;
+            int mantissaDigits = 0;
+            int exponent = 0;
+            boolean sawDigit = false;
+            boolean exact = true;
+            while (position < end) {
+                int digit = buffer.get(position) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                sawDigit = true;
+                if (mantissa != 0 || digit != 0) {
+                    if (mantissaDigits < MAX_MANTISSA_DIGITS) {
+                        mantissa = mantissa * 10 + digit;
+                        mantissaDigits++;
+                    } else {
+                        exact = false;
+                    }
+                }
+                position++;
+            }
+            if (position < end && buffer.get(position) == '.') {
+                position++;
+                while (position < end) {
+                    int digit = buffer.get(position) - '0';
+                    if (digit < 0 || digit > 9) {
+                        break;
+                    }
+                    sawDigit = true;
+                    if (mantissa != 0 || digit != 0) {
+                        if (mantissaDigits < MAX_MANTISSA_DIGITS) {
+                            mantissa = mantissa * 10 + digit;
+                            mantissaDigits++;
+                            exponent--;
+                        } else {
+                            exact = false;
+                        }
+                    } else {
+                        exponent--; // leading zeros after the decimal point
+                    }
+                    position++;
+                }
+            }
+            if (sawDigit && position < end && (buffer.get(position) == 'e' || buffer.get(position) == 'E')) {
+                position++;
+                boolean negativeExponent = false;
+                if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                    negativeExponent = buffer.get(position) == '-';
+                    position++;
+                }
+                int exponentValue = 0;
+                boolean sawExponentDigit = false;
+                while (position < end) {
+                    int digit = buffer.get(position) - '0';
+                    if (digit < 0 || digit > 9) {
+                        break;
+                    }
+                    sawExponentDigit = true;
+                    exponentValue = Math.min(exponentValue * 10 + digit, 100000);
+                    position++;
+                }
+                if (!sawExponentDigit) {
+                    sawDigit = false;
+                }
+                exponent += negativeExponent ? -exponentValue : exponentValue;
+            }
+            if (!sawDigit || (position < end && !isWhitespace(buffer.get(position)))) {
+                // something other than a plain decimal number, such as nan or inf
+                while (position < end && !isWhitespace(buffer.get(position))) {
+                    position++;
+                }
+                return Double.parseDouble(token(start));
+            }
+            if (exact && mantissa < MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+                double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+                return negative ? -value : value;
+            }
+            return Double.parseDouble(token(start));
+        }
+
+        private String token(int start) {
+            int tokenEnd = start;
+            while (tokenEnd < end && !isWhitespace(buffer.get(tokenEnd))) {
+                tokenEnd++;
+            }
+            byte[] bytes = new byte[tokenEnd - start];
+            for (int index = 0; index < bytes.length; index++) {
+                bytes[index] = buffer.get(start + index);
+            }
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+}
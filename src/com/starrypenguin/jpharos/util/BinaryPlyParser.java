@@ -0,0 +1,161 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.util;
+
+import com.starrypenguin.jpharos.shapes.TriangleMeshVertices;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * BinaryPlyParser
+ * <p/>
+ * Decodes the body of a binary little endian or big endian PLY file straight from a (memory mapped)
+ * ByteBuffer into the primitive arrays of a TriangleMeshVertices, with no per-element objects
+ */
+final class BinaryPlyParser {
+
+    private BinaryPlyParser() {
+    }
+
+    static TriangleMeshVertices parse(PlyHeader header, ByteBuffer buffer) {
+        Shared.notNull(header, "Parameter header cannot be null!");
+        Shared.notNull(buffer, "Parameter buffer cannot be null!");
+        if (header.format == PlyHeader.Format.ASCII) {
+            throw new IllegalArgumentException("BinaryPlyParser cannot parse ASCII PLY files!");
+        }
+        buffer.order(header.format == PlyHeader.Format.BINARY_LITTLE_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        double[] positions = new double[0];
+        int[] colors = null;
+        int[] triangleIndices = new int[0];
+        int position = header.bodyOffset;
+        try {
+            for (PlyHeader.Element element : header.elements) {
+                switch (element.name) {
+                    case "vertex":
+                        positions = new double[3 * element.count];
+                        if (element.indexOf("red") >= 0 && element.indexOf("green") >= 0 && element.indexOf("blue") >= 0) {
+                            colors = new int[element.count];
+                        }
+                        position = parseVertices(element, buffer, position, positions, colors);
+                        break;
+
+                    case "face":
+                        triangleIndices = new int[3 * element.count];
+                        position = parseFaces(element, buffer, position, triangleIndices);
+                        break;
+
+                    default:
+                        throw new UnsupportedOperationException("Unknown PLY element type: " + element.name + "jPharos does not know how to handle this PLY element type!");
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("PLY file is shorter than its header says it is!", e);
+        }
+        return TriangleMeshVertices.fromArrays(positions, colors, triangleIndices);
+    }
+
+    private static int parseVertices(PlyHeader.Element element, ByteBuffer buffer, int position, double[] positions, int[] colors) {
+        int stride = element.fixedSize();
+        if (stride < 0) {
+            throw new UnsupportedOperationException("PLY vertex elements with list properties are not supported!");
+        }
+        PlyHeader.Type xType = propertyType(element, "x");
+        PlyHeader.Type yType = propertyType(element, "y");
+        PlyHeader.Type zType = propertyType(element, "z");
+        int xOffset = element.offsetOf("x");
+        int yOffset = element.offsetOf("y");
+        int zOffset = element.offsetOf("z");
+        for (int vertex = 0; vertex < element.count; vertex++) {
+            int base = position + vertex * stride;
+            positions[3 * vertex] = xType.readDouble(buffer, base + xOffset);
+            positions[3 * vertex + 1] = yType.readDouble(buffer, base + yOffset);
+            positions[3 * vertex + 2] = zType.readDouble(buffer, base + zOffset);
+        }
+        if (colors != null) {
+            PlyHeader.Type redType = propertyType(element, "red");
+            PlyHeader.Type greenType = propertyType(element, "green");
+            PlyHeader.Type blueType = propertyType(element, "blue");
+            int redOffset = element.offsetOf("red");
+            int greenOffset = element.offsetOf("green");
+            int blueOffset = element.offsetOf("blue");
+            for (int vertex = 0; vertex < element.count; vertex++) {
+                int base = position + vertex * stride;
+                colors[vertex] = packColor(redType.readInt(buffer, base + redOffset),
+                        greenType.readInt(buffer, base + greenOffset),
+                        blueType.readInt(buffer, base + blueOffset));
+            }
+        }
+        return position + element.count * stride;
+    }
+
+    private static int parseFaces(PlyHeader.Element element, ByteBuffer buffer, int position, int[] triangleIndices) {
+        int indicesProperty = faceIndicesProperty(element);
+        int propertyCount = element.properties.size();
+        for (int face = 0; face < element.count; face++) {
+            for (int property = 0; property < propertyCount; property++) {
+                PlyHeader.Property plyProperty = element.properties.get(property);
+                if (!plyProperty.isList()) {
+                    position += plyProperty.type.size;
+                    continue;
+                }
+                int count = plyProperty.countType.readInt(buffer, position);
+                position += plyProperty.countType.size;
+                if (property == indicesProperty) {
+                    checkTriangle(count);
+                    PlyHeader.Type type = plyProperty.type;
+                    triangleIndices[3 * face] = type.readInt(buffer, position);
+                    triangleIndices[3 * face + 1] = type.readInt(buffer, position + type.size);
+                    triangleIndices[3 * face + 2] = type.readInt(buffer, position + 2 * type.size);
+                }
+                position += count * plyProperty.type.size;
+            }
+        }
+        return position;
+    }
+
+    static PlyHeader.Type propertyType(PlyHeader.Element element, String name) {
+        int index = element.indexOf(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("PLY " + element.name + " element does not have a " + name + " property!");
+        }
+        return element.properties.get(index).type;
+    }
+
+    static int faceIndicesProperty(PlyHeader.Element element) {
+        int index = element.indexOf(TriangleMeshReader.VERTEX_INDICES);
+        if (index < 0) {
+            index = element.indexOf(TriangleMeshReader.VERTEX_INDEX);
+        }
+        if (index < 0 || !element.properties.get(index).isList()) {
+            throw new IllegalArgumentException("Unknown PLY triangle face property or strange number of indices used!");
+        }
+        return index;
+    }
+
+    static void checkTriangle(int count) {
+        if (count != 3) {
+            throw new IllegalArgumentException("Unknown PLY triangle face property or strange number of indices used!");
+        }
+    }
+
+    static int packColor(int red, int green, int blue) {
+        return 0xFF000000 | ((red & 0xFF) << 16) | ((green & 0xFF) << 8) | (blue & 0xFF);
+    }
+}
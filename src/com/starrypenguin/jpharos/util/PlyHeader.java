@@ -0,0 +1,283 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PlyHeader
+ * <p/>
+ * The header of a PLY file:  its format and the elements and properties that make up its body
+ * <p>
+ * The header is parsed once, directly from the bytes of the file, so that the body can be decoded
+ * into primitive arrays without going through per-element objects
+ *
+ * Reference:  http://paulbourke.net/dataformats/ply/
+ */
+public final class PlyHeader {
+
+    private final static String END_HEADER = "end_header";
+
+    public final Format format;
+    public final List<Element> elements;
+    public final int bodyOffset; // the position of the first byte after the header
+
+    private PlyHeader(Format format, List<Element> elements, int bodyOffset) {
+        this.format = format;
+        this.elements = Collections.unmodifiableList(elements);
+        this.bodyOffset = bodyOffset;
+    }
+
+    /**
+     * Parse the header at the start of buffer; the position of buffer is not changed
+     */
+    public static PlyHeader parse(ByteBuffer buffer) {
+        Shared.notNull(buffer, "Parameter buffer cannot be null!");
+        Format format = null;
+        List<Element> elements = new ArrayList<>();
+        Element element = null;
+        int position = 0;
+        boolean firstLine = true;
+        while (true) {
+            int lineEnd = position;
+            while (lineEnd < buffer.limit() && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == buffer.limit()) {
+                throw new IllegalArgumentException("PLY header is missing " + END_HEADER + "!");
+            }
+            byte[] lineBytes = new byte[lineEnd - position];
+            for (int index = 0; index < lineBytes.length; index++) {
+                lineBytes[index] = buffer.get(position + index);
+            }
+            String line = new String(lineBytes, StandardCharsets.US_ASCII).trim();
+            position = lineEnd + 1;
+            if (firstLine) {
+                if (!line.equals("ply")) {
+                    throw new IllegalArgumentException("Not a PLY file!  The first line must be \"ply\"");
+                }
+                firstLine = false;
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            switch (tokens[0]) {
+                case "format":
+                    format = Format.fromName(tokens[1]);
+                    break;
+                case "element":
+                    element = new Element(tokens[1], Integer.parseInt(tokens[2]));
+                    elements.add(element);
+                    break;
+                case "property":
+                    if (element == null) {
+                        throw new IllegalArgumentException("PLY property declared before any element: " + line);
+                    }
+                    if (tokens[1].equals("list")) {
+                        element.properties.add(new Property(tokens[4], Type.fromName(tokens[3]), Type.fromName(tokens[2])));
+                    } else {
+                        element.properties.add(new Property(tokens[2], Type.fromName(tokens[1]), null));
+                    }
+                    break;
+                case END_HEADER:
+                    if (format == null) {
+                        throw new IllegalArgumentException("PLY header does not declare a format!");
+                    }
+                    return new PlyHeader(format, elements, position);
+                default:
+                    // comment, obj_info, and blank lines carry nothing we need
+                    break;
+            }
+        }
+    }
+
+    public Element getElement(String name) {
+        for (Element element : elements) {
+            if (element.name.equals(name)) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    public enum Format {
+        ASCII("ascii"),
+        BINARY_LITTLE_ENDIAN("binary_little_endian"),
+        BINARY_BIG_ENDIAN("binary_big_endian");
+
+        final String name;
+
+        Format(String name) {
+            this.name = name;
+        }
+
+        static Format fromName(String name) {
+            for (Format format : values()) {
+                if (format.name.equals(name)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unknown PLY format: " + name);
+        }
+    }
+
+    /**
+     * Scalar types a property may have; PLY allows both the old and the sized names
+     */
+    public enum Type {
+        CHAR(1, "char", "int8"),
+        UCHAR(1, "uchar", "uint8"),
+        SHORT(2, "short", "int16"),
+        USHORT(2, "ushort", "uint16"),
+        INT(4, "int", "int32"),
+        UINT(4, "uint", "uint32"),
+        FLOAT(4, "float", "float32"),
+        DOUBLE(8, "double", "float64");
+
+        public final int size;
+        final String name;
+        final String sizedName;
+
+        Type(int size, String name, String sizedName) {
+            this.size = size;
+            this.name = name;
+            this.sizedName = sizedName;
+        }
+
+        static Type fromName(String name) {
+            for (Type type : values()) {
+                if (type.name.equals(name) || type.sizedName.equals(name)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown PLY property type: " + name);
+        }
+
+        /**
+         * Read a binary value of this type at the given position; the byte order is that of the buffer
+         */
+        public double readDouble(ByteBuffer buffer, int position) {
+            switch (this) {
+                case FLOAT:
+                    return buffer.getFloat(position);
+                case DOUBLE:
+                    return buffer.getDouble(position);
+                default:
+                    return readInt(buffer, position);
+            }
+        }
+
+        /**
+         * Read a binary value of this type at the given position as an int; unsigned values larger
+         * than Integer.MAX_VALUE and fractions are not representable and are truncated
+         */
+        public int readInt(ByteBuffer buffer, int position) {
+            switch (this) {
+                case CHAR:
+                    return buffer.get(position);
+                case UCHAR:
+                    return buffer.get(position) & 0xFF;
+                case SHORT:
+                    return buffer.getShort(position);
+                case USHORT:
+                    return buffer.getShort(position) & 0xFFFF;
+                case INT:
+                case UINT:
+                    return buffer.getInt(position);
+                case FLOAT:
+                    return (int) buffer.getFloat(position);
+                default:
+                    return (int) buffer.getDouble(position);
+            }
+        }
+    }
+
+    public static final class Property {
+        public final String name;
+        public final Type type;       // the type of the value, or of each item for a list
+        public final Type countType;  // the type of the item count for a list, null otherwise
+
+        Property(String name, Type type, Type countType) {
+            this.name = name;
+            this.type = type;
+            this.countType = countType;
+        }
+
+        public boolean isList() {
+            return countType != null;
+        }
+    }
+
+    public static final class Element {
+        public final String name;
+        public final int count;
+        public final List<Property> properties = new ArrayList<>();
+
+        Element(String name, int count) {
+            if (count < 0) {
+                throw new IllegalArgumentException("PLY element " + name + " has a negative count!");
+            }
+            this.name = name;
+            this.count = count;
+        }
+
+        /**
+         * @return the index of the named property, or -1 if the element does not have it
+         */
+        public int indexOf(String propertyName) {
+            for (int index = 0; index < properties.size(); index++) {
+                if (properties.get(index).name.equals(propertyName)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the size in bytes of one binary element, or -1 if the element has a list property
+         */
+        public int fixedSize() {
+            int size = 0;
+            for (Property property : properties) {
+                if (property.isList()) {
+                    return -1;
+                }
+                size += property.type.size;
+            }
+            return size;
+        }
+
+        /**
+         * @return the byte offset of the named property within a binary element with no list properties
+         */
+        public int offsetOf(String propertyName) {
+            int offset = 0;
+            for (Property property : properties) {
+                if (property.name.equals(propertyName)) {
+                    return offset;
+                }
+                offset += property.type.size;
+            }
+            return -1;
+        }
+    }
+}
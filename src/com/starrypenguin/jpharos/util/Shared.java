@@ -21,6 +21,7 @@ package com.starrypenguin.jpharos.util;
 import com.starrypenguin.jpharos.core.Ray;
 import com.starrypenguin.jpharos.geometry.Point;
 import com.starrypenguin.jpharos.geometry.Vector;
+import com.starrypenguin.jpharos.samplers.Sampler;
 
 import java.io.File;
 import java.util.*;
@@ -32,7 +33,6 @@ import java.util.*;
  */
 final public class Shared {
 
-    final public static Random random = new Random();
     final public static int DIFFERENTIALS_PER_RAY = 2;
     final public static double LENGTH_PERCENTAGE = 3;
     // methods
@@ -164,7 +164,8 @@ final public class Shared {
      */
     final public static Set<Ray> perturbRay(Ray ray, int differentialsPerRay, double lengthPercentage) {
         Shared.notNull(ray, "Parameter ray cannot be null!");
-        Set<Ray> differentials = new HashSet<>();
+        // keep the differentials in the order they were made so that renders repeat exactly
+        Set<Ray> differentials = new LinkedHashSet<>();
         // add the original vector
         differentials.add(ray);
         // perturb the original vector to get differentials
@@ -183,13 +184,18 @@ final public class Shared {
     }
 
     final public static double randomSign() {
-        return Math.random() > 0.5 ? 1.0 : -1.0;
+        return Sampler.current().next1D() < 0.5 ? 1.0 : -1.0;
     }
 
     final public static Point perturbPoint(Point point, double maxPerturbDistance) {
-        double x = randomSign() * Math.random() * maxPerturbDistance + point.x;
-        double y = randomSign() * Math.random() * maxPerturbDistance + point.y;
-        double z = randomSign() * Math.random() * maxPerturbDistance + point.z;
+        return perturbPoint(point, maxPerturbDistance, Sampler.current());
+    }
+
+    // move each coordinate of point by up to maxPerturbDistance in either direction
+    final public static Point perturbPoint(Point point, double maxPerturbDistance, Sampler sampler) {
+        double x = (2.0 * sampler.next1D() - 1.0) * maxPerturbDistance + point.x;
+        double y = (2.0 * sampler.next1D() - 1.0) * maxPerturbDistance + point.y;
+        double z = (2.0 * sampler.next1D() - 1.0) * maxPerturbDistance + point.z;
         return new Point(x, y, z);
     }
 
@@ -198,6 +204,7 @@ final public class Shared {
         public static final String ASCII_BW_PBM_MAGIC_NUMBER = "P1";
         public static final String ASCII_GRAYSCALE_PGM_MAGIC_NUMBER = "P2";
         public static final String ASCII_COLOR_PPM_MAGIC_NUMBER = "P3";
+        public static final String BINARY_COLOR_PPM_MAGIC_NUMBER = "P6";
         // Reference:  https://en.wikipedia.org/wiki/Netpbm_format
     }
 }
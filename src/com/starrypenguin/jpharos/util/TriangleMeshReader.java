@@ -18,134 +18,57 @@
 
 package com.starrypenguin.jpharos.util;
 
-import com.starrypenguin.jpharos.geometry.Point;
 import com.starrypenguin.jpharos.shapes.TriangleMesh;
 import com.starrypenguin.jpharos.shapes.TriangleMeshBuilder;
-import org.smurn.jply.*;
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
+import com.starrypenguin.jpharos.shapes.TriangleMeshCache;
+import com.starrypenguin.jpharos.shapes.TriangleMeshVertices;
 
-import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * TriangleMeshReader
  * <p/>
  * Reads triangle meshes from PLY files
+ * <p>
+ * PLY files are memory mapped and decoded straight into primitive arrays:  binary files by BinaryPlyParser,
+ * and ASCII files, in parallel, by AsciiPlyParser
  */
 public class TriangleMeshReader {
 
-    private static String VERTEX_INDICES = "vertex_indices";
-    private static String VERTEX_INDEX = "vertex_index";
-
-    private static void addVertexType(ElementReader elementReader, TriangleMeshBuilder triangleMeshBuilder) {
-        try {
-            Element element = elementReader.readElement();
-            while (element != null) {
-                double x = element.getDouble("x");
-                double y = element.getDouble("y");
-                double z = element.getDouble("z");
-                //System.out.println(String.format("Adding Triangle Mesh vertex: x=%f, y=%f, z=%f", x, y, z));
-                Point vertex = new Point(x, y, z);
-                triangleMeshBuilder.addVertex(vertex);
-                try {
-                    int red = element.getInt("red");
-                    int green = element.getInt("green");
-                    int blue = element.getInt("blue");
-                    Color pointColor = new Color(red, green, blue);
-                    triangleMeshBuilder.addColor(vertex, pointColor);
-                    //System.out.println("Added color:  " + pointColor + " for vertex:  " + vertex);
-                } catch (IllegalArgumentException e) {
-                    // do nothing
-                }
-
-                element = elementReader.readElement();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private static void addFaceType(ElementReader elementReader, TriangleMeshBuilder  triangleMeshBuilder) {
-        try {
-            Element element = elementReader.readElement();
-            while (element != null) {
-                int[] vertexIndices = null;
-                if (element.getIntList(VERTEX_INDICES) != null) {
-                    vertexIndices = element.getIntList(VERTEX_INDICES);
-                } else if (element.getIntList(VERTEX_INDEX) != null) {
-                    vertexIndices = element.getIntList(VERTEX_INDEX);
-                }
-                //System.out.println("vertexIndices length is: " + vertexIndices.length);
-                if (vertexIndices != null && vertexIndices.length == 3) {
-                    int vertexIndex1 = vertexIndices[0];
-                    int vertexIndex2 = vertexIndices[1];
-                    int vertexIndex3 = vertexIndices[2];
-                    //System.out.println(String.format("Adding Triangle Mesh face: v1_index=%d, v2_index=%d, v3_index=%d", vertexIndex1, vertexIndex2, vertexIndex3));
-                    triangleMeshBuilder.addTriangleByVertexIndex(vertexIndex1, vertexIndex2, vertexIndex3);
-                } else {
-                    throw new IllegalArgumentException("Unknown PLY triangle face property or strange number of indices used!");
-                    //System.err.println("Unknown PLY triangle face property or strange number of indices used!");
-                }
-                element = elementReader.readElement();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
+    final static String VERTEX_INDICES = "vertex_indices";
+    final static String VERTEX_INDEX = "vertex_index";
 
+    /**
+     * Read a PLY file, or its TriangleMeshCache file if one has already been saved for the same contents
+     */
     public static TriangleMesh fromPlyFile(File file) {
         Shared.notNullExistsAndReadable(file, "file parameter cannot be null, must exist, and be readable!");
-        TriangleMeshBuilder triangleMeshBuilder = new TriangleMeshBuilder();
-
-        PlyReader plyReader = null;
-        try {
-            plyReader = new PlyReaderFile(file);
-            //plyReader = new NormalizingPlyReader(new PlyReaderFile(file), TesselationMode.TRIANGLES, NormalMode.PASS_THROUGH, TextureMode.PASS_THROUGH);
-            ElementReader elementReader = plyReader.nextElementReader();
-            while (elementReader != null) {
-                ElementType elementType = elementReader.getElementType();
-                switch (elementType.getName()) {
-                    case "vertex":
-                        addVertexType(elementReader, triangleMeshBuilder);
-                        break;
-
-                    case "face":
-                        addFaceType(elementReader, triangleMeshBuilder);
-                        break;
-
-                    case "edge":
-                        throw new NotImplementedException();
-                        //break;
-
-                    case "material":
-                        throw new NotImplementedException();
-                        //break;
-
-                    default:
-                        throw new UnsupportedOperationException("Unknown PLY element type: " + elementType.getName() + "jPharos does not know how to handle this PLY element type!");
+        if (TriangleMeshCache.isEnabled()) {
+            return TriangleMeshCache.loadOrBuild(file, TriangleMeshReader::parsePlyFile);
+        }
+        return parsePlyFile(file);
+    }
 
-                }
-                elementReader.close();
-                elementReader = plyReader.nextElementReader();
+    private static TriangleMesh parsePlyFile(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("PLY files larger than 2 GB are not supported!");
             }
-
-
-            plyReader.close();
-            plyReader = null;
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            PlyHeader header = PlyHeader.parse(buffer);
+            TriangleMeshVertices vertices = (header.format == PlyHeader.Format.ASCII)
+                    ? AsciiPlyParser.parse(header, buffer)
+                    : BinaryPlyParser.parse(header, buffer);
+            return new TriangleMeshBuilder(vertices).build();
         } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            if (plyReader != null) {
-                try {
-                    plyReader.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            throw new UncheckedIOException("Could not read PLY file " + file, e);
         }
-        return triangleMeshBuilder.build();
     }
 
     public static TriangleMesh fromPlyFile(String filename) {
@@ -0,0 +1,80 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.cameras;
+
+import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.geometry.Vector;
+import com.starrypenguin.jpharos.lenses.PinholeLens;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * CameraTest
+ * <p/>
+ * Tests for Camera ray generation
+ */
+public class CameraTest {
+
+    private static Camera camera(int raysPerPixel) {
+        Point location = new Point(1, 2, 3);
+        Film film = new Film(0.5, 40, 30, raysPerPixel);
+        return new Camera(film, new PinholeLens(10, location), location, new Vector(0, 1, 0), new Vector(0, 0, 1));
+    }
+
+    @Test
+    public void centerPixelLooksAhead() {
+        Camera camera = camera(1);
+        // rays pass through the top left corner of their pixel, which is the film center for this pixel
+        Ray ray = camera.generateRay(camera.film.newFilmCoordinate(15, 20));
+        assertEquals(camera.cameraLocation, ray.origin);
+        assertEquals(0.0, ray.direction.x, 1e-12);
+        assertEquals(1.0, ray.direction.y, 1e-12);
+        assertEquals(0.0, ray.direction.z, 1e-12);
+    }
+
+    @Test
+    public void cornerPixelLooksUpAndLeft() {
+        Camera camera = camera(1);
+        Ray ray = camera.generateRay(camera.film.newFilmCoordinate(0, 0));
+        // right is lookAt x up = +x, so the top left corner is at -x, +z
+        assertTrue(ray.direction.x < 0);
+        assertTrue(ray.direction.z > 0);
+        assertEquals(1.0, ray.direction.magnitude(), 1e-12);
+    }
+
+    @Test
+    public void tileRaysCoverEachPixel() {
+        Camera camera = camera(3);
+        List<Ray> rays = new ArrayList<>();
+        camera.generateRays(10, 5, 4, 6, rays::add);
+        assertEquals(4 * 6 * 3, rays.size());
+        assertEquals(camera.film.newFilmCoordinate(10, 5), rays.get(0).filmCoordinate);
+        assertEquals(camera.film.newFilmCoordinate(13, 10), rays.get(rays.size() - 1).filmCoordinate);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tileMustFitOnFilm() {
+        camera(1).generateRays(25, 0, 10, 10, ray -> { });
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.cameras;
+
+import org.junit.Test;
+
+import java.awt.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * FilmBufferTest
+ * <p/>
+ * Tests for FilmBuffer
+ */
+public class FilmBufferTest {
+
+    @Test
+    public void colorIsMeanOfSamples() {
+        FilmBuffer filmBuffer = new FilmBuffer(2, 3);
+        assertNull(filmBuffer.getColor(1, 2));
+        // pairwise averaging would weight the last sample as much as the first two together
+        filmBuffer.addSample(1, 2, 0.0f, 0.0f, 0.0f);
+        filmBuffer.addSample(1, 2, 0.0f, 0.0f, 0.0f);
+        filmBuffer.addSample(1, 2, 0.6f, 0.3f, 1.0f);
+        assertEquals(3, filmBuffer.getSampleCount(1, 2));
+        assertEquals(new Color(51, 26, 85), filmBuffer.getColor(1, 2));
+        assertEquals(0, filmBuffer.getSampleCount(0, 0));
+    }
+
+    @Test
+    public void sharedSamplesAreAllCounted() throws InterruptedException {
+        FilmBuffer filmBuffer = new FilmBuffer(4, 4);
+        Thread[] threads = new Thread[4];
+        for (int thread = 0; thread < threads.length; thread++) {
+            threads[thread] = new Thread(() -> {
+                for (int sample = 0; sample < 10000; sample++) {
+                    filmBuffer.addSharedSample(sample % 4, (sample / 4) % 4, 1.0f, 0.5f, 0.0f);
+                }
+            });
+            threads[thread].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        int total = 0;
+        for (int heightIndex = 0; heightIndex < 4; heightIndex++) {
+            for (int widthIndex = 0; widthIndex < 4; widthIndex++) {
+                total += filmBuffer.getSampleCount(heightIndex, widthIndex);
+                assertEquals(new Color(255, 128, 0), filmBuffer.getColor(heightIndex, widthIndex));
+            }
+        }
+        assertEquals(40000, total);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pixelMustBeOnFilm() {
+        new FilmBuffer(2, 2).addSample(2, 0, 0.0f, 0.0f, 0.0f);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.cameras;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * ImageWriterTest
+ * <p/>
+ * Tests that each image format holds the developed film
+ */
+public class ImageWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static FilmBuffer randomFilm(int height, int width) {
+        FilmBuffer filmBuffer = new FilmBuffer(height, width);
+        Random random = new Random(6400);
+        for (int heightIndex = 0; heightIndex < height; heightIndex++) {
+            for (int widthIndex = 0; widthIndex < width; widthIndex++) {
+                // smooth areas and noise, so that every PNG filter gets used
+                float base = (heightIndex / 8 + widthIndex / 8) % 2 == 0 ? 0.2f : 0.8f;
+                filmBuffer.addSample(heightIndex, widthIndex, base, random.nextFloat(), (float) widthIndex / width);
+            }
+        }
+        return filmBuffer;
+    }
+
+    @Test
+    public void pngMatchesFilm() throws IOException {
+        // tall enough to be filtered and compressed in several bands
+        FilmBuffer filmBuffer = randomFilm(150, 97);
+        File file = folder.newFile("film.png");
+        ImageWriter.write(filmBuffer, file.getPath(), ImageWriter.Format.PNG);
+        BufferedImage image = ImageIO.read(file);
+        assertEquals(97, image.getWidth());
+        assertEquals(150, image.getHeight());
+        for (int heightIndex = 0; heightIndex < 150; heightIndex++) {
+            for (int widthIndex = 0; widthIndex < 97; widthIndex++) {
+                assertEquals(filmBuffer.getRGB(heightIndex, widthIndex), image.getRGB(widthIndex, heightIndex));
+            }
+        }
+    }
+
+    @Test
+    public void binaryPpmMatchesFilm() throws IOException {
+        FilmBuffer filmBuffer = randomFilm(5, 7);
+        File file = folder.newFile("film.ppm");
+        ImageWriter.write(filmBuffer, file.getPath(), ImageWriter.Format.fromFilename(file.getName()));
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        byte[] header = "P6\n7 5\n255\n".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(header.length + 3 * 5 * 7, bytes.length);
+        int offset = header.length + 3 * (4 * 7 + 6);
+        int rgb = filmBuffer.getRGB(4, 6);
+        assertEquals((rgb >> 16) & 0xFF, bytes[offset] & 0xFF);
+        assertEquals((rgb >> 8) & 0xFF, bytes[offset + 1] & 0xFF);
+        assertEquals(rgb & 0xFF, bytes[offset + 2] & 0xFF);
+    }
+
+    @Test
+    public void asciiPpmKeepsItsLayout() throws IOException {
+        FilmBuffer filmBuffer = new FilmBuffer(1, 2);
+        filmBuffer.addSample(0, 0, 1.0f, 0.0f, 0.5f);
+        filmBuffer.addSample(0, 1, 0.04f, 0.2f, 0.0f);
+        File file = folder.newFile("film_ascii.ppm");
+        ImageWriter.write(filmBuffer, file.getPath(), ImageWriter.Format.ASCII_PPM);
+        assertEquals("P3\n2 1\n255\n255 0 128 10 51 0 \n\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unfinishedFilmIsRejected() throws IOException {
+        ImageWriter.write(new FilmBuffer(2, 2), folder.newFile("unfinished.png").getPath(), ImageWriter.Format.PNG);
+    }
+}
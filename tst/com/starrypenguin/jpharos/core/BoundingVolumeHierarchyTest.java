@@ -0,0 +1,281 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.starrypenguin.jpharos.core;
+
+import com.starrypenguin.jpharos.geometry.BoundingBox;
+import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.geometry.Vector;
+import com.starrypenguin.jpharos.materials.NullMaterial;
+import com.starrypenguin.jpharos.shapes.Sphere;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * BoundingVolumeHierarchyTest
+ * <p/>
+ * Tests for BoundingVolumeHierarchy construction and traversal
+ */
+public class BoundingVolumeHierarchyTest {
+
+    private static Set<Body> randomSpheres(int count) {
+        Random random = new Random(6400);
+        Set<Body> bodies = new HashSet<>();
+        for (int index = 0; index < count; index++) {
+            Point location = new Point(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100);
+            bodies.add(new Body(new Sphere(location, 0.5 + random.nextDouble()), NullMaterial.instance(), "Sphere_" + index));
+        }
+        return bodies;
+    }
+
+    private static int countLeaves(Body body) {
+        if (body instanceof BoundingVolumeHierarchy.BvhNode) {
+            BoundingVolumeHierarchy.BvhNode node = (BoundingVolumeHierarchy.BvhNode) body;
+            return countLeaves(node.left) + countLeaves(node.right);
+        }
+        return 1;
+    }
+
+    @Test
+    public void binnedSahHoldsEveryBody() {
+        Set<Body> bodies = randomSpheres(1000);
+        BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(bodies, BoundingVolumeHierarchy.BuildStrategy.BINNED_SAH);
+        System.out.println(bvh.getStatistics());
+        assertEquals(bodies.size(), countLeaves(bvh.head));
+        assertTrue(bvh.depth() < 40);
+    }
+
+    @Test
+    public void compareBuildStrategies() {
+        Set<Body> bodies = randomSpheres(100);
+        BoundingVolumeHierarchy greedy = new BoundingVolumeHierarchy(bodies, BoundingVolumeHierarchy.BuildStrategy.GREEDY_PAIRWISE);
+        BoundingVolumeHierarchy binned = new BoundingVolumeHierarchy(bodies, BoundingVolumeHierarchy.BuildStrategy.BINNED_SAH);
+        System.out.println(greedy.getStatistics());
+        System.out.println(binned.getStatistics());
+        assertEquals(bodies.size(), countLeaves(greedy.head));
+        assertEquals(bodies.size(), countLeaves(binned.head));
+        assertTrue(binned.sahCost() < greedy.sahCost());
+    }
+
+    @Test
+    public void castRayFindsClosestBody() {
+        Set<Body> bodies = randomSpheres(300);
+        Random random = new Random(6401);
+        for (BoundingVolumeHierarchy.BuildStrategy buildStrategy : BoundingVolumeHierarchy.BuildStrategy.values()) {
+            BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(bodies, buildStrategy);
+            for (int rayCount = 0; rayCount < 500; rayCount++) {
+                Ray ray = new Ray(new Point(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100),
+                        new Vector(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()));
+                Intersection closest = null;
+                for (Body body : bodies) {
+                    Intersection intersection = body.Intersects(ray);
+                    if (intersection != null && (closest == null || intersection.intersectionTime < closest.intersectionTime)) {
+                        closest = intersection;
+                    }
+                }
+                Intersection intersection = bvh.castRay(ray);
+                if (closest == null) {
+                    assertNull(intersection);
+                } else {
+                    assertNotNull(intersection);
+                    assertEquals(closest.body, intersection.body);
+                    assertEquals(closest.intersectionTime, intersection.intersectionTime, 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void occludedAgreesWithCastRay() {
+        Set<Body> bodies = randomSpheres(300);
+        BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(bodies);
+        Random random = new Random(6402);
+        for (int rayCount = 0; rayCount < 500; rayCount++) {
+            Ray ray = new Ray(new Point(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100),
+                    new Vector(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalized());
+            double maxDistance = random.nextDouble() * 50;
+            Intersection intersection = bvh.castRay(ray);
+            boolean expected = intersection != null && intersection.intersectionTime > 0.0 && intersection.intersectionTime < maxDistance;
+            assertEquals(expected, bvh.occluded(ray, maxDistance));
+        }
+    }
+
+    @Test
+    public void castRaysAgreesWithCastRay() {
+        Set<Body> bodies = randomSpheres(300);
+        BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(bodies);
+        Random random = new Random(6403);
+        Intersection[] intersections = new Intersection[16];
+        for (int packetCount = 0; packetCount < 200; packetCount++) {
+            // a 4x4 fan of nearly parallel rays from nearby origins, like the camera rays of neighboring pixels
+            Point origin = new Point(random.nextDouble() * 100, random.nextDouble() * 100, -10);
+            Vector direction = new Vector(0.05 + random.nextDouble() * 0.2, 0.05 + random.nextDouble() * 0.2, 1);
+            RayPacket packet = new RayPacket(16);
+            for (int lane = 0; lane < 16; lane++) {
+                packet.add(new Ray(origin.plus(new Vector(random.nextDouble() * 0.1, random.nextDouble() * 0.1, 0)),
+                        direction.plus(new Vector((lane % 4) * 0.005, (lane / 4) * 0.005, 0))));
+            }
+            assertTrue(packet.isCoherent());
+            bvh.castRays(packet, intersections);
+            for (int lane = 0; lane < 16; lane++) {
+                Intersection expected = bvh.castRay(packet.get(lane));
+                if (expected == null) {
+                    assertNull(intersections[lane]);
+                } else {
+                    assertNotNull(intersections[lane]);
+                    assertEquals(expected.body, intersections[lane].body);
+                    assertEquals(expected.intersectionTime, intersections[lane].intersectionTime, 0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void wideBvhAgreesWithLinearBvh() {
+        Body[] bodies = randomSpheres(300).toArray(new Body[0]);
+        BoundingBox[] boundingBoxes = new BoundingBox[bodies.length];
+        for (int index = 0; index < bodies.length; index++) {
+            boundingBoxes[index] = bodies[index].getBoundingBox();
+        }
+        BinnedSahBuilder builder = new BinnedSahBuilder(BinnedSahBuilder.toPrimitiveBounds(boundingBoxes), 2);
+        LinearBvh binary = new LinearBvh(builder.build());
+        int[] leafOrder = builder.getPrimitiveIndices();
+        LinearBvh.PrimitiveIntersector intersector = (primitive, ray, maxTime) -> {
+            Intersection intersection = bodies[leafOrder[primitive]].Intersects(ray);
+            return intersection != null && intersection.intersectionTime < maxTime ? intersection.intersectionTime : Double.POSITIVE_INFINITY;
+        };
+        for (int width : new int[]{4, 8}) {
+            WideBvh wide = new WideBvh(binary, width);
+            System.out.println(String.format("binary depth: %d, nodes: %d; %d-wide depth: %d, nodes: %d",
+                    binary.depth(), binary.nodeCount, width, wide.depth(), wide.nodeCount));
+            assertTrue(wide.depth() < binary.depth());
+            Random random = new Random(6404);
+            for (int rayCount = 0; rayCount < 500; rayCount++) {
+                Ray ray = new Ray(new Point(random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100),
+                        new Vector(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalized());
+                double maxDistance = random.nextDouble() * 50;
+                assertEquals(binary.closestHit(ray, Double.POSITIVE_INFINITY, intersector), wide.closestHit(ray, Double.POSITIVE_INFINITY, intersector));
+                assertEquals(binary.anyHit(ray, maxDistance, intersector), wide.anyHit(ray, maxDistance, intersector));
+            }
+        }
+        // a hierarchy that is a single leaf becomes one wide node with one child
+        LinearBvh leaf = new LinearBvh(new BinnedSahBuilder(BinnedSahBuilder.toPrimitiveBounds(new BoundingBox[]{boundingBoxes[0]}), 2).build());
+        WideBvh wide = new WideBvh(leaf, 4);
+        assertEquals(1, wide.nodeCount);
+        assertEquals(2, wide.depth());
+        Ray ray = new Ray(boundingBoxes[0].getCenterPoint().minus(new Vector(0, 0, 10)), new Vector(0, 0, 1));
+        assertEquals(0, wide.closestHit(ray, Double.POSITIVE_INFINITY,
+                (primitive, primitiveRay, maxTime) -> bodies[0].Intersects(primitiveRay).intersectionTime));
+    }
+
+    @Test
+    public void deepLinearBvh() {
+        // a chain of unit boxes along x, with one leaf and one interior node at every level, is deeper than a
+        // recursive flatten could handle
+        int depth = 200000;
+        BinnedSahBuilder.Node node = new BinnedSahBuilder.Node(new double[]{depth - 1, 0, 0, depth, 1, 1}, depth - 1, 1);
+        for (int primitive = depth - 2; primitive >= 0; primitive--) {
+            BinnedSahBuilder.Node leaf = new BinnedSahBuilder.Node(new double[]{primitive, 0, 0, primitive + 1, 1, 1}, primitive, 1);
+            node = new BinnedSahBuilder.Node(new double[]{primitive, 0, 0, depth, 1, 1}, leaf, node, 0);
+        }
+        LinearBvh bvh = new LinearBvh(node);
+        assertEquals(2 * depth - 1, bvh.nodeCount);
+        assertEquals(depth, bvh.depth());
+        // every primitive is hit at the time the ray enters its box
+        LinearBvh.PrimitiveIntersector intersector = (primitive, ray, maxTime) -> {
+            double time = primitive - ray.origin.x;
+            return time > 0.0 && time < maxTime ? time : Double.POSITIVE_INFINITY;
+        };
+        Ray ray = new Ray(new Point(depth - 0.5, 0.5, 0.5), new Vector(-1, 0, 0));
+        assertEquals(-1, bvh.closestHit(ray, Double.POSITIVE_INFINITY, intersector));
+        ray = new Ray(new Point(-0.5, 0.5, 0.5), new Vector(1, 0, 0));
+        assertEquals(0, bvh.closestHit(ray, Double.POSITIVE_INFINITY, intersector));
+        assertTrue(bvh.anyHit(ray, Double.POSITIVE_INFINITY, intersector));
+        assertFalse(bvh.anyHit(ray, 0.25, intersector));
+    }
+
+    @Test
+    public void anyHitThenClosestHitOnADeepStack() {
+        // a chain whose interior nodes come first and are entered before their leaf, so that a ray along it leaves
+        // a leaf on the stack at every level
+        int depth = 1000;
+        BinnedSahBuilder.Node node = new BinnedSahBuilder.Node(new double[]{depth - 1, 0, 0, depth, 1, 1}, depth - 1, 1);
+        for (int primitive = depth - 2; primitive >= 0; primitive--) {
+            BinnedSahBuilder.Node leaf = new BinnedSahBuilder.Node(new double[]{primitive + 1.75, 0, 0, primitive + 2, 1, 1}, primitive, 1);
+            node = new BinnedSahBuilder.Node(new double[]{primitive, 0, 0, depth, 1, 1}, node, leaf, 0);
+        }
+        LinearBvh bvh = new LinearBvh(node);
+        LinearBvh.PrimitiveIntersector misses = (primitive, ray, maxTime) -> Double.POSITIVE_INFINITY;
+        Ray ray = new Ray(new Point(-0.5, 0.5, 0.5), new Vector(1, 0, 0));
+        // the queries of a thread share their scratch space, whichever query grew it
+        assertFalse(bvh.anyHit(ray, Double.POSITIVE_INFINITY, misses));
+        assertEquals(-1, bvh.closestHit(ray, Double.POSITIVE_INFINITY, misses));
+        WideBvh wide = new WideBvh(bvh, 4);
+        assertFalse(wide.anyHit(ray, Double.POSITIVE_INFINITY, misses));
+        assertEquals(-1, wide.closestHit(ray, Double.POSITIVE_INFINITY, misses));
+    }
+
+    @Test
+    public void traversalStatistics() {
+        TraversalStatistics statistics = new TraversalStatistics();
+        statistics.countClosestHit(3);
+        statistics.countClosestHit(6);
+        statistics.countAnyHit(2);
+        assertEquals(2, statistics.closestHitQueries());
+        assertEquals(4.5, statistics.averageNodesVisitedPerClosestHit(), 0.0);
+        assertEquals(2.0, statistics.averageNodesVisitedPerAnyHit(), 0.0);
+        statistics.reset();
+        assertEquals(0, statistics.closestHitQueries());
+        // queries are only counted when the statistics are turned on
+        BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(randomSpheres(20));
+        bvh.castRay(new Ray(new Point(0, 0, 0), new Vector(1, 1, 1)));
+        assertEquals(TraversalStatistics.isEnabled(), !bvh.getTraversalStatistics().isEmpty());
+    }
+
+    @Test
+    public void rayPacketCoherence() {
+        RayPacket packet = new RayPacket(4);
+        packet.add(new Ray(new Point(0, 0, 0), new Vector(1, 1, 1)));
+        packet.add(new Ray(new Point(1, 0, 0), new Vector(2, 1, 1)));
+        assertTrue(packet.isCoherent());
+        assertEquals(0x3, packet.allLanes());
+        packet.add(new Ray(new Point(0, 0, 0), new Vector(1, -1, 1)));
+        assertFalse(packet.isCoherent());
+        packet.clear();
+        packet.add(new Ray(new Point(0, 0, 0), new Vector(1, -1, 1)));
+        assertTrue(packet.isCoherent());
+    }
+
+    @Test
+    public void singleBody() {
+        Set<Body> bodies = randomSpheres(1);
+        BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy(bodies);
+        assertEquals(bodies.iterator().next(), bvh.head);
+        assertEquals(1, bvh.depth());
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.core;
+
+import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.geometry.Vector;
+import org.junit.Test;
+
+import java.awt.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * IntegratorTest
+ * <p/>
+ * Tests for Integrator
+ */
+public class IntegratorTest {
+
+    @Test
+    public void pathStopsAtMaxDepth() {
+        Integrator integrator = new Integrator(2);
+        Ray ray = new Ray(new Point(0, 0, 0), new Vector(0, 0, 1));
+        // no ray is cast once the path has used up its bounces, so no scene is needed
+        RgbAccumulator colors = new RgbAccumulator();
+        integrator.traceSecondary(ray, 2, Color.RED.getRGB(), colors);
+        assertEquals(1, colors.count());
+        assertEquals(Integrator.DEPTH_LIMIT_RGB, RgbAccumulator.pack(colors.meanRed(), colors.meanGreen(), colors.meanBlue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxDepthCannotBeNegative() {
+        new Integrator(-1);
+    }
+}
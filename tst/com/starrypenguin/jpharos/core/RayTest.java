@@ -0,0 +1,70 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.core;
+
+import com.starrypenguin.jpharos.geometry.BoundingBox;
+import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.geometry.Vector;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * RayTest
+ * <p/>
+ * Tests for the acceleration data that Ray calculates when it is created
+ */
+public class RayTest {
+
+    @Test
+    public void precomputedValuesTest() {
+        Ray ray = new Ray(new Point(0, 0, 0), new Vector(2, -4, 0.5));
+        assertEquals(0.5, ray.inverseX, 0.0);
+        assertEquals(-0.25, ray.inverseY, 0.0);
+        assertEquals(2.0, ray.inverseZ, 0.0);
+        assertEquals(0, ray.signX);
+        assertEquals(1, ray.signY);
+        assertEquals(0, ray.signZ);
+        assertEquals(0.0, ray.minTime, 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, ray.maxTime, 0.0);
+    }
+
+    @Test
+    public void negativeZeroDirectionTest() {
+        Ray ray = new Ray(new Point(0, 0, 0), new Vector(-0.0, 0, 1));
+        assertEquals(Double.NEGATIVE_INFINITY, ray.inverseX, 0.0);
+        assertEquals(1, ray.signX);
+    }
+
+    @Test
+    public void rangeLimitsHitsTest() {
+        BoundingBox box = new BoundingBox(new Point(-1, -1, -1), new Point(1, 1, 1));
+        Point origin = new Point(-5, 0, 0);
+        Vector direction = new Vector(1, 0, 0);
+        assertTrue(box.IntersectsP(new Ray(origin, direction, null, 0.0, 5.0)));
+        assertFalse(box.IntersectsP(new Ray(origin, direction, null, 0.0, 3.0)));
+        // starting past the entry face, the first hit is the exit face
+        assertEquals(6.0, box.Intersects(new Ray(origin, direction, null, 4.5, 10.0), null).intersectionTime, 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRangeTest() {
+        new Ray(new Point(0, 0, 0), new Vector(1, 0, 0), null, 2.0, 1.0);
+    }
+}
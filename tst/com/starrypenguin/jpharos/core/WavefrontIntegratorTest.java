@@ -0,0 +1,77 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.core;
+
+import com.starrypenguin.jpharos.cameras.Camera;
+import com.starrypenguin.jpharos.cameras.Film;
+import com.starrypenguin.jpharos.main.jPharos;
+import com.starrypenguin.jpharos.parallel.RenderProgress;
+import com.starrypenguin.jpharos.parallel.RenderTile;
+import com.starrypenguin.jpharos.scenes.BeautifulSpheres;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * WavefrontIntegratorTest
+ * <p/>
+ * Tests for WavefrontIntegrator
+ */
+public class WavefrontIntegratorTest {
+
+    private static Camera copyWithNewFilm(Camera camera) {
+        Film film = new Film(camera.film.pixelSize, camera.film.filmWidthInPixels, camera.film.filmHeightInPixels, camera.film.raysPerPixel);
+        return new Camera(film, camera.lens, camera.cameraLocation, camera.lookAt, camera.up);
+    }
+
+    @Test
+    public void rendersTheSameImageAsIntegrator() throws InterruptedException {
+        // the scene has every kind of material:  mirror, glass, chromatic, and colored
+        jPharos.instance.scene = new BeautifulSpheres().build();
+        Camera camera = jPharos.instance.scene.camera;
+        Camera wavefrontCamera = copyWithNewFilm(camera);
+        List<RenderTile> tiles = RenderTile.split(camera.film.filmHeightInPixels, camera.film.filmWidthInPixels, 16);
+
+        jPharos.instance.camera = camera;
+        for (RenderTile tile : tiles) {
+            new TraceTile(tile).run();
+        }
+        // a small batch size so that the pixels are split over several batches
+        RenderProgress progress = new WavefrontIntegrator(Integrator.DEFAULT_MAX_DEPTH, 1000).submit(wavefrontCamera, tiles);
+        assertTrue(progress.await(1, TimeUnit.MINUTES));
+        assertTrue(progress.totalUnits > 1);
+
+        for (int heightIndex = 0; heightIndex < camera.film.filmHeightInPixels; heightIndex++) {
+            for (int widthIndex = 0; widthIndex < camera.film.filmWidthInPixels; widthIndex++) {
+                assertEquals(camera.film.filmBuffer.getSampleCount(heightIndex, widthIndex),
+                        wavefrontCamera.film.filmBuffer.getSampleCount(heightIndex, widthIndex));
+                assertEquals(camera.film.filmBuffer.getRGB(heightIndex, widthIndex),
+                        wavefrontCamera.film.filmBuffer.getRGB(heightIndex, widthIndex));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchSizeMustBePositive() {
+        new WavefrontIntegrator(Integrator.DEFAULT_MAX_DEPTH, 0);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.geometry;
+
+import com.starrypenguin.jpharos.core.Intersection;
+import com.starrypenguin.jpharos.core.Ray;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * BoundingBoxTest
+ * <p/>
+ * Tests for the BoundingBox slab test
+ */
+public class BoundingBoxTest {
+
+    private final BoundingBox box = new BoundingBox(new Point(-1, -1, -1), new Point(1, 1, 1));
+
+    @Test
+    public void entryAndExitTimesTest() {
+        Ray ray = new Ray(new Point(-5, 0, 0), new Vector(1, 0, 0));
+        double[] interval = box.entryAndExitTimes(ray, Double.POSITIVE_INFINITY);
+        assertNotNull(interval);
+        assertEquals(4.0, interval[0], 1e-9);
+        assertEquals(6.0, interval[1], 1e-9);
+    }
+
+    @Test
+    public void missTest() {
+        assertNull(box.entryAndExitTimes(new Ray(new Point(-5, 2, 0), new Vector(1, 0, 0)), Double.POSITIVE_INFINITY));
+        // the box is behind the ray
+        assertFalse(box.IntersectsP(new Ray(new Point(5, 0, 0), new Vector(1, 0, 0))));
+        // the box is beyond maxDistance
+        assertFalse(box.occluded(new Ray(new Point(-5, 0, 0), new Vector(1, 0, 0)), 3.0));
+        assertTrue(box.occluded(new Ray(new Point(-5, 0, 0), new Vector(1, 0, 0)), 5.0));
+    }
+
+    @Test
+    public void rayInPlaneOfFaceTest() {
+        // the ray runs along the face at y = 1, so one slab time is 0 * infinity
+        Ray ray = new Ray(new Point(-5, 1, 0), new Vector(1, 0, 0));
+        assertNotNull(box.entryAndExitTimes(ray, Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void intersectsTest() {
+        Intersection intersection = box.Intersects(new Ray(new Point(0, 0, 5), new Vector(0, 0, -1)), null);
+        assertNotNull(intersection);
+        assertEquals(4.0, intersection.intersectionTime, 1e-9);
+        assertEquals(1.0, intersection.surfaceNormal.z, 0.0);
+
+        // a ray starting inside the box hits the face it leaves through
+        intersection = box.Intersects(new Ray(new Point(0, 0, 0), new Vector(-1, 0, 0)), null);
+        assertNotNull(intersection);
+        assertEquals(1.0, intersection.intersectionTime, 1e-9);
+        assertEquals(-1.0, intersection.surfaceNormal.x, 0.0);
+    }
+}
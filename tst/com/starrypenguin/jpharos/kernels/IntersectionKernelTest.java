@@ -0,0 +1,154 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.kernels;
+
+import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.geometry.BoundingBox;
+import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.geometry.Vector;
+import com.starrypenguin.jpharos.shapes.Triangle;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * IntersectionKernelTest
+ * <p/>
+ * Tests that the intersection kernels agree exactly with the one-at-a-time triangle and box tests;
+ * run with the vector kernel compiled and the jdk.incubator.vector module added to cover both kernels
+ */
+public class IntersectionKernelTest {
+
+    private static final int TRIANGLE_COUNT = 64;
+    private static final int RAY_COUNT = 500;
+    private static final int MAX_GROUP = 9;
+
+    private static List<IntersectionKernel> kernels() {
+        return Arrays.asList(new ScalarIntersectionKernel(), IntersectionKernel.get());
+    }
+
+    private static Ray randomRay(Random random) {
+        // from a point on a sphere around the triangles towards a point near the middle of them
+        Vector offset = new Vector(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+        Point origin = Point.ORIGIN.plus(offset.normalized().scale(5.0));
+        Point target = new Point(random.nextDouble() - 0.5, random.nextDouble() - 0.5, random.nextDouble() - 0.5);
+        return new Ray(origin, new Vector(origin, target));
+    }
+
+    @Test
+    public void closestTriangleAgreesWithTriangleTest() {
+        Random random = new Random(6400);
+        double[] positions = new double[9 * TRIANGLE_COUNT];
+        int[] indices = new int[3 * TRIANGLE_COUNT];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = random.nextDouble() * 2.0 - 1.0;
+        }
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        // repeat a triangle so that two triangles of a group tie
+        System.arraycopy(indices, 0, indices, 3, 3);
+        double[] hitTime = new double[1];
+        int hits = 0;
+        for (int r = 0; r < RAY_COUNT; r++) {
+            Ray ray = randomRay(random);
+            int first = r % (TRIANGLE_COUNT - MAX_GROUP);
+            int count = 1 + r % MAX_GROUP;
+            double maxTime = r % 4 == 0 ? 5.0 : Double.POSITIVE_INFINITY;
+            int expected = -1;
+            double expectedTime = maxTime;
+            for (int triangle = first; triangle < first + count; triangle++) {
+                int a = 3 * indices[3 * triangle];
+                int b = 3 * indices[3 * triangle + 1];
+                int c = 3 * indices[3 * triangle + 2];
+                Triangle shape = new Triangle(new Point(positions[a], positions[a + 1], positions[a + 2]),
+                        new Point(positions[b], positions[b + 1], positions[b + 2]),
+                        new Point(positions[c], positions[c + 1], positions[c + 2]));
+                double time = shape.intersect(ray, expectedTime, null);
+                if (time < expectedTime) {
+                    expectedTime = time;
+                    expected = triangle;
+                }
+            }
+            hits += expected == -1 ? 0 : 1;
+            for (IntersectionKernel kernel : kernels()) {
+                PackedTriangles triangles = kernel.packTriangles(positions, indices, TRIANGLE_COUNT);
+                assertEquals(kernel.toString(), expected, kernel.closestTriangle(triangles, first, count, ray, maxTime, hitTime));
+                if (expected != -1) {
+                    assertEquals(kernel.toString(), expectedTime, hitTime[0], 0.0);
+                }
+                assertEquals(kernel.toString(), expected != -1, kernel.anyTriangle(triangles, first, count, ray, maxTime));
+            }
+        }
+        assertTrue("too few rays hit a triangle to test anything: " + hits, hits > RAY_COUNT / 10);
+    }
+
+    @Test
+    public void onlyVectorKernelsPackTriangles() {
+        double[] positions = {0, 0, 0, 1, 0, 0, 0, 1, 0};
+        int[] indices = {0, 1, 2};
+        PackedTriangles shared = new ScalarIntersectionKernel().packTriangles(positions, indices, 1);
+        assertFalse(shared.packed);
+        assertNull(shared.v1X);
+        assertSame(positions, shared.positions);
+        IntersectionKernel kernel = IntersectionKernel.get();
+        assertEquals(kernel.laneCount() > 1, kernel.packTriangles(positions, indices, 1).packed);
+    }
+
+    @Test
+    public void intersectBoxesAgreesWithBoundingBoxTest() {
+        Random random = new Random(6400);
+        int stride = 8;
+        double[] bounds = new double[6 * stride];
+        double[] entryTimes = new double[stride];
+        double[] interval = new double[2];
+        for (int r = 0; r < RAY_COUNT; r++) {
+            for (int box = 0; box < stride; box++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    double a = random.nextDouble() * 2.0 - 1.0;
+                    double b = random.nextDouble() * 2.0 - 1.0;
+                    bounds[axis * stride + box] = Math.min(a, b);
+                    bounds[(3 + axis) * stride + box] = Math.max(a, b);
+                }
+            }
+            Ray ray = randomRay(random);
+            int count = 1 + r % stride;
+            double maxTime = r % 4 == 0 ? 5.0 : Double.POSITIVE_INFINITY;
+            for (IntersectionKernel kernel : kernels()) {
+                int hits = kernel.intersectBoxes(bounds, 0, stride, count, ray, ray.minTime, maxTime, entryTimes);
+                for (int box = 0; box < count; box++) {
+                    double[] single = new double[6];
+                    for (int row = 0; row < 6; row++) {
+                        single[row] = bounds[row * stride + box];
+                    }
+                    interval[0] = ray.minTime;
+                    interval[1] = maxTime;
+                    boolean hit = BoundingBox.intersectSlabs(single, 0, ray, interval);
+                    assertEquals(kernel.toString(), hit, (hits & (1 << box)) != 0);
+                    assertEquals(kernel.toString(), hit ? interval[0] : Double.POSITIVE_INFINITY, entryTimes[box], 0.0);
+                }
+                assertEquals(kernel.toString(), 0, hits >>> count);
+            }
+        }
+    }
+}
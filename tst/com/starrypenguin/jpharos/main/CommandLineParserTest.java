@@ -0,0 +1,65 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.main;
+
+import com.starrypenguin.jpharos.cameras.ImageWriter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CommandLineParserTest
+ * <p/>
+ * Tests for the command line options
+ */
+public class CommandLineParserTest {
+
+    @Test
+    public void defaults() {
+        CommandLineParser options = new CommandLineParser(new String[0]);
+        assertEquals(CommandLineParser.DEFAULT_OUT_FILENAME, options.outFilename);
+        assertFalse(options.compareBuildStrategies);
+        assertFalse(options.comparePacketTraversal);
+        assertEquals(ImageWriter.Format.BINARY_PPM, options.imageFormat());
+        assertEquals(CommandLineParser.DEFAULT_OUT_FILENAME, new CommandLineParser(new String[]{""}).outFilename);
+    }
+
+    @Test
+    public void optionsAndOutFilename() {
+        CommandLineParser options = new CommandLineParser(new String[]{CommandLineParser.COMPARE_BUILD_STRATEGIES, "scene.png",
+                CommandLineParser.COMPARE_PACKET_TRAVERSAL});
+        assertEquals("scene.png", options.outFilename);
+        assertTrue(options.compareBuildStrategies);
+        assertTrue(options.comparePacketTraversal);
+        assertEquals(ImageWriter.Format.PNG, options.imageFormat());
+    }
+
+    @Test
+    public void asciiPpm() {
+        CommandLineParser options = new CommandLineParser(new String[]{"out.ppm", CommandLineParser.ASCII_PPM});
+        assertEquals(ImageWriter.Format.ASCII_PPM, options.imageFormat());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownOption() {
+        new CommandLineParser(new String[]{"--no-such-option"});
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.parallel;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * RenderProgressTest
+ * <p/>
+ * Tests for RenderProgress
+ */
+public class RenderProgressTest {
+
+    @Test
+    public void finishesWithLastUnit() throws InterruptedException {
+        RenderProgress progress = new RenderProgress(4);
+        assertEquals(-1, progress.estimatedMillisRemaining());
+        progress.unitsCompleted(1);
+        assertEquals(0.25, progress.fractionComplete(), 0.0);
+        assertTrue(progress.estimatedMillisRemaining() >= 0);
+        assertFalse(progress.await(1, TimeUnit.MILLISECONDS));
+        progress.unitsCompleted(3);
+        assertTrue(progress.isFinished());
+        assertTrue(progress.await(0, TimeUnit.MILLISECONDS));
+        assertEquals(0, progress.estimatedMillisRemaining());
+    }
+
+    @Test
+    public void waitingThreadWakesWhenWorkIsDone() throws InterruptedException {
+        RenderProgress progress = new RenderProgress(1);
+        new Thread(() -> progress.unitsCompleted(1)).start();
+        assertTrue(progress.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failureIsReported() throws InterruptedException {
+        RenderProgress progress = new RenderProgress(2);
+        progress.failed(new RuntimeException("test failure"));
+        progress.await(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void emptyRenderIsFinished() {
+        assertTrue(new RenderProgress(0).isFinished());
+    }
+}
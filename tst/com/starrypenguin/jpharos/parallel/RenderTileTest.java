@@ -0,0 +1,60 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.parallel;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * RenderTileTest
+ * <p/>
+ * Tests for RenderTile
+ */
+public class RenderTileTest {
+
+    @Test
+    public void tilesCoverFilmExactlyOnce() {
+        int height = 37;
+        int width = 50;
+        List<RenderTile> tiles = RenderTile.split(height, width, 16);
+        assertEquals(3 * 4, tiles.size());
+        int[][] covered = new int[height][width];
+        for (RenderTile tile : tiles) {
+            assertTrue(tile.heightInPixels <= 16 && tile.widthInPixels <= 16);
+            for (int heightIndex = tile.firstHeightIndex; heightIndex < tile.firstHeightIndex + tile.heightInPixels; heightIndex++) {
+                for (int widthIndex = tile.firstWidthIndex; widthIndex < tile.firstWidthIndex + tile.widthInPixels; widthIndex++) {
+                    covered[heightIndex][widthIndex]++;
+                }
+            }
+        }
+        for (int[] row : covered) {
+            for (int count : row) {
+                assertEquals(1, count);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tileSizeMustBePositive() {
+        RenderTile.split(10, 10, 0);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.samplers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * SamplerTest
+ * <p/>
+ * Tests for the Samplers
+ */
+public class SamplerTest {
+
+    private static final int SAMPLES_PER_PIXEL = 16;
+    private static final int DIMENSIONS = 8;
+
+    private static List<Sampler> samplers() {
+        return Arrays.asList(new IndependentSampler(SAMPLES_PER_PIXEL, 6400),
+                new StratifiedSampler(SAMPLES_PER_PIXEL, 6400),
+                new HaltonSampler(SAMPLES_PER_PIXEL, 6400),
+                new SobolSampler(SAMPLES_PER_PIXEL, 6400));
+    }
+
+    private static double[] draw(Sampler sampler, int heightIndex, int widthIndex, int sampleIndex) {
+        sampler.startPixelSample(heightIndex, widthIndex, sampleIndex);
+        double[] values = new double[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            values[i] = sampler.next1D();
+        }
+        return values;
+    }
+
+    @Test
+    public void valuesAreInUnitIntervalTest() {
+        for (Sampler sampler : samplers()) {
+            for (int sampleIndex = 0; sampleIndex < SAMPLES_PER_PIXEL * 2; sampleIndex++) {
+                for (double value : draw(sampler, 7, 11, sampleIndex)) {
+                    assertTrue(sampler + " gave " + value, value >= 0.0 && value < 1.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void deterministicTest() {
+        for (Sampler sampler : samplers()) {
+            double[] first = draw(sampler, 3, 5, 2);
+            draw(sampler, 9, 1, 0);
+            assertArrayEquals(first, draw(sampler, 3, 5, 2), 0.0);
+            assertFalse(Arrays.equals(first, draw(sampler, 3, 6, 2)));
+            assertFalse(Arrays.equals(first, draw(sampler, 3, 5, 3)));
+        }
+    }
+
+    @Test
+    public void stratifiedCoversEveryStratumTest() {
+        for (Sampler sampler : Arrays.asList(new StratifiedSampler(SAMPLES_PER_PIXEL, 1), new SobolSampler(SAMPLES_PER_PIXEL, 1))) {
+            for (int dimension = 0; dimension < DIMENSIONS; dimension++) {
+                boolean[] covered = new boolean[SAMPLES_PER_PIXEL];
+                for (int sampleIndex = 0; sampleIndex < SAMPLES_PER_PIXEL; sampleIndex++) {
+                    covered[(int) (draw(sampler, 2, 4, sampleIndex)[dimension] * SAMPLES_PER_PIXEL)] = true;
+                }
+                for (boolean stratum : covered) {
+                    assertTrue(sampler + " missed a stratum in dimension " + dimension, stratum);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void radicalInverseTest() {
+        assertEquals(0.0, HaltonSampler.radicalInverse(2, 0), 0.0);
+        assertEquals(0.5, HaltonSampler.radicalInverse(2, 1), 0.0);
+        assertEquals(0.25, HaltonSampler.radicalInverse(2, 2), 0.0);
+        assertEquals(0.75, HaltonSampler.radicalInverse(2, 3), 0.0);
+        assertEquals(1.0 / 3.0, HaltonSampler.radicalInverse(3, 1), 1e-15);
+        assertEquals(1.0 / 9.0, HaltonSampler.radicalInverse(3, 3), 1e-15);
+    }
+
+    @Test
+    public void permutationTest() {
+        for (int length : new int[]{1, 5, 16, 100}) {
+            boolean[] seen = new boolean[length];
+            for (int i = 0; i < length; i++) {
+                int element = Sampler.permutationElement(i, length, 0x1234567);
+                assertFalse(seen[element]);
+                seen[element] = true;
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void samplesPerPixelMustBePositiveTest() {
+        new IndependentSampler(0, 1);
+    }
+}
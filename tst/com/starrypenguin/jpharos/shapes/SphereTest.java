@@ -18,9 +18,14 @@
 
 package com.starrypenguin.jpharos.shapes;
 
+import com.starrypenguin.jpharos.core.Intersection;
+import com.starrypenguin.jpharos.core.Ray;
 import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.geometry.Vector;
 import org.junit.Test;
 
+import static org.junit.Assert.*;
+
 /**
  * SphereTest
  * <p/>
@@ -39,4 +44,38 @@ public class SphereTest {
         System.out.println("Random Point 2: " + randPoint2 + " is " + Point.distance(randPoint2, center) + " from the center");
         System.out.println("Random Point 3: " + randPoint3 + " is " + Point.distance(randPoint3, center) + " from the center");
     }
+
+    @Test
+    public void intersectionTimesTest() {
+        Sphere sphere = new Sphere(new Point(0, 0, 10), 2);
+        double[] nearAndFar = new double[2];
+        assertTrue(sphere.intersectionTimes(new Ray(new Point(0, 0, 0), new Vector(0, 0, 2)), nearAndFar));
+        assertEquals(4.0, nearAndFar[0], 1e-12);
+        assertEquals(6.0, nearAndFar[1], 1e-12);
+        assertFalse(sphere.intersectionTimes(new Ray(new Point(0, 3, 0), new Vector(0, 0, 1)), nearAndFar));
+    }
+
+    @Test
+    public void closestIntersectionTest() {
+        Sphere sphere = new Sphere(new Point(0, 0, 0), 1);
+        // from inside the sphere the far root is the hit
+        Intersection intersection = sphere.Intersects(new Ray(new Point(0, 0, 0), new Vector(1, 0, 0)), null);
+        assertNotNull(intersection);
+        assertEquals(1.0, intersection.intersectionTime, 1e-12);
+        // the sphere is behind the ray
+        assertFalse(sphere.IntersectsP(new Ray(new Point(0, 0, 5), new Vector(0, 0, 1))));
+        assertFalse(sphere.occluded(new Ray(new Point(0, 0, 5), new Vector(0, 0, 1)), 100.0));
+        assertTrue(sphere.occluded(new Ray(new Point(0, 0, 5), new Vector(0, 0, -1)), 4.5));
+        assertFalse(sphere.occluded(new Ray(new Point(0, 0, 5), new Vector(0, 0, -1)), 3.5));
+    }
+
+    @Test
+    public void distantSmallSphereTest() {
+        // the textbook discriminant cancels to zero or below for a ray this far from a sphere this small
+        Sphere sphere = new Sphere(new Point(0, 0, 1e8), 1e-2);
+        double[] nearAndFar = new double[2];
+        assertTrue(sphere.intersectionTimes(new Ray(new Point(0, 0.005, 0), new Vector(0, 0, 1)), nearAndFar));
+        assertEquals(1e8, nearAndFar[0], 1e-2);
+        assertTrue(nearAndFar[0] < nearAndFar[1]);
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.shapes;
+
+import com.starrypenguin.jpharos.core.Intersection;
+import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.geometry.BoundingBox;
+import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.geometry.Vector;
+import com.starrypenguin.jpharos.util.TriangleMeshReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * TriangleMeshCacheTest
+ * <p/>
+ * Tests that cached meshes match the meshes they were saved from, and that stale or damaged caches are rebuilt
+ */
+public class TriangleMeshCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // loadOrBuild is called directly, so the reader itself must not use the cache
+    @Before
+    public void disableReaderCache() {
+        System.setProperty(TriangleMeshCache.ENABLED_PROPERTY, "false");
+    }
+
+    @After
+    public void restoreReaderCache() {
+        System.clearProperty(TriangleMeshCache.ENABLED_PROPERTY);
+    }
+
+    private File copyOfDolphins() throws IOException {
+        File source = folder.newFile("dolphins.ply");
+        Files.copy(new File("ply-input-files/dolphins_colored.ply").toPath(), source.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        return source;
+    }
+
+    private static TriangleMesh load(File source, AtomicInteger reads) {
+        return TriangleMeshCache.loadOrBuild(source, file -> {
+            reads.incrementAndGet();
+            return TriangleMeshReader.fromPlyFile(file);
+        });
+    }
+
+    private static void assertSameHits(TriangleMesh expected, TriangleMesh actual) {
+        assertEquals(expected.surfaceArea(), actual.surfaceArea(), 0.0);
+        assertEquals(expected.vertices.hasColors(), actual.vertices.hasColors());
+        BoundingBox bounds = expected.getBoundingBox();
+        assertEquals(bounds.min, actual.getBoundingBox().min);
+        assertEquals(bounds.max, actual.getBoundingBox().max);
+        double size = Point.distance(bounds.min, bounds.max);
+        int hits = 0;
+        for (int row = 0; row < 20; row++) {
+            for (int column = 0; column < 20; column++) {
+                Point origin = new Point(bounds.min.x + (bounds.max.x - bounds.min.x) * (column + 0.5) / 20,
+                        bounds.min.y + (bounds.max.y - bounds.min.y) * (row + 0.5) / 20, bounds.max.z + size);
+                Ray ray = new Ray(origin, new Vector(0, 0, -1));
+                Intersection expectedIntersection = expected.Intersects(ray, null);
+                Intersection actualIntersection = actual.Intersects(ray, null);
+                assertEquals(expectedIntersection == null, actualIntersection == null);
+                if (expectedIntersection != null) {
+                    hits++;
+                    assertEquals(expectedIntersection.intersectionTime, actualIntersection.intersectionTime, 0.0);
+                }
+            }
+        }
+        assertTrue(hits > 0);
+    }
+
+    @Test
+    public void secondLoadUsesCache() throws IOException {
+        File source = copyOfDolphins();
+        AtomicInteger reads = new AtomicInteger();
+        TriangleMesh built = load(source, reads);
+        assertTrue(TriangleMeshCache.cacheFileFor(source).isFile());
+        TriangleMesh cached = load(source, reads);
+        assertEquals(1, reads.get());
+        assertEquals(built.vertices.size(), cached.vertices.size());
+        assertEquals(built.vertices.getVertexCount(), cached.vertices.getVertexCount());
+        assertSameHits(built, cached);
+    }
+
+    @Test
+    public void changedSourceRebuildsCache() throws IOException {
+        File source = copyOfDolphins();
+        AtomicInteger reads = new AtomicInteger();
+        load(source, reads);
+        // a trailing comment line changes the hash but not the mesh
+        Files.write(source.toPath(), "\n".getBytes(), StandardOpenOption.APPEND);
+        load(source, reads);
+        assertEquals(2, reads.get());
+        load(source, reads);
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    public void damagedCacheIsIgnored() throws IOException {
+        File source = copyOfDolphins();
+        AtomicInteger reads = new AtomicInteger();
+        TriangleMesh built = load(source, reads);
+        File cacheFile = TriangleMeshCache.cacheFileFor(source);
+        byte[] truncated = new byte[(int) cacheFile.length() / 2];
+        System.arraycopy(Files.readAllBytes(cacheFile.toPath()), 0, truncated, 0, truncated.length);
+        Files.write(cacheFile.toPath(), truncated);
+        TriangleMesh rebuilt = load(source, reads);
+        assertEquals(2, reads.get());
+        assertSameHits(built, rebuilt);
+    }
+
+}
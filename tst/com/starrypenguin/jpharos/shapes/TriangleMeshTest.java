@@ -0,0 +1,196 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.starrypenguin.jpharos.shapes;
+
+import com.starrypenguin.jpharos.core.Intersection;
+import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.geometry.BarycentricCoordinate;
+import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.geometry.Vector;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * TriangleMeshTest
+ * <p/>
+ * Tests for TriangleMesh ray queries against a brute force search of every triangle
+ */
+public class TriangleMeshTest {
+
+    private static Point randomPoint(Random random, double scale) {
+        return new Point(random.nextDouble() * scale, random.nextDouble() * scale, random.nextDouble() * scale);
+    }
+
+    @Test
+    public void closestHitMatchesBruteForce() {
+        Random random = new Random(6400);
+        TriangleMeshBuilder builder = new TriangleMeshBuilder();
+        for (int index = 0; index < 2000; index++) {
+            Point corner = randomPoint(random, 100);
+            builder.addTriangle(corner, corner.plus(new Vector(random.nextDouble() * 5, 0, random.nextDouble())),
+                    corner.plus(new Vector(0, random.nextDouble() * 5, random.nextDouble())));
+        }
+        TriangleMesh triangleMesh = builder.build();
+
+        int hits = 0;
+        for (int rayCount = 0; rayCount < 500; rayCount++) {
+            Point origin = randomPoint(random, 100);
+            Vector direction = new Vector(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+            Ray ray = new Ray(origin, direction);
+
+            Intersection closest = null;
+            for (Triangle triangle : triangleMesh.vertices.toArray()) {
+                Intersection intersection = triangle.Intersects(ray, null);
+                if (intersection != null && (closest == null || intersection.intersectionTime < closest.intersectionTime)) {
+                    closest = intersection;
+                }
+            }
+
+            Intersection intersection = triangleMesh.Intersects(ray, null);
+            assertEquals(closest != null, triangleMesh.IntersectsP(ray));
+            if (closest == null) {
+                assertNull(intersection);
+            } else {
+                hits++;
+                assertNotNull(intersection);
+                assertEquals(closest.intersectionTime, intersection.intersectionTime, 1e-9);
+                // the barycentric coordinates of the hit put it at the intersection point
+                Triangle triangle = triangleMesh.vertices.getTriangle(intersection.primitive);
+                BarycentricCoordinate expected = triangle.calculateBarycentricCoordinateForPoint(intersection.intersectionPoint);
+                assertEquals(expected.v, intersection.u, 1e-6);
+                assertEquals(expected.w, intersection.v, 1e-6);
+            }
+        }
+        System.out.println("Rays that hit the mesh: " + hits + " of 500");
+    }
+
+    @Test
+    public void indexedVerticesAndColors() {
+        TriangleMeshVertices vertices = new TriangleMeshVertices();
+        Point origin = new Point(0, 0, 0);
+        vertices.addVertex(origin);
+        vertices.addColor(origin, Color.RED);
+        vertices.addVertex(new Point(1, 0, 0));
+        vertices.addVertex(new Point(0, 1, 0));
+        vertices.addVertex(new Point(0, 0, 0));
+        vertices.addTriangleByVertexIndex(0, 1, 2);
+        // out of range and degenerate triangles are skipped
+        vertices.addTriangleByVertexIndex(0, 1, 7);
+        vertices.addTriangleByVertexIndex(0, 1, 3);
+        assertEquals(1, vertices.size());
+        assertEquals(4, vertices.getVertexCount());
+        assertEquals(new Triangle(origin, new Point(1, 0, 0), new Point(0, 1, 0)), vertices.getTriangle(0));
+        assertEquals(0.5, vertices.getSurfaceArea(), 1e-12);
+        assertEquals(Color.RED.getRGB(), vertices.getColor(0));
+        assertEquals(0, vertices.getColor(1));
+        assertEquals(0, vertices.getColor(3));
+
+        // the most recently added vertex at a point gets the color
+        vertices.addColor(origin, Color.BLUE);
+        assertEquals(Color.RED.getRGB(), vertices.getColor(0));
+        assertEquals(Color.BLUE.getRGB(), vertices.getColor(3));
+    }
+
+    @Test
+    public void trianglesAddedByPointShareVertices() {
+        TriangleMeshVertices vertices = new TriangleMeshVertices();
+        Point a = new Point(0, 0, 0);
+        Point b = new Point(1, 0, 0);
+        Point c = new Point(0, 1, 0);
+        Point d = new Point(1, 1, 0);
+        vertices.addTriangle(a, b, c);
+        vertices.addTriangle(b, d, c);
+        assertEquals(2, vertices.size());
+        assertEquals(4, vertices.getVertexCount());
+        assertEquals(vertices.getVertexIndex(0, 1), vertices.getVertexIndex(1, 0));
+        assertEquals(vertices.getVertexIndex(0, 2), vertices.getVertexIndex(1, 2));
+        // enough vertices to grow the lookup table several times
+        for (int vertex = 0; vertex < 200; vertex++) {
+            vertices.addTriangle(new Point(vertex, 2, 0), new Point(vertex + 1, 2, 0), new Point(vertex, 3, 0));
+        }
+        assertEquals(4 + 201 + 200, vertices.getVertexCount());
+        vertices.addColor(new Point(150, 3, 0), Color.GREEN);
+        // the third corner of the 151st triangle in the loop
+        assertEquals(new Point(150, 3, 0), vertices.getVertex(vertices.getVertexIndex(152, 2)));
+        assertEquals(Color.GREEN.getRGB(), vertices.getColor(vertices.getVertexIndex(152, 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void colorOfMissingVertex() {
+        TriangleMeshVertices vertices = new TriangleMeshVertices();
+        vertices.addTriangle(new Point(0, 0, 0), new Point(1, 0, 0), new Point(0, 1, 0));
+        vertices.addColor(new Point(1, 1, 0), Color.GREEN);
+    }
+
+    @Test
+    public void vertexColorsOfTheTriangleHit() {
+        TriangleMeshBuilder builder = new TriangleMeshBuilder();
+        builder.addVertex(new Point(0, 0, 0)).addVertex(new Point(1, 0, 0)).addVertex(new Point(0, 1, 0))
+                .addVertex(new Point(10, 0, 0)).addVertex(new Point(11, 0, 0)).addVertex(new Point(10, 1, 0));
+        builder.addColor(new Point(1, 0, 0), Color.RED).addColor(new Point(10, 1, 0), Color.BLUE);
+        builder.addTriangleByVertexIndex(3, 4, 5).addTriangleByVertexIndex(0, 1, 2);
+        TriangleMesh triangleMesh = builder.build();
+        Ray ray = new Ray(new Point(0.5, 0.25, 5), new Vector(0, 0, -1));
+        Intersection intersection = triangleMesh.Intersects(ray, null);
+        assertEquals(0.5, intersection.u, 1e-12);
+        assertEquals(0.25, intersection.v, 1e-12);
+        assertEquals(0, triangleMesh.getVertexColor(intersection.primitive, 0));
+        assertEquals(Color.RED.getRGB(), triangleMesh.getVertexColor(intersection.primitive, 1));
+        ray = new Ray(new Point(10.25, 0.5, 5), new Vector(0, 0, -1));
+        intersection = triangleMesh.Intersects(ray, null);
+        assertEquals(Color.BLUE.getRGB(), triangleMesh.getVertexColor(intersection.primitive, 2));
+    }
+
+    @Test
+    public void repeatedTrianglesAreRemoved() {
+        TriangleMeshBuilder builder = new TriangleMeshBuilder();
+        builder.addVertex(new Point(0, 0, 0)).addVertex(new Point(1, 0, 0)).addVertex(new Point(0, 1, 0)).addVertex(new Point(1, 1, 0));
+        builder.addTriangleByVertexIndex(0, 1, 2).addTriangleByVertexIndex(1, 3, 2).addTriangleByVertexIndex(0, 1, 2);
+        TriangleMesh triangleMesh = builder.build();
+        assertEquals(2, triangleMesh.vertices.size());
+    }
+
+    @Test
+    public void repeatedTrianglesAddedByPointAreRemoved() {
+        Point a = new Point(0, 0, 0);
+        Point b = new Point(1, 0, 0);
+        Point c = new Point(0, 1, 0);
+        Point far = new Point(0, 0, 5);
+        TriangleMeshBuilder builder = new TriangleMeshBuilder();
+        builder.addTriangle(a, b, c).addTriangle(a, b, c).addTriangle(a, b, c);
+        TriangleMesh triangleMesh = builder.build();
+        assertEquals(1, triangleMesh.vertices.size());
+        assertEquals(0.5, triangleMesh.surfaceArea(), 1e-12);
+
+        // a repeat that reaches further than the rest of the mesh must not leave its area behind,
+        // while the bounds still cover every kept triangle
+        builder = new TriangleMeshBuilder();
+        builder.addTriangle(a, b, far).addTriangle(a, b, c).addTriangle(a, b, far);
+        triangleMesh = builder.build();
+        assertEquals(2, triangleMesh.vertices.size());
+        assertEquals(0.5 + 2.5, triangleMesh.surfaceArea(), 1e-12);
+        assertEquals(new Point(0, 0, 0), triangleMesh.getBoundingBox().min);
+        assertEquals(new Point(1, 1, 5), triangleMesh.getBoundingBox().max);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.shapes;
+
+import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.geometry.Vector;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * TriangleTest
+ * <p/>
+ * Tests for the Triangle intersection kernel
+ */
+public class TriangleTest {
+
+    private final Triangle triangle = new Triangle(new Point(0, 0, 0), new Point(4, 0, 0), new Point(0, 4, 0));
+
+    @Test
+    public void intersectTest() {
+        double[] barycentric = new double[2];
+        double time = triangle.intersect(new Ray(new Point(1, 2, 3), new Vector(0, 0, -1)), Double.POSITIVE_INFINITY, barycentric);
+        assertEquals(3.0, time, 1e-12);
+        // u and v are the weights of v2 and v3
+        assertEquals(0.25, barycentric[0], 1e-12);
+        assertEquals(0.5, barycentric[1], 1e-12);
+    }
+
+    @Test
+    public void missTest() {
+        Vector down = new Vector(0, 0, -1);
+        // outside the triangle
+        assertEquals(Double.POSITIVE_INFINITY, triangle.intersect(new Ray(new Point(3, 3, 3), down), Double.POSITIVE_INFINITY, null), 0.0);
+        // beyond maxTime
+        assertEquals(Double.POSITIVE_INFINITY, triangle.intersect(new Ray(new Point(1, 1, 3), down), 2.0, null), 0.0);
+        // behind the ray
+        assertEquals(Double.POSITIVE_INFINITY, triangle.intersect(new Ray(new Point(1, 1, -3), down), Double.POSITIVE_INFINITY, null), 0.0);
+        // parallel to the triangle
+        assertEquals(Double.POSITIVE_INFINITY, triangle.intersect(new Ray(new Point(-1, 1, 0), new Vector(1, 0, 0)), Double.POSITIVE_INFINITY, null), 0.0);
+    }
+
+    @Test
+    public void precomputedNormalTest() {
+        assertEquals(0.0, triangle.normalX, 0.0);
+        assertEquals(0.0, triangle.normalY, 0.0);
+        assertEquals(16.0, triangle.normalZ, 0.0);
+        assertSame(triangle.getBoundingBox(), triangle.getBoundingBox());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * jPharos is a simple Java-based Ray Tracer.
+ * Copyright (c) 2017.   Richard Scott McNew
+ *
+ * jPharos is free software: you can redistribute it and / or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.starrypenguin.jpharos.util;
+
+import com.starrypenguin.jpharos.core.Intersection;
+import com.starrypenguin.jpharos.core.Ray;
+import com.starrypenguin.jpharos.geometry.BoundingBox;
+import com.starrypenguin.jpharos.geometry.Point;
+import com.starrypenguin.jpharos.geometry.Vector;
+import com.starrypenguin.jpharos.shapes.TriangleMesh;
+import com.starrypenguin.jpharos.shapes.TriangleMeshVertices;
+import com.starrypenguin.jpharos.shapes.TriangleMeshCache;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.smurn.jply.Element;
+import org.smurn.jply.ElementReader;
+import org.smurn.jply.PlyReader;
+import org.smurn.jply.PlyReaderFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * TriangleMeshReaderTest
+ * <p/>
+ * Tests that every PLY format the reader handles produces the same mesh
+ */
+public class TriangleMeshReaderTest {
+
+    // the same dolphins model is shipped as ASCII, binary little endian, and binary big endian
+    private static final String ASCII_DOLPHINS = "ply-input-files/dolphins.ply";
+    private static final String LITTLE_ENDIAN_DOLPHINS = "ply-input-files/dolphins_le.ply";
+    private static final String BIG_ENDIAN_DOLPHINS = "ply-input-files/dolphins_be.ply";
+
+    // these tests are about the parsers, so keep TriangleMeshCache out of the way
+    @BeforeClass
+    public static void disableMeshCache() {
+        System.setProperty(TriangleMeshCache.ENABLED_PROPERTY, "false");
+    }
+
+    @AfterClass
+    public static void restoreMeshCache() {
+        System.clearProperty(TriangleMeshCache.ENABLED_PROPERTY);
+    }
+
+    static void assertSameMesh(TriangleMesh expected, TriangleMesh actual) {
+        assertEquals(expected.surfaceArea(), actual.surfaceArea(), 1e-6 * expected.surfaceArea());
+        BoundingBox expectedBounds = expected.getBoundingBox();
+        BoundingBox actualBounds = actual.getBoundingBox();
+        double size = Point.distance(expectedBounds.min, expectedBounds.max);
+        // binary files hold 32 bit floats, while ASCII values are parsed as doubles
+        assertEquals(0.0, Point.distance(expectedBounds.min, actualBounds.min), 1e-6 * size);
+        assertEquals(0.0, Point.distance(expectedBounds.max, actualBounds.max), 1e-6 * size);
+        // shoot a grid of rays through the bounds and compare what they hit
+        Point center = expectedBounds.getCenterPoint();
+        int hits = 0;
+        for (int row = 0; row < 20; row++) {
+            for (int column = 0; column < 20; column++) {
+                Point origin = new Point(expectedBounds.min.x + (expectedBounds.max.x - expectedBounds.min.x) * (column + 0.5) / 20,
+                        expectedBounds.min.y + (expectedBounds.max.y - expectedBounds.min.y) * (row + 0.5) / 20, center.z + size);
+                Ray ray = new Ray(origin, new Vector(0, 0, -1));
+                Intersection expectedIntersection = expected.Intersects(ray, null);
+                Intersection actualIntersection = actual.Intersects(ray, null);
+                assertEquals(expectedIntersection == null, actualIntersection == null);
+                if (expectedIntersection != null) {
+                    hits++;
+                    assertEquals(expectedIntersection.intersectionTime, actualIntersection.intersectionTime, 1e-6 * size);
+                }
+            }
+        }
+        assertTrue(hits > 0);
+    }
+
+    @Test
+    public void binaryLittleEndianMatchesAscii() {
+        assertSameMesh(TriangleMeshReader.fromPlyFile(ASCII_DOLPHINS), TriangleMeshReader.fromPlyFile(LITTLE_ENDIAN_DOLPHINS));
+    }
+
+    @Test
+    public void binaryBigEndianMatchesAscii() {
+        assertSameMesh(TriangleMeshReader.fromPlyFile(ASCII_DOLPHINS), TriangleMeshReader.fromPlyFile(BIG_ENDIAN_DOLPHINS));
+    }
+
+    private static TriangleMeshVertices parseAscii(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return AsciiPlyParser.parse(PlyHeader.parse(buffer), buffer);
+        }
+    }
+
+    @Test
+    public void parallelAsciiMatchesJply() throws IOException {
+        // large enough to be split into several chunks
+        String filename = "ply-input-files/dragon_quick.ply";
+        TriangleMeshVertices vertices = parseAscii(filename);
+        PlyReader plyReader = new PlyReaderFile(new File(filename));
+        ElementReader elementReader = plyReader.nextElementReader();
+        int vertex = 0;
+        for (Element element = elementReader.readElement(); element != null; element = elementReader.readElement()) {
+            Point expected = new Point(element.getDouble("x"), element.getDouble("y"), element.getDouble("z"));
+            assertEquals(expected, vertices.getVertex(vertex++));
+        }
+        elementReader.close();
+        assertEquals(vertex, vertices.getVertexCount());
+        elementReader = plyReader.nextElementReader();
+        int face = 0;
+        for (Element element = elementReader.readElement(); element != null; element = elementReader.readElement()) {
+            int[] indices = element.getIntList("vertex_indices");
+            for (int corner = 0; corner < 3; corner++) {
+                assertEquals(indices[corner], vertices.getVertexIndex(face, corner));
+            }
+            face++;
+        }
+        elementReader.close();
+        plyReader.close();
+        assertEquals(face, vertices.size());
+    }
+
+    @Test
+    public void asciiColors() throws IOException {
+        TriangleMeshVertices vertices = parseAscii("ply-input-files/dolphins_colored.ply");
+        assertTrue(vertices.hasColors());
+        for (int vertex = 0; vertex < vertices.getVertexCount(); vertex++) {
+            assertNotEquals(0, vertices.getColor(vertex));
+        }
+    }
+
+    @Test
+    public void numberParserMatchesParseDouble() {
+        Random random = new Random(6400);
+        StringBuilder text = new StringBuilder();
+        String[] samples = {"0", "-0", "1", "+2.5", "1e5", "1.5E-3", "-7.25e+2", "0.000123", "123456789.123456789",
+                "1234567890123456789012", "3.4028235e38", "4.9e-324", "0.1", "-0.30000000000000004", "nan", "Infinity"};
+        for (String sample : samples) {
+            text.append(sample).append(' ');
+        }
+        for (int index = 0; index < 2000; index++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+            text.append(index % 2 == 0 ? Double.toString(value) : Float.toString((float) value)).append(' ');
+            text.append(String.format("%.6f", value)).append(' ');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII));
+        AsciiPlyParser.Cursor cursor = new AsciiPlyParser.Cursor(buffer, 0, buffer.limit());
+        for (String token : text.toString().trim().split(" ")) {
+            double expected = token.equals("nan") ? Double.NaN : Double.parseDouble(token);
+            assertEquals(token, Double.doubleToLongBits(expected), Double.doubleToLongBits(parseOrNaN(cursor, token)));
+        }
+    }
+
+    // Double.parseDouble does not know "nan", so the parser reports it as a NumberFormatException
+    private static double parseOrNaN(AsciiPlyParser.Cursor cursor, String token) {
+        try {
+            return cursor.parseDouble();
+        } catch (NumberFormatException e) {
+            assertEquals("nan", token);
+            return Double.NaN;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notAPlyFile() {
+        TriangleMeshReader.fromPlyFile("ply-input-files/ply-source.txt");
+    }
+}